@@ -45,6 +45,7 @@ import static com.sri.ai.util.Util.join;
 import static com.sri.ai.util.Util.mapIntoList;
 import static com.sri.ai.util.Util.thereExists;
 import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -333,12 +334,18 @@ public class PRAiSECommandLineOptions {
 	}
 
 	private static String getLegalModelLanguageCodesDescription() {
-		String result = join(mapIntoList(ModelLanguage.values(), ModelLanguage::getCode));
+		String result = join(mapIntoList(getInputModelLanguages(), ModelLanguage::getCode));
+		return result;
+	}
+	
+	private static List<ModelLanguage> getInputModelLanguages() {
+		// input files are read as text
+		List<ModelLanguage> result = Arrays.stream(ModelLanguage.values()).filter(modelLanguage -> !modelLanguage.isBinary()).collect(toList());
 		return result;
 	}
 
 	private static ModelLanguage findLanguageModel(String languageCode) {
-		List<ModelLanguage> modelLanguages = Arrays.asList(ModelLanguage.values());
+		List<ModelLanguage> modelLanguages = getInputModelLanguages();
 		ModelLanguage result = getFirstSatisfyingPredicateOrNull(modelLanguages, hasLanguageCode(languageCode));
 		return result;
 	}
@@ -362,7 +369,7 @@ public class PRAiSECommandLineOptions {
 	}
 
 	private ModelLanguage getLanguageMatchingExtensionOfSomeInputFile() {
-		List<ModelLanguage> modelLanguages = Arrays.asList(ModelLanguage.values());
+		List<ModelLanguage> modelLanguages = getInputModelLanguages();
 		ModelLanguage result = getFirstSatisfyingPredicateOrNull(modelLanguages, isExtensionForSomeOfTheInputFiles());
 		return result;
 	}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.inference;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A cooperative cancellation token, optionally with a deadline, shared by the caller of an inference and the inference itself.
+ * Inference checks the token between elimination steps (throwing a {@link QueryCanceledException} once it is canceled),
+ * and registers with it whatever needs to be interrupted while a step is running, 
+ * so a canceled or timed-out inference does not keep its thread busy.
+ * A token with a deadline should be closed once the work it was given to is done, 
+ * so that its deadline stops taking up room (use try-with-resources).
+ * 
+ * @author braz
+ *
+ */
+@Beta
+public class CancellationToken implements AutoCloseable {
+	
+	// a single daemon thread cancels all tokens whose deadlines are reached
+	private static final ScheduledThreadPoolExecutor DEADLINES = new ScheduledThreadPoolExecutor(1, runnable -> {
+		Thread thread = new Thread(runnable, "CancellationToken-deadlines");
+		thread.setDaemon(true);
+		return thread;
+	});
+	static {
+		// closed tokens' deadlines are dropped right away rather than when they are reached
+		DEADLINES.setRemoveOnCancelPolicy(true);
+	}
+	
+	private volatile boolean            canceled = false;
+	private List<Runnable>              onCancel = new CopyOnWriteArrayList<>();
+	private volatile ScheduledFuture<?> deadline = null;
+	
+	/**
+	 * Makes a token that is only canceled by {@link #cancel()}.
+	 */
+	public CancellationToken() {
+	}
+	
+	/**
+	 * Makes a token that is canceled once the given time has elapsed (or earlier, by {@link #cancel()}).
+	 * @param timeout
+	 * @param unit
+	 * @return a new token.
+	 */
+	public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+		CancellationToken result = new CancellationToken();
+		result.deadline = DEADLINES.schedule(result::cancel, timeout, unit);
+		return result;
+	}
+	
+	/**
+	 * Drops the token's deadline, if any, without canceling it (it can still be canceled by {@link #cancel()}).
+	 */
+	@Override
+	public void close() {
+		ScheduledFuture<?> deadline = this.deadline;
+		if (deadline != null) {
+			deadline.cancel(false);
+			this.deadline = null;
+		}
+	}
+	
+	public boolean isCanceled() {
+		return canceled;
+	}
+	
+	/**
+	 * Cancels the token, running all actions registered with {@link #onCancel(Runnable)} (only the first call has any effect).
+	 */
+	public void cancel() {
+		if (!canceled) {
+			canceled = true;
+			for (Runnable action : onCancel) {
+				// whoever removes an action runs it, so that it is only run once
+				if (onCancel.remove(action)) {
+					action.run();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * @throws QueryCanceledException if the token has been canceled.
+	 */
+	public void throwIfCanceled() {
+		if (canceled) {
+			throw new QueryCanceledException();
+		}
+	}
+	
+	/**
+	 * Registers an action to be run when the token is canceled (immediately if it already is).
+	 * @param action
+	 * @return a runnable that unregisters the action, to be run once it is no longer needed.
+	 */
+	public Runnable onCancel(Runnable action) {
+		onCancel.add(action);
+		if (canceled && onCancel.remove(action)) {
+			// canceled before or while registering
+			action.run();
+		}
+		return () -> onCancel.remove(action);
+	}
+}
@@ -70,7 +70,7 @@ public class HOGMQueryRunner {
 	private ParsedHOGModel parsedModel = null;
 	private List<HOGMQueryResult> results = new ArrayList<>();
 	private List<HOGMQueryError> errors = new ArrayList<>();
-	private boolean canceled = false;
+	private volatile CancellationToken cancellationToken = new CancellationToken(); // the token of the queries being processed
 	private Theory optionalTheory = null;
 	private InferenceForFactorGraphAndEvidence inferencer = null;
 	
@@ -103,11 +103,27 @@ public class HOGMQueryRunner {
 	}
 
 	private void processAllQueries(List<String> queries) {
+		// each batch of queries gets its own token, so that canceling a batch does not affect later ones
+		CancellationToken cancellationToken = new CancellationToken();
+		this.cancellationToken = cancellationToken;
 		for (String query : queries) {
-        	processQuery(query);
+        	processQuery(query, cancellationToken);
         }
 	}
 
+	/**
+	 * Answers further queries on the already parsed model, reusing the same inferencer
+	 * (and therefore its type information, theory and cached evidence probability).
+	 * @param queries the queries to be answered
+	 * @return the results for the given queries (which are also appended to {@link #getResults()})
+	 */
+	public List<HOGMQueryResult> processQueries(List<String> queries) {
+		int firstNewResult = results.size();
+		processAllQueries(queries);
+		List<HOGMQueryResult> newResults = new ArrayList<>(results.subList(firstNewResult, results.size()));
+		return newResults;
+	}
+
 	public List<HOGMQueryResult> getResults() {
         return results;
     }
@@ -118,11 +134,12 @@ public class HOGMQueryRunner {
 	
 	public void setOptionalTheory(Theory theory) {
 		this.optionalTheory = theory;
+		this.inferencer = null; // so that it gets re-created with the new theory
 	}
 	
-	private void processQuery(String query) {
+	private void processQuery(String query, CancellationToken cancellationToken) {
 		long queryProcessingStartingTime = System.currentTimeMillis();
-		collectQueryResults(query, parsedModel);
+		collectQueryResults(query, parsedModel, cancellationToken);
 		collectQueryResultBasedInErrors(query, parsedModel, queryProcessingStartingTime);
 	}
 
@@ -138,14 +155,14 @@ public class HOGMQueryRunner {
 		return parsedModel;
 	}
 
-	private void collectQueryResults(String query, ParsedHOGModel parsedModel) {
+	private void collectQueryResults(String query, ParsedHOGModel parsedModel, CancellationToken cancellationToken) {
 		
 		collectErrorIfQueryIsEmpty(query);
 		   		
 		if (errors.size() == 0) {
 			Expression queryExpression = parser.parseTerm(query, new ParserErrorListener(HOGMQueryError.Context.QUERY, errors));
 			if (errors.size() == 0) {
-				runInference(query, queryExpression, parsedModel);
+				runInference(query, queryExpression, parsedModel, cancellationToken);
 			}
 		}
 	}
@@ -157,21 +174,36 @@ public class HOGMQueryRunner {
 		}
 	}
 
-	private void runInference(String query, Expression queryExpression, ParsedHOGModel parsedModel) {
-		if (!canceled) {
+	private void runInference(String query, Expression queryExpression, ParsedHOGModel parsedModel, CancellationToken cancellationToken) {
+		try {
+			// queries not yet started when their batch is canceled are reported as canceled, as is the one being run
+			cancellationToken.throwIfCanceled();
 			IntegrationRecording.startRecordingIntegrationsOverGroups();
-			FactorsAndTypes factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
-			inferencer = new InferenceForFactorGraphAndEvidence(factorsAndTypes, false, null, true, getOptionalTheory());
-			Pair<Expression, Long> inferenceResultAndTime = time(inference(queryExpression)); 			
+			makeInferencerIfNeeded(parsedModel);
+			Pair<Expression, Long> inferenceResultAndTime = time(inference(queryExpression, cancellationToken)); 			
 			HOGMQueryResult queryResult = new HOGMQueryResult(query, queryExpression, parsedModel, inferenceResultAndTime);
 			queryResult.recordNumberOfSummations();
 			results.add(queryResult);
 		}
+		catch (QueryCanceledException queryCanceledException) {
+			collectQueryError(queryCanceledException);
+		}
 	}
 
-	private NullaryFunction<Expression> inference(Expression queryExpression) {
+	/**
+	 * Creates the inferencer the first time it is needed and keeps it for all subsequent queries,
+	 * since factors, types and the normalization constant do not depend on the query.
+	 */
+	private void makeInferencerIfNeeded(ParsedHOGModel parsedModel) {
+		if (inferencer == null) {
+			FactorsAndTypes factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+			inferencer = new InferenceForFactorGraphAndEvidence(factorsAndTypes, false, null, true, getOptionalTheory());
+		}
+	}
+
+	private NullaryFunction<Expression> inference(Expression queryExpression, CancellationToken cancellationToken) {
 		final Expression finalQueryExpression = queryExpression;
-		NullaryFunction<Expression> inference = () -> inferencer.solve(finalQueryExpression);
+		NullaryFunction<Expression> inference = () -> inferencer.solve(finalQueryExpression, cancellationToken);
 		return inference;
 	}
 
@@ -265,10 +297,9 @@ public class HOGMQueryRunner {
 	}
 	
 	public void cancelQuery() {
-		canceled = true;
-		if (inferencer != null) {
-			inferencer.interrupt();
-		}
+		// stops the query being run at its next elimination step, as well as the queries of its batch not yet started
+		// (all of them then being reported as canceled), but not later batches
+		cancellationToken.cancel();
 	}
 
 	public Expression simplifyAnswer(Expression answer, Expression forQuery) {
@@ -45,8 +45,10 @@ import static com.sri.ai.util.Util.list;
 import static com.sri.ai.util.Util.mapIntoSet;
 import static com.sri.ai.util.Util.setDifference;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -83,8 +85,10 @@ import com.sri.ai.util.Util;
  */
 public class InferenceForFactorGraphAndEvidence {
 
+	private List<Expression> factors;
 	private Expression factorGraph;
 	private boolean isBayesianNetwork;
+	private boolean hasFunctionTypedSymbols;
 	private Expression evidence;
 	private Expression evidenceProbability;
 	private Map<String, String> mapFromRandomVariableNameToTypeName;
@@ -92,6 +96,9 @@ public class InferenceForFactorGraphAndEvidence {
 	private Map<String, String> mapFromCategoricalTypeNameToSizeString;
 	private Collection<Type> additionalTypes;
 	private List<Expression> allRandomVariables;
+	private List<FactorGraphComponent> components; // computed on first use by all-marginals mode
+	private Set<Expression> allRandomVariablesSet; // computed on first use by all-marginals mode
+	private Map<Expression, Expression> fromRandomVariableToMarginal = new LinkedHashMap<>(); // memoized marginals of all-marginals mode
 	private Predicate<Expression> isUniquelyNamedConstantPredicate;
 	private Theory theory;
 	private AssociativeCommutativeSemiRing semiRing;
@@ -127,7 +134,8 @@ public class InferenceForFactorGraphAndEvidence {
 			boolean useFactorization,
 			Theory optionalTheory) {
 
-		this.factorGraph       = Times.make(factorsAndTypes.getFactors());
+		this.factors           = new ArrayList<>(factorsAndTypes.getFactors());
+		this.factorGraph       = Times.make(factors);
 		this.isBayesianNetwork = isBayesianNetwork;
 		this.evidence          = evidence;
 
@@ -146,8 +154,10 @@ public class InferenceForFactorGraphAndEvidence {
 		
 		if (mapFromRandomVariableNameToTypeName.values().stream().anyMatch(type -> type.contains("->")) ||
 			factorsAndTypes.getMapFromNonUniquelyNamedConstantNameToTypeName().values().stream().anyMatch(type -> type.contains("->"))) {
+			hasFunctionTypedSymbols = true;
 		}
 		else {
+			hasFunctionTypedSymbols = false;
 		}
 
 		semiRing = new SumProduct(); // for marginalization
@@ -187,6 +197,15 @@ public class InferenceForFactorGraphAndEvidence {
 	 * the result is expressed in terms of a symbol 'query'.
 	 */
 	public Expression solve(Expression queryExpression) {
+		return solve(queryExpression, new CancellationToken());
+	}
+
+	/**
+	 * Same as {@link #solve(Expression)}, but checking the given token between elimination steps
+	 * and interrupting the running step when it is canceled.
+	 * @throws QueryCanceledException if the token is canceled before the query is answered.
+	 */
+	public Expression solve(Expression queryExpression, CancellationToken cancellationToken) {
 		
 		Expression factorGraphWithEvidence = factorGraph;
 
@@ -217,7 +236,7 @@ public class InferenceForFactorGraphAndEvidence {
 		}
 		
 		// Solve the problem.
-		Expression unnormalizedMarginal = sum(indices, factorGraphWithEvidence);
+		Expression unnormalizedMarginal = sum(indices, factorGraphWithEvidence, cancellationToken);
 //		System.out.println("Unnormalized marginal: " + unnormalizedMarginal);
 
 		Expression marginal;
@@ -227,12 +246,12 @@ public class InferenceForFactorGraphAndEvidence {
 		else {
 			// We now marginalize on all variables. Since unnormalizedMarginal is the marginal on all variables but the query, we simply take that and marginalize on the query alone.
 			if (evidenceProbability == null) {
-				evidenceProbability = solver.solve(semiRing, unnormalizedMarginal, queryVariables, mapFromSymbolNameToTypeName, mapFromCategoricalTypeNameToSizeString, additionalTypes, isUniquelyNamedConstantPredicate, theory);
+				evidenceProbability = sum(queryVariables, unnormalizedMarginal, cancellationToken);
 			}
 
 			marginal = Division.make(unnormalizedMarginal, evidenceProbability); // Bayes theorem: P(Q | E) = P(Q and E)/P(E)
 			// now we use the algorithm again for simplifying the above division; this is a lazy way of doing this, as it performs search on the query variable again -- we could instead write an ad hoc function to divide all numerical constants by the normalization constant, but the code would be uglier and the gain very small, since this is a search on a single variable anyway.
-			marginal = evaluate(marginal);
+			marginal = evaluate(marginal, cancellationToken);
 		}
 
 		if (queryIsCompoundExpression) {
@@ -243,13 +262,400 @@ public class InferenceForFactorGraphAndEvidence {
 		return marginal;
 	}
 
+	/**
+	 * Returns the marginals/posteriors of all given random variables (all-marginals mode).
+	 * See {@link #solveMarginal(Expression)} for how work is shared among them.
+	 * @param randomVariables the random variables whose marginals are requested
+	 * @return a map from each random variable to its marginal
+	 */
+	public Map<Expression, Expression> solveAllMarginals(List<Expression> randomVariables) {
+		return solveAllMarginals(randomVariables, new CancellationToken()).getMarginals();
+	}
+
+	/**
+	 * Same as {@link #solveAllMarginals(List)}, but stopping once the given token is canceled,
+	 * in which case the marginals computed so far are returned, flagged as partial.
+	 * @param randomVariables the random variables whose marginals are requested
+	 * @param cancellationToken
+	 * @return the marginals of the random variables, only of those computed before cancellation if partial.
+	 */
+	public AllMarginals solveAllMarginals(List<Expression> randomVariables, CancellationToken cancellationToken) {
+		Map<Expression, Expression> marginals = new LinkedHashMap<>();
+		boolean                     partial   = false;
+		try {
+			for (Expression randomVariable : randomVariables) {
+				marginals.put(randomVariable, solveMarginal(randomVariable, cancellationToken));
+			}
+		}
+		catch (QueryCanceledException queryCanceledException) {
+			partial = true;
+		}
+		return new AllMarginals(marginals, partial);
+	}
+	
+	/**
+	 * The marginals computed by {@link InferenceForFactorGraphAndEvidence#solveAllMarginals(List, CancellationToken)}.
+	 */
+	public static class AllMarginals {
+		private Map<Expression, Expression> marginals;
+		private boolean                     partial;
+		
+		public AllMarginals(Map<Expression, Expression> marginals, boolean partial) {
+			this.marginals = marginals;
+			this.partial   = partial;
+		}
+		
+		/**
+		 * @return a map from each random variable whose marginal was computed to its marginal, in the order they were requested.
+		 */
+		public Map<Expression, Expression> getMarginals() {
+			return marginals;
+		}
+		
+		/**
+		 * @return whether the computation was canceled before the marginals of all requested random variables were computed.
+		 */
+		public boolean isPartial() {
+			return partial;
+		}
+	}
+
+	/**
+	 * Returns the marginal/posterior of a random variable, sharing work with other invocations of this method (all-marginals mode).
+	 * On first use, the factor graph and the evidence factor are partitioned into connected components
+	 * (factors sharing no random variables, directly or indirectly, are independent; factors without random variables
+	 * are constants and are multiplied into every component).
+	 * The first marginal requested in a component computes the unnormalized marginals of all its variables
+	 * with two passes of messages over a bucket tree (one towards the last eliminated variable and one back),
+	 * each message summing out variables of a single bucket, so all the marginals of a component cost about
+	 * three eliminations instead of one per variable.
+	 * The normalization constant of each component is computed once and reused by all its variables,
+	 * and marginals are memoized, so repeated queries on the same variable are answered without any elimination.
+	 * If the model has function-typed random variables, whose occurrences cannot be determined syntactically,
+	 * the graph is kept as a single component and each marginal is computed by its own elimination.
+	 * @param randomVariable a random variable of the factor graph
+	 * @return the marginal/posterior of the random variable
+	 */
+	public Expression solveMarginal(Expression randomVariable) {
+		return solveMarginal(randomVariable, new CancellationToken());
+	}
+
+	/**
+	 * Same as {@link #solveMarginal(Expression)}, checking the given token between elimination steps.
+	 * @throws QueryCanceledException if the token is canceled before the marginal is computed.
+	 */
+	public Expression solveMarginal(Expression randomVariable, CancellationToken cancellationToken) {
+		if ( ! allRandomVariables.contains(randomVariable)) {
+			throw new IllegalArgumentException("All-marginals mode requires a random variable but got " + randomVariable);
+		}
+		
+		Expression result = fromRandomVariableToMarginal.get(randomVariable);
+		if (result == null) {
+			FactorGraphComponent component = getComponentOf(randomVariable);
+			List<Expression> queryVariables = list(randomVariable);
+			Expression unnormalizedMarginal;
+			if (hasFunctionTypedSymbols) {
+				List<Expression> indices = setDifference(component.randomVariables, queryVariables);
+				unnormalizedMarginal = sum(indices, Times.make(component.factors), cancellationToken);
+			}
+			else {
+				if (component.unnormalizedMarginals == null) {
+					component.unnormalizedMarginals = computeUnnormalizedMarginals(component, cancellationToken);
+				}
+				unnormalizedMarginal = component.unnormalizedMarginals.get(randomVariable);
+			}
+			if (evidence == null && isBayesianNetwork) {
+				result = unnormalizedMarginal; // the components of a Bayesian network are Bayesian networks themselves, so no normalization is needed
+			}
+			else {
+				if (component.normalizationConstant == null) {
+					component.normalizationConstant = sum(queryVariables, unnormalizedMarginal, cancellationToken);
+				}
+				result = evaluate(Division.make(unnormalizedMarginal, component.normalizationConstant), cancellationToken);
+			}
+			fromRandomVariableToMarginal.put(randomVariable, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the marginal/posterior distribution of a random variable as an array of probabilities,
+	 * one per given value (in the same order), from the single elimination performed by {@link #solveMarginal(Expression)}.
+	 * @param randomVariable a random variable of the factor graph
+	 * @param values the values of the random variable's type, in the order desired for the result
+	 * @return the probability of each of the given values
+	 */
+	public double[] solveMarginalDistribution(Expression randomVariable, List<Expression> values) {
+		return solveMarginalDistribution(randomVariable, values, new CancellationToken());
+	}
+
+	/**
+	 * Same as {@link #solveMarginalDistribution(Expression, List)}, checking the given token between elimination steps.
+	 * @throws QueryCanceledException if the token is canceled before the distribution is computed.
+	 */
+	public double[] solveMarginalDistribution(Expression randomVariable, List<Expression> values, CancellationToken cancellationToken) {
+		Expression marginal = solveMarginal(randomVariable, cancellationToken);
+		Context context = makeContextWithTypeInformation();
+		double[] result = new double[values.size()];
+		for (int i = 0; i != result.length; i++) {
+			Expression valueMarginal = marginal.replaceAllOccurrences(randomVariable, values.get(i), context);
+			valueMarginal = simplify(valueMarginal, context);
+			result[i] = valueMarginal.doubleValue();
+		}
+		return result;
+	}
+
+	private FactorGraphComponent getComponentOf(Expression randomVariable) {
+		if (components == null) {
+			components = makeComponents();
+		}
+		FactorGraphComponent result = null;
+		for (FactorGraphComponent component : components) {
+			if (component.randomVariables.contains(randomVariable)) {
+				result = component;
+				break;
+			}
+		}
+		return result;
+	}
+
+	private List<FactorGraphComponent> makeComponents() {
+		List<Expression> allFactors = new ArrayList<>(factors);
+		if (evidence != null) {
+			allFactors.add(IfThenElse.make(evidence, ONE, ZERO));
+		}
+		
+		List<FactorGraphComponent> result = new ArrayList<>();
+		if (hasFunctionTypedSymbols) {
+			// occurrences of function-typed random variables are applications, so we conservatively keep a single component
+			result.add(new FactorGraphComponent(new LinkedHashSet<>(allRandomVariables), allFactors));
+		}
+		else {
+			List<Set<Expression>> variablesOfComponents = new ArrayList<>();
+			List<List<Expression>> factorsOfComponents  = new ArrayList<>();
+			List<Expression> constantFactors = new ArrayList<>();
+			for (Expression factor : allFactors) {
+				Set<Expression> variablesOfFactor = randomVariablesIn(factor);
+				if (variablesOfFactor.isEmpty()) {
+					// belongs to no component, but still scales (or, if zero, rules out) every one of them
+					constantFactors.add(factor);
+					continue;
+				}
+				Set<Expression> mergedVariables = new LinkedHashSet<>(variablesOfFactor);
+				List<Expression> mergedFactors  = list(factor);
+				for (int i = variablesOfComponents.size() - 1; i >= 0; i--) {
+					if (variablesOfFactor.stream().anyMatch(variablesOfComponents.get(i)::contains)) {
+						mergedVariables.addAll(variablesOfComponents.remove(i));
+						mergedFactors.addAll(factorsOfComponents.remove(i));
+					}
+				}
+				variablesOfComponents.add(mergedVariables);
+				factorsOfComponents.add(mergedFactors);
+			}
+			Set<Expression> randomVariablesInSomeFactor = new LinkedHashSet<>();
+			variablesOfComponents.forEach(randomVariablesInSomeFactor::addAll);
+			for (Expression randomVariable : allRandomVariables) {
+				if ( ! randomVariablesInSomeFactor.contains(randomVariable)) {
+					variablesOfComponents.add(new LinkedHashSet<>(list(randomVariable)));
+					factorsOfComponents.add(new ArrayList<>());
+				}
+			}
+			for (int i = 0; i != variablesOfComponents.size(); i++) {
+				List<Expression> factorsOfComponent = factorsOfComponents.get(i);
+				factorsOfComponent.addAll(constantFactors);
+				result.add(new FactorGraphComponent(variablesOfComponents.get(i), factorsOfComponent));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the unnormalized marginals of all the random variables of a component with two passes of messages over a bucket tree.
+	 * Variables are eliminated in a greedy minimum-neighbors order, each factor being placed in the bucket of its first eliminated variable.
+	 * The upward pass sends from each bucket the sum over its variable of the product of its factors and incoming messages
+	 * to the bucket of the first eliminated variable of the message; the downward pass sends to each child bucket
+	 * the sum, onto the child's message variables, of the product of the parent's factors and all its other messages.
+	 * The marginal of a bucket's variable then only requires summing out the other variables of the bucket.
+	 */
+	private Map<Expression, Expression> computeUnnormalizedMarginals(FactorGraphComponent component, CancellationToken cancellationToken) {
+		List<Expression> order = minimumNeighborsEliminationOrder(component);
+		int n = order.size();
+		Map<Expression, Integer> bucketOf = new LinkedHashMap<>();
+		for (int i = 0; i != n; i++) {
+			bucketOf.put(order.get(i), i);
+		}
+		
+		List<List<Expression>> bucketFactors = new ArrayList<>();
+		List<List<Integer>>    children      = new ArrayList<>();
+		for (int i = 0; i != n; i++) {
+			bucketFactors.add(new ArrayList<>());
+			children.add(new ArrayList<>());
+		}
+		for (Expression factor : component.factors) {
+			// constant factors go to the last bucket, which is a root
+			bucketFactors.get(firstBucket(randomVariablesIn(factor), bucketOf, n - 1)).add(factor);
+		}
+		
+		// upward pass
+		Expression[] upMessages = new Expression[n];
+		int[]        parent     = new int[n];
+		List<Integer> roots = new ArrayList<>();
+		for (int i = 0; i != n; i++) {
+			List<Expression> product = new ArrayList<>(bucketFactors.get(i));
+			for (int child : children.get(i)) {
+				product.add(upMessages[child]);
+			}
+			upMessages[i] = sum(list(order.get(i)), productOf(product), cancellationToken);
+			parent[i]     = firstBucket(randomVariablesIn(upMessages[i]), bucketOf, -1);
+			if (parent[i] == -1) {
+				roots.add(i);
+			}
+			else {
+				children.get(parent[i]).add(i);
+			}
+		}
+		
+		// downward pass; the message to a root is the product of the (constant) messages of the other roots
+		Expression[] downMessages = new Expression[n];
+		for (int root : roots) {
+			List<Expression> otherRootMessages = new ArrayList<>();
+			for (int otherRoot : roots) {
+				if (otherRoot != root) {
+					otherRootMessages.add(upMessages[otherRoot]);
+				}
+			}
+			downMessages[root] = productOf(otherRootMessages);
+		}
+		Map<Expression, Expression> result = new LinkedHashMap<>();
+		for (int i = n - 1; i >= 0; i--) {
+			for (int child : children.get(i)) {
+				List<Expression> product = new ArrayList<>(bucketFactors.get(i));
+				product.add(downMessages[i]);
+				for (int otherChild : children.get(i)) {
+					if (otherChild != child) {
+						product.add(upMessages[otherChild]);
+					}
+				}
+				Expression childProduct = productOf(product);
+				List<Expression> indices = setDifference(randomVariablesIn(childProduct), randomVariablesIn(upMessages[child]));
+				downMessages[child] = sum(indices, childProduct, cancellationToken);
+			}
+			
+			List<Expression> product = new ArrayList<>(bucketFactors.get(i));
+			product.add(downMessages[i]);
+			for (int child : children.get(i)) {
+				product.add(upMessages[child]);
+			}
+			Expression bucketProduct = productOf(product);
+			List<Expression> indices = setDifference(randomVariablesIn(bucketProduct), list(order.get(i)));
+			result.put(order.get(i), sum(indices, bucketProduct, cancellationToken));
+		}
+		return result;
+	}
+
+	private List<Expression> minimumNeighborsEliminationOrder(FactorGraphComponent component) {
+		Map<Expression, Set<Expression>> neighbors = new LinkedHashMap<>();
+		for (Expression randomVariable : component.randomVariables) {
+			neighbors.put(randomVariable, new LinkedHashSet<>());
+		}
+		for (Expression factor : component.factors) {
+			Set<Expression> variablesOfFactor = randomVariablesIn(factor);
+			for (Expression randomVariable : variablesOfFactor) {
+				neighbors.get(randomVariable).addAll(variablesOfFactor);
+				neighbors.get(randomVariable).remove(randomVariable);
+			}
+		}
+		List<Expression> result = new ArrayList<>();
+		while ( ! neighbors.isEmpty()) {
+			Expression next = null;
+			for (Map.Entry<Expression, Set<Expression>> entry : neighbors.entrySet()) {
+				if (next == null || entry.getValue().size() < neighbors.get(next).size()) {
+					next = entry.getKey();
+				}
+			}
+			Set<Expression> neighborsOfNext = neighbors.remove(next);
+			for (Expression neighbor : neighborsOfNext) {
+				Set<Expression> neighborsOfNeighbor = neighbors.get(neighbor);
+				neighborsOfNeighbor.remove(next);
+				neighborsOfNeighbor.addAll(neighborsOfNext);
+				neighborsOfNeighbor.remove(neighbor);
+			}
+			result.add(next);
+		}
+		return result;
+	}
+
+	private static int firstBucket(Set<Expression> randomVariables, Map<Expression, Integer> bucketOf, int bucketIfNone) {
+		int result = Integer.MAX_VALUE;
+		for (Expression randomVariable : randomVariables) {
+			result = Math.min(result, bucketOf.get(randomVariable));
+		}
+		return result == Integer.MAX_VALUE? bucketIfNone : result;
+	}
+
+	private Set<Expression> randomVariablesIn(Expression expression) {
+		if (allRandomVariablesSet == null) {
+			allRandomVariablesSet = new LinkedHashSet<>(allRandomVariables);
+		}
+		return new LinkedHashSet<>(Expressions.getSubExpressionsSatisfying(expression, allRandomVariablesSet::contains));
+	}
+
+	private static Expression productOf(List<Expression> factors) {
+		return factors.isEmpty()? ONE : factors.size() == 1? factors.get(0) : Times.make(factors);
+	}
+
+	/**
+	 * A set of factors connected through their random variables and not connected to any other factor.
+	 */
+	private static class FactorGraphComponent {
+		private List<Expression> randomVariables;
+		private List<Expression> factors;
+		private Map<Expression, Expression> unnormalizedMarginals; // computed on demand
+		private Expression normalizationConstant; // computed on demand
+		
+		public FactorGraphComponent(Set<Expression> randomVariables, List<Expression> factors) {
+			this.randomVariables = new ArrayList<>(randomVariables);
+			this.factors = factors.isEmpty()? list(ONE) : factors;
+		}
+	}
+
 	/**
 	 * @param indices
 	 * @param expression
 	 * @return
 	 */
 	public Expression sum(List<Expression> indices, Expression expression) {
-		return solver.solve(semiRing, expression, indices, mapFromSymbolNameToTypeName, mapFromCategoricalTypeNameToSizeString, additionalTypes, isUniquelyNamedConstantPredicate, theory);
+		return sum(indices, expression, new CancellationToken());
+	}
+
+	/**
+	 * Sums out the given indices as a single elimination step, which is interrupted if the given token is canceled while it runs.
+	 * @param indices
+	 * @param expression
+	 * @param cancellationToken
+	 * @return
+	 * @throws QueryCanceledException if the token is canceled before or during the step.
+	 */
+	public Expression sum(List<Expression> indices, Expression expression, CancellationToken cancellationToken) {
+		cancellationToken.throwIfCanceled();
+		Expression result;
+		Runnable   unregister = cancellationToken.onCancel(solver::interrupt);
+		try {
+			result = solver.solve(semiRing, expression, indices, mapFromSymbolNameToTypeName, mapFromCategoricalTypeNameToSizeString, additionalTypes, isUniquelyNamedConstantPredicate, theory);
+		}
+		catch (RuntimeException | Error throwable) {
+			if (cancellationToken.isCanceled()) {
+				// the solver was interrupted
+				throw new QueryCanceledException(throwable);
+			}
+			throw throwable;
+		}
+		finally {
+			unregister.run();
+		}
+		// an interrupted solver's result is meaningless
+		cancellationToken.throwIfCanceled();
+		return result;
 	}
 
 	/**
@@ -258,7 +664,15 @@ public class InferenceForFactorGraphAndEvidence {
 	 * @return
 	 */
 	public Expression evaluate(Expression expression) {
-		return solver.solve(semiRing, expression, list(), mapFromSymbolNameToTypeName, mapFromCategoricalTypeNameToSizeString, additionalTypes, isUniquelyNamedConstantPredicate, theory);
+		return evaluate(expression, new CancellationToken());
+	}
+
+	/**
+	 * Same as {@link #evaluate(Expression)}, interrupted if the given token is canceled.
+	 * @throws QueryCanceledException if the token is canceled before or during the evaluation.
+	 */
+	public Expression evaluate(Expression expression, CancellationToken cancellationToken) {
+		return sum(list(), expression, cancellationToken);
 	}
 
 	/**
@@ -0,0 +1,534 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.inference.anytime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.lang.grounded.markov.FactorTableUtil;
+import com.sri.ai.praise.lang.grounded.markov.MarkovNetwork;
+
+/**
+ * Anytime exact belief propagation with separator conditioning for the marginal of a single query variable
+ * of a grounded {@link MarkovNetwork}, a numeric counterpart of the symbolic InferenceForFactorGraphAndEvidence
+ * for callers that can act on an approximate answer.
+ * <p>
+ * The network is explored breadth-first from the query, one variable at a time, adding all its tables not yet explored
+ * (evidence variables are not expanded, since they separate the network). The unexplored part of the network
+ * can only influence the query through the explored variables that still have unexplored tables (the separator),
+ * by means of an unknown non-negative function on them. The distributions the query can have are therefore the
+ * convex hull of those obtained by conditioning the explored part on each assignment to the separator, which gives
+ * the [lower, upper] bound of each value. Each bound is intersected with the previous ones, so bounds only get tighter,
+ * and once no tables are left to explore around the query the bound is the exact marginal.
+ * <p>
+ * Each step recomputes the explored part's table on the query and the separator by numeric variable elimination, so
+ * a step costs as much as exact inference on the explored part; steps whose table would have more than 
+ * {@link #MAX_SEPARATOR_TABLE_ENTRIES} entries keep the previous bound.
+ * 
+ * @author braz
+ *
+ */
+@Beta
+public class AnytimeExactBeliefPropagation implements Iterator<Bound> {
+	
+	/**
+	 * Bounds whose computation needs a table (the separator's or one built while eliminating the explored part) with more entries
+	 * than this are not computed, the previous bound being kept instead.
+	 */
+	public static final int MAX_SEPARATOR_TABLE_ENTRIES = Integer.getInteger("anytime.bp.max.separator.entries", 1 << 22);
+	
+	private MarkovNetwork         model;
+	private Map<Integer, Integer> evidence = new LinkedHashMap<>();
+	private int                   queryVariableIndex;
+	private int[][]               variableToTableIdxs;
+	private int[]                 numberUnexploredTables;
+	private boolean[]             exploredTables;
+	private boolean[]             reachedVariables;
+	private List<Integer>         exploredTableIdxs  = new ArrayList<>();
+	private Deque<Integer>        variablesToExpand  = new ArrayDeque<>();
+	private Bound                 bound;
+	private int                   maxTableEntries;
+	
+	/**
+	 * Constructor, with tables limited to {@link #MAX_SEPARATOR_TABLE_ENTRIES} entries.
+	 * @param model
+	 *        the network.
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 * @param queryVariableIndex
+	 *        the index of the variable whose marginal is requested.
+	 */
+	public AnytimeExactBeliefPropagation(MarkovNetwork model, Map<Integer, Integer> evidence, int queryVariableIndex) {
+		this(model, evidence, queryVariableIndex, MAX_SEPARATOR_TABLE_ENTRIES);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param model
+	 *        the network.
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 * @param queryVariableIndex
+	 *        the index of the variable whose marginal is requested.
+	 * @param maxTableEntries
+	 *        the largest number of entries of the tables built to compute a bound (larger ones are not built, the previous bound being kept).
+	 */
+	public AnytimeExactBeliefPropagation(MarkovNetwork model, Map<Integer, Integer> evidence, int queryVariableIndex, int maxTableEntries) {
+		if (queryVariableIndex < 0 || queryVariableIndex >= model.numberVariables()) {
+			throw new IllegalArgumentException("Query variable index "+queryVariableIndex+" is not in the model's range [0, "+model.numberVariables()+")");
+		}
+		this.model              = model;
+		this.evidence.putAll(evidence);
+		this.queryVariableIndex = queryVariableIndex;
+		this.maxTableEntries    = maxTableEntries;
+		
+		int[] numberTables = new int[model.numberVariables()];
+		for (int t = 0; t < model.numberTables(); t++) {
+			for (Integer varIdx : model.getVariableIndexesForTable(t)) {
+				numberTables[varIdx]++;
+			}
+		}
+		this.variableToTableIdxs = new int[model.numberVariables()][];
+		for (int i = 0; i < numberTables.length; i++) {
+			this.variableToTableIdxs[i] = new int[numberTables[i]];
+		}
+		this.numberUnexploredTables = new int[model.numberVariables()];
+		for (int t = 0; t < model.numberTables(); t++) {
+			for (Integer varIdx : model.getVariableIndexesForTable(t)) {
+				this.variableToTableIdxs[varIdx][this.numberUnexploredTables[varIdx]++] = t;
+			}
+		}
+		this.exploredTables   = new boolean[model.numberTables()];
+		this.reachedVariables = new boolean[model.numberVariables()];
+		
+		int queryCardinality = model.cardinality(queryVariableIndex);
+		Integer queryValueIdx = this.evidence.get(queryVariableIndex);
+		if (queryValueIdx == null) {
+			this.reachedVariables[queryVariableIndex] = true;
+			this.variablesToExpand.add(queryVariableIndex);
+			this.bound = Bound.vacuous(queryCardinality);
+		}
+		else {
+			double[] distribution = new double[queryCardinality];
+			distribution[queryValueIdx] = 1;
+			this.bound = new Bound(distribution, distribution, true);
+		}
+	}
+	
+	/**
+	 * 
+	 * @return the tightest bound computed so far.
+	 */
+	public Bound getBound() {
+		return bound;
+	}
+	
+	public int numberExploredTables() {
+		return exploredTableIdxs.size();
+	}
+	
+	/**
+	 * 
+	 * @return whether the bound is not yet exact and there are still tables to be explored
+	 *         (all tables may have been explored without the bound being exact if the tables needed were too large).
+	 */
+	@Override
+	public boolean hasNext() {
+		// variables whose tables have all been explored (by expanding their neighbors) have nothing left to expand
+		while (!variablesToExpand.isEmpty() && numberUnexploredTables[variablesToExpand.peek()] == 0) {
+			variablesToExpand.poll();
+		}
+		return !bound.isExact() && !variablesToExpand.isEmpty();
+	}
+	
+	/**
+	 * Explores the tables of one more variable and tightens the bound accordingly.
+	 * @return the new bound.
+	 */
+	@Override
+	public Bound next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("The bound is already exact or cannot be tightened any further");
+		}
+		expandNextVariable();
+		bound = computeBound().intersect(bound);
+		return bound;
+	}
+	
+	/**
+	 * Tightens the bound until it is exact, no wider than the given width, or the given token is canceled.
+	 * @param maximumWidth
+	 *        the largest acceptable difference between the upper and lower bound of a value.
+	 * @param cancellationToken
+	 *        a token checked between steps (a canceled token simply stops the process).
+	 * @return the tightest bound computed.
+	 */
+	public Bound solve(double maximumWidth, CancellationToken cancellationToken) {
+		while (hasNext() && bound.width() > maximumWidth && !cancellationToken.isCanceled()) {
+			next();
+		}
+		return bound;
+	}
+	
+	//
+	// PRIVATE
+	//
+	private void expandNextVariable() {
+		Integer varIdx;
+		do {
+			varIdx = variablesToExpand.poll();
+		} while (varIdx != null && numberUnexploredTables[varIdx] == 0);
+		
+		if (varIdx != null) {
+			for (int tableIdx : variableToTableIdxs[varIdx]) {
+				if (!exploredTables[tableIdx]) {
+					exploredTables[tableIdx] = true;
+					exploredTableIdxs.add(tableIdx);
+					for (Integer tableVarIdx : model.getVariableIndexesForTable(tableIdx)) {
+						numberUnexploredTables[tableVarIdx]--;
+						if (!reachedVariables[tableVarIdx]) {
+							reachedVariables[tableVarIdx] = true;
+							if (!evidence.containsKey(tableVarIdx)) {
+								variablesToExpand.add(tableVarIdx);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	private Bound computeBound() {
+		// the query goes first, so the entries for each assignment to the rest of the separator are spread with a stride
+		List<Integer> keptVarIdxs = new ArrayList<>();
+		keptVarIdxs.add(queryVariableIndex);
+		boolean queryInSeparator = numberUnexploredTables[queryVariableIndex] > 0;
+		long    numberEntries    = model.cardinality(queryVariableIndex);
+		for (Integer varIdx : variablesToExpand) {
+			// variables still to be expanded are exactly the reached non-evidence variables that may have unexplored tables (each listed once)
+			if (varIdx != queryVariableIndex && numberUnexploredTables[varIdx] > 0) {
+				keptVarIdxs.add(varIdx);
+				numberEntries = saturatedMultiply(numberEntries, model.cardinality(varIdx));
+			}
+		}
+		
+		Bound result = bound;
+		if (numberEntries <= maxTableEntries) {
+			Factor separatorFactor = eliminateAllBut(keptVarIdxs);
+			if (separatorFactor != null) {
+				result = boundFromSeparatorFactor(separatorFactor, queryInSeparator, keptVarIdxs.size() == 1 && !queryInSeparator);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @return the product of the explored tables with all but the given variables summed out, 
+	 *         or null if a table with more than the maximum number of entries would be needed.
+	 */
+	private Factor eliminateAllBut(List<Integer> keptVarIdxs) {
+		boolean[]     kept           = new boolean[model.numberVariables()];
+		boolean[]     eliminated     = new boolean[model.numberVariables()];
+		boolean[]     inScope        = new boolean[model.numberVariables()];
+		List<Factor>  factors        = new ArrayList<>();
+		List<Integer> eliminatedIdxs = new ArrayList<>();
+		for (int varIdx : keptVarIdxs) {
+			kept[varIdx] = true;
+		}
+		for (int tableIdx : exploredTableIdxs) {
+			Factor factor = conditionOnEvidence(model.getVariableIndexesForTable(tableIdx), model.getTable(tableIdx));
+			factors.add(factor);
+			for (int varIdx : factor.variableIndexes) {
+				if (!kept[varIdx] && !eliminated[varIdx]) {
+					eliminated[varIdx] = true;
+					eliminatedIdxs.add(varIdx);
+				}
+			}
+		}
+		
+		while (!eliminatedIdxs.isEmpty()) {
+			// greedily eliminate the variable producing the smallest table
+			int  best     = -1;
+			long bestSize = Long.MAX_VALUE;
+			for (int i = 0; i < eliminatedIdxs.size(); i++) {
+				long size = scopeSize(scope(factors, eliminatedIdxs.get(i), inScope));
+				if (size < bestSize) {
+					best     = i;
+					bestSize = size;
+				}
+			}
+			if (bestSize > maxTableEntries) {
+				return null;
+			}
+			int varIdx = eliminatedIdxs.remove(best);
+			
+			List<Integer> scope      = scope(factors, varIdx, inScope);
+			List<Factor>  containing = new ArrayList<>();
+			for (Iterator<Factor> iterator = factors.iterator(); iterator.hasNext();) {
+				Factor factor = iterator.next();
+				if (factor.contains(varIdx)) {
+					containing.add(factor);
+					iterator.remove();
+				}
+			}
+			factors.add(product(containing, scope).sumOut(varIdx));
+		}
+		
+		Factor result = product(factors, keptVarIdxs);
+		return result;
+	}
+	
+	private Bound boundFromSeparatorFactor(Factor separatorFactor, boolean queryInSeparator, boolean exact) {
+		int      queryCardinality = model.cardinality(queryVariableIndex);
+		int      stride           = separatorFactor.values.length / queryCardinality;
+		double[] lower            = new double[queryCardinality];
+		double[] upper            = new double[queryCardinality];
+		boolean  anyVertex        = false;
+		if (queryInSeparator) {
+			// the unexplored part can favor any value, so the vertices are the point masses on the possible values
+			int numberPossible = 0;
+			for (int q = 0; q < queryCardinality; q++) {
+				for (int s = 0; s < stride; s++) {
+					if (separatorFactor.values[q*stride + s] > 0) {
+						upper[q] = 1;
+						numberPossible++;
+						break;
+					}
+				}
+			}
+			anyVertex = numberPossible > 0;
+			if (numberPossible == 1) {
+				lower = upper;
+			}
+		}
+		else {
+			Arrays.fill(lower, 1.0);
+			for (int s = 0; s < stride; s++) {
+				double total = 0;
+				for (int q = 0; q < queryCardinality; q++) {
+					total += separatorFactor.values[q*stride + s];
+				}
+				if (total > 0) {
+					anyVertex = true;
+					for (int q = 0; q < queryCardinality; q++) {
+						double probability = separatorFactor.values[q*stride + s] / total;
+						lower[q] = Math.min(lower[q], probability);
+						upper[q] = Math.max(upper[q], probability);
+					}
+				}
+			}
+		}
+		if (!anyVertex) {
+			throw new IllegalArgumentException("Evidence has probability zero");
+		}
+		Bound result = new Bound(lower, upper, exact);
+		return result;
+	}
+	
+	private Factor conditionOnEvidence(List<Integer> variableIndexes, FunctionTable table) {
+		List<Integer> freeVarIdxs = new ArrayList<>();
+		int           base        = 0;
+		for (int i = 0; i < variableIndexes.size(); i++) {
+			Integer valueIdx = evidence.get(variableIndexes.get(i));
+			if (valueIdx == null) {
+				freeVarIdxs.add(variableIndexes.get(i));
+			}
+			else {
+				base += valueIdx * table.stride(i);
+			}
+		}
+		
+		Factor result = new Factor(freeVarIdxs, model);
+		int[]  freeStrides = new int[freeVarIdxs.size()];
+		for (int i = 0, f = 0; i < variableIndexes.size(); i++) {
+			if (!evidence.containsKey(variableIndexes.get(i))) {
+				freeStrides[f++] = table.stride(i);
+			}
+		}
+		int[] values = new int[freeStrides.length];
+		int   offset = base;
+		for (int i = 0; i < result.values.length; i++) {
+			result.values[i] = table.entryAtLinear(offset);
+			for (int j = values.length - 1; j >= 0; j--) {
+				if (++values[j] < result.cardinalities[j]) {
+					offset += freeStrides[j];
+					break;
+				}
+				offset -= (values[j] - 1) * freeStrides[j];
+				values[j] = 0;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param inScope
+	 *        an array, all false, used to mark the variables already in the scope (and left all false).
+	 * @return the variables of the factors containing the given variable.
+	 */
+	private static List<Integer> scope(List<Factor> factors, int varIdx, boolean[] inScope) {
+		List<Integer> result = new ArrayList<>();
+		for (Factor factor : factors) {
+			if (factor.contains(varIdx)) {
+				for (int scopeVarIdx : factor.variableIndexes) {
+					if (!inScope[scopeVarIdx]) {
+						inScope[scopeVarIdx] = true;
+						result.add(scopeVarIdx);
+					}
+				}
+			}
+		}
+		for (int scopeVarIdx : result) {
+			inScope[scopeVarIdx] = false;
+		}
+		return result;
+	}
+	
+	private long scopeSize(List<Integer> scope) {
+		long result = 1;
+		for (int varIdx : scope) {
+			result = saturatedMultiply(result, model.cardinality(varIdx));
+		}
+		return result;
+	}
+	
+	private static long saturatedMultiply(long a, long b) {
+		long result;
+		try {
+			result = Math.multiplyExact(a, b);
+		}
+		catch (ArithmeticException overflow) {
+			result = Long.MAX_VALUE;
+		}
+		return result;
+	}
+	
+	private Factor product(List<Factor> factors, List<Integer> variableIndexes) {
+		Factor     result  = new Factor(variableIndexes, model);
+		double[][] entries = new double[factors.size()][];
+		int[][]    strides = new int[factors.size()][result.variableIndexes.length];
+		for (int f = 0; f < factors.size(); f++) {
+			Factor factor = factors.get(f);
+			int    stride = 1;
+			entries[f] = factor.values;
+			for (int j = factor.variableIndexes.length - 1; j >= 0; j--) {
+				strides[f][variableIndexes.indexOf(factor.variableIndexes[j])] = stride;
+				stride *= factor.cardinalities[j];
+			}
+		}
+		FactorTableUtil.product(result.cardinalities, entries, strides, result.values);
+		result.rescale();
+		return result;
+	}
+	
+	/**
+	 * A table over variables of the model, last variable varying fastest, 
+	 * known up to a constant factor (which does not affect the normalized distributions derived from it).
+	 */
+	private static class Factor {
+		int[]    variableIndexes;
+		int[]    cardinalities;
+		double[] values;
+		
+		Factor(List<Integer> variableIndexes, MarkovNetwork model) {
+			this.variableIndexes = variableIndexes.stream().mapToInt(Integer::intValue).toArray();
+			this.cardinalities   = variableIndexes.stream().mapToInt(model::cardinality).toArray();
+			this.values          = new double[Arrays.stream(cardinalities).reduce(1, Math::multiplyExact)];
+		}
+		
+		Factor(int[] variableIndexes, int[] cardinalities, double[] values) {
+			this.variableIndexes = variableIndexes;
+			this.cardinalities   = cardinalities;
+			this.values          = values;
+		}
+		
+		boolean contains(int varIdx) {
+			for (int scopeVarIdx : variableIndexes) {
+				if (scopeVarIdx == varIdx) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		Factor sumOut(int varIdx) {
+			int position = 0;
+			while (variableIndexes[position] != varIdx) {
+				position++;
+			}
+			double[] summed = FactorTableUtil.sumOut(cardinalities, values, position);
+			int[] remainingVariableIndexes = new int[variableIndexes.length - 1];
+			int[] remainingCardinalities   = new int[variableIndexes.length - 1];
+			for (int j = 0, r = 0; j < variableIndexes.length; j++) {
+				if (j != position) {
+					remainingVariableIndexes[r] = variableIndexes[j];
+					remainingCardinalities[r]   = cardinalities[j];
+					r++;
+				}
+			}
+			Factor result = new Factor(remainingVariableIndexes, remainingCardinalities, summed);
+			result.rescale();
+			return result;
+		}
+		
+		// keeps products of many tables from underflowing
+		void rescale() {
+			double max = 0;
+			for (double value : values) {
+				max = Math.max(max, value);
+			}
+			if (max > 0 && max != 1) {
+				for (int i = 0; i < values.length; i++) {
+					values[i] /= max;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.inference.anytime;
+
+import java.util.Arrays;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Lower and upper bounds on the probability of each value of a random variable.
+ * 
+ * @author braz
+ *
+ */
+@Beta
+public class Bound {
+	private double[] lower;
+	private double[] upper;
+	private boolean  exact;
+	
+	/**
+	 * Constructor.
+	 * @param lower
+	 *        the lower bound of each value's probability (not copied).
+	 * @param upper
+	 *        the upper bound of each value's probability (not copied).
+	 * @param exact
+	 *        whether the bounds are known to coincide with the exact probabilities.
+	 */
+	public Bound(double[] lower, double[] upper, boolean exact) {
+		if (lower.length != upper.length) {
+			throw new IllegalArgumentException("#lower bounds "+lower.length+" does not match #upper bounds "+upper.length);
+		}
+		this.lower = lower;
+		this.upper = upper;
+		this.exact = exact;
+	}
+	
+	/**
+	 * 
+	 * @param numberValues
+	 * @return the bound [0, 1] for all values, i.e. nothing is known.
+	 */
+	public static Bound vacuous(int numberValues) {
+		double[] lower = new double[numberValues];
+		double[] upper = new double[numberValues];
+		Arrays.fill(upper, 1.0);
+		Bound result = new Bound(lower, upper, false);
+		return result;
+	}
+	
+	public int numberValues() {
+		return lower.length;
+	}
+	
+	public double lower(int valueIdx) {
+		return lower[valueIdx];
+	}
+	
+	public double upper(int valueIdx) {
+		return upper[valueIdx];
+	}
+	
+	/**
+	 * 
+	 * @return the largest difference between the upper and lower bound of a value.
+	 */
+	public double width() {
+		double result = 0;
+		for (int i = 0; i < lower.length; i++) {
+			result = Math.max(result, upper[i] - lower[i]);
+		}
+		return result;
+	}
+	
+	public boolean isExact() {
+		return exact;
+	}
+	
+	/**
+	 * 
+	 * @param other
+	 *        another bound on the same random variable.
+	 * @return the bound satisfied by every distribution satisfying both this and the other bound.
+	 */
+	public Bound intersect(Bound other) {
+		if (other.numberValues() != numberValues()) {
+			throw new IllegalArgumentException("Bounds are on different numbers of values: "+numberValues()+" and "+other.numberValues());
+		}
+		Bound result;
+		if (exact) {
+			result = this;
+		}
+		else if (other.exact) {
+			result = other;
+		}
+		else {
+			double[] intersectionLower = new double[lower.length];
+			double[] intersectionUpper = new double[lower.length];
+			for (int i = 0; i < lower.length; i++) {
+				intersectionLower[i] = Math.max(lower[i], other.lower[i]);
+				intersectionUpper[i] = Math.max(intersectionLower[i], Math.min(upper[i], other.upper[i])); // guard against rounding errors
+			}
+			result = new Bound(intersectionLower, intersectionUpper, false);
+		}
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < lower.length; i++) {
+			if (i > 0) {
+				result.append(", ");
+			}
+			if (exact) {
+				result.append(lower[i]);
+			}
+			else {
+				result.append("[").append(lower[i]).append(", ").append(upper[i]).append("]");
+			}
+		}
+		return result.toString();
+	}
+}
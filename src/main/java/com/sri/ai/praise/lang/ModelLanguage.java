@@ -95,7 +95,16 @@ public enum ModelLanguage {
 			Arrays.asList(
 					"http://www.hlt.utdallas.edu/~vgogate/uai14-competition/modelformat.html",
 					"http://www.hlt.utdallas.edu/~vgogate/vec-uai14.tar.gz"), // Vibhav's solver, used in the competition
-			".uai");	
+			".uai"),
+	UAIBinary("UAI Inference Competition Model Format (Binary)",
+			false,
+			true, // binary
+			"UAIBinary",
+			"A compact little-endian binary encoding of UAI models, in which each distinct function table is stored only once, " +
+			"intended for quickly reloading large models (see UAIBinaryModelReader).",
+			Arrays.asList(
+					"http://www.hlt.utdallas.edu/~vgogate/uai14-competition/modelformat.html"),
+			".uaib");	
 	
 	//
 	//	
@@ -106,6 +115,14 @@ public enum ModelLanguage {
 	public boolean isInternalLanguageOfPRAiSE() {
 		return internal;
 	}
+	
+	/**
+	 * @return whether models in this language are binary rather than text, in which case they cannot be given as 
+	 *         input models to the command line or be handled line by line.
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
 
 	public String getCode() {
 		return code;
@@ -137,14 +154,20 @@ public enum ModelLanguage {
 	//
 	private String  name;
 	private boolean internal;
+	private boolean binary;
 	private String  code;
 	private String  description;
 	private List<String> urls;
 	private String  defaultFileExtension;
 	//
 	private ModelLanguage(String name, boolean internal, String code, String description, List<String> urls, String defaultFileExtension) {
+		this(name, internal, false, code, description, urls, defaultFileExtension);
+	}
+	
+	private ModelLanguage(String name, boolean internal, boolean binary, String code, String description, List<String> urls, String defaultFileExtension) {
 		this.name                 = name;
 		this.internal             = internal;
+		this.binary               = binary;
 		this.code                 = code;
 		this.description          = description;
 		this.urls                 = Collections.unmodifiableList(urls);
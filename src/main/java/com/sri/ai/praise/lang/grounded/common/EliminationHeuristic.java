@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.common;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Heuristics for choosing the next variable to eliminate from an {@link InteractionGraph}, 
+ * the variable with the lowest score being eliminated first.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public enum EliminationHeuristic {
+	/**
+	 * The variable with the fewest neighbors, i.e. producing the factor with the fewest variables.
+	 */
+	MIN_NEIGHBORS {
+		@Override
+		public long score(InteractionGraph graph, int variableIndex) {
+			return graph.numberNeighbors(variableIndex);
+		}
+		
+		@Override
+		public boolean scoreDependsOnNeighborsOfNeighbors() {
+			return false;
+		}
+	},
+	/**
+	 * The variable whose elimination adds the fewest edges between its neighbors.
+	 */
+	MIN_FILL {
+		@Override
+		public long score(InteractionGraph graph, int variableIndex) {
+			return graph.fill(variableIndex);
+		}
+		
+		@Override
+		public boolean scoreDependsOnNeighborsOfNeighbors() {
+			return true;
+		}
+	},
+	/**
+	 * The variable whose elimination adds the edges with the smallest sum of products of the cardinalities of the variables they join.
+	 */
+	WEIGHTED_MIN_FILL {
+		@Override
+		public long score(InteractionGraph graph, int variableIndex) {
+			return graph.weightedFill(variableIndex);
+		}
+		
+		@Override
+		public boolean scoreDependsOnNeighborsOfNeighbors() {
+			return true;
+		}
+	};
+	
+	/**
+	 * 
+	 * @param graph
+	 * @param variableIndex
+	 * @return the score of eliminating the variable next (lower is better).
+	 */
+	public abstract long score(InteractionGraph graph, int variableIndex);
+	
+	/**
+	 * 
+	 * @return whether eliminating a variable can change the score of variables two edges away from it 
+	 *         (otherwise only the scores of its neighbors change).
+	 */
+	public abstract boolean scoreDependsOnNeighborsOfNeighbors();
+}
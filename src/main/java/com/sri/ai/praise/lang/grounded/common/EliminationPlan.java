@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.common;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * An elimination order for the variables of a {@link GraphicalNetwork} together with the cost predicted for it,
+ * as computed by {@link EliminationPlanner}.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class EliminationPlan {
+	private EliminationHeuristic heuristic;
+	private List<Integer>        order;
+	private int                  inducedWidth;
+	private long                 peakTableSize;
+	private long                 totalTableSize;
+	
+	public EliminationPlan(EliminationHeuristic heuristic, List<Integer> order, int inducedWidth, long peakTableSize, long totalTableSize) {
+		this.heuristic      = heuristic;
+		this.order          = Collections.unmodifiableList(order);
+		this.inducedWidth   = inducedWidth;
+		this.peakTableSize  = peakTableSize;
+		this.totalTableSize = totalTableSize;
+	}
+	
+	public EliminationHeuristic getHeuristic() {
+		return heuristic;
+	}
+	
+	/**
+	 * 
+	 * @return the variables in the order they are to be eliminated.
+	 */
+	public List<Integer> getOrder() {
+		return order;
+	}
+	
+	/**
+	 * 
+	 * @return the largest number of neighbors a variable has when eliminated, 
+	 *         i.e. an upper bound on the network's treewidth.
+	 */
+	public int getInducedWidth() {
+		return inducedWidth;
+	}
+	
+	/**
+	 * 
+	 * @return the number of entries of the largest table created by the elimination 
+	 *         (a variable and its neighbors when eliminated), Long.MAX_VALUE if it overflows.
+	 */
+	public long getPeakTableSize() {
+		return peakTableSize;
+	}
+	
+	/**
+	 * 
+	 * @return the total number of entries of the tables created by the elimination, Long.MAX_VALUE if it overflows,
+	 *         a measure of the time the elimination will take.
+	 */
+	public long getTotalTableSize() {
+		return totalTableSize;
+	}
+	
+	@Override
+	public String toString() {
+		return heuristic+" plan: induced width="+inducedWidth+", peak table size="+peakTableSize+", total table size="+totalTableSize;
+	}
+}
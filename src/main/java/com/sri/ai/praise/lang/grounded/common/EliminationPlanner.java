@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Plans the elimination of the variables of a {@link GraphicalNetwork}, by simulating it on the network's primal graph 
+ * (its {@link InteractionGraph}) with an {@link EliminationHeuristic}, and predicts its cost (induced width, peak and total table sizes)
+ * so that solvers can reject or route hopeless models and schedulers can order work by predicted cost.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class EliminationPlanner {
+	
+	/**
+	 * 
+	 * @param network
+	 * @param excludedVariables
+	 *        variables left out of the graph (e.g. evidence variables, which conditioning disconnects).
+	 * @return the primal graph of the network, in which variables sharing a table are neighbors.
+	 */
+	public static InteractionGraph primalGraph(GraphicalNetwork network, Set<Integer> excludedVariables) {
+		InteractionGraph result = new InteractionGraph(network);
+		List<Integer>    clique = new ArrayList<>();
+		for (int t = 0; t < network.numberTables(); t++) {
+			clique.clear();
+			for (Integer varIdx : network.getVariableIndexesForTable(t)) {
+				if (!excludedVariables.contains(varIdx)) {
+					clique.add(varIdx);
+				}
+			}
+			result.addClique(clique);
+		}
+		return result;
+	}
+	
+	public static EliminationPlan plan(GraphicalNetwork network, EliminationHeuristic heuristic) {
+		return plan(network, Collections.emptySet(), heuristic);
+	}
+	
+	/**
+	 * Plans the elimination of all but the excluded variables of a network.
+	 * @param network
+	 * @param excludedVariables
+	 *        variables neither eliminated nor taken into account (e.g. evidence variables).
+	 * @param heuristic
+	 *        the heuristic picking the variable to be eliminated next.
+	 * @return the resulting plan.
+	 */
+	public static EliminationPlan plan(GraphicalNetwork network, Set<Integer> excludedVariables, EliminationHeuristic heuristic) {
+		InteractionGraph graph = primalGraph(network, excludedVariables);
+		EliminationQueue queue = new EliminationQueue(graph, heuristic);
+		for (int i = 0; i < network.numberVariables(); i++) {
+			if (!excludedVariables.contains(i)) {
+				queue.add(i);
+			}
+		}
+		
+		List<Integer> order          = new ArrayList<>(queue.size());
+		int           inducedWidth   = 0;
+		long          peakTableSize  = 0;
+		long          totalTableSize = 0;
+		while (!queue.isEmpty()) {
+			int varIdx = queue.poll();
+			
+			long tableSize = network.cardinality(varIdx);
+			for (Integer neighbor : graph.neighbors(varIdx)) {
+				tableSize = saturatedMultiply(tableSize, network.cardinality(neighbor));
+			}
+			inducedWidth   = Math.max(inducedWidth, graph.numberNeighbors(varIdx));
+			peakTableSize  = Math.max(peakTableSize, tableSize);
+			totalTableSize = saturatedAdd(totalTableSize, tableSize);
+			
+			order.add(varIdx);
+			queue.eliminate(varIdx);
+		}
+		
+		EliminationPlan result = new EliminationPlan(heuristic, order, inducedWidth, peakTableSize, totalTableSize);
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param network
+	 * @param excludedVariables
+	 *        variables neither eliminated nor taken into account (e.g. evidence variables).
+	 * @return the plan with the smallest peak table size (then total table size) among those of all heuristics.
+	 */
+	public static EliminationPlan bestPlan(GraphicalNetwork network, Set<Integer> excludedVariables) {
+		EliminationPlan result = null;
+		for (EliminationHeuristic heuristic : EliminationHeuristic.values()) {
+			EliminationPlan plan = plan(network, excludedVariables, heuristic);
+			if (result == null || plan.getPeakTableSize() < result.getPeakTableSize() 
+					|| (plan.getPeakTableSize() == result.getPeakTableSize() && plan.getTotalTableSize() < result.getTotalTableSize())) {
+				result = plan;
+			}
+		}
+		return result;
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static long saturatedMultiply(long a, long b) {
+		long result;
+		try {
+			result = Math.multiplyExact(a, b);
+		}
+		catch (ArithmeticException overflow) {
+			result = Long.MAX_VALUE;
+		}
+		return result;
+	}
+	
+	private static long saturatedAdd(long a, long b) {
+		long result;
+		try {
+			result = Math.addExact(a, b);
+		}
+		catch (ArithmeticException overflow) {
+			result = Long.MAX_VALUE;
+		}
+		return result;
+	}
+}
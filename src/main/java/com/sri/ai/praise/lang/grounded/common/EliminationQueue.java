@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.common;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntToLongFunction;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A priority queue of the variables of an {@link InteractionGraph} still to be eliminated, ordered by an {@link EliminationHeuristic}.
+ * Scores are kept up to date incrementally: eliminating a variable only rescores the variables whose neighborhoods changed.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class EliminationQueue {
+	private InteractionGraph      graph;
+	private EliminationHeuristic  heuristic;
+	private IntToLongFunction     tieBreaker;
+	private long[]                scores;
+	private long[]                tieBreaks;
+	private boolean[]             queued;
+	private NavigableSet<Integer> queue;
+	
+	/**
+	 * Constructor.
+	 * @param graph
+	 *        the graph the variables are eliminated from.
+	 * @param heuristic
+	 *        the heuristic ordering the variables.
+	 * @param tieBreaker
+	 *        a function from variables to keys ordering variables with the same score (lowest first, then lowest variable index), 
+	 *        re-evaluated whenever a variable is rescored.
+	 */
+	public EliminationQueue(InteractionGraph graph, EliminationHeuristic heuristic, IntToLongFunction tieBreaker) {
+		this.graph      = graph;
+		this.heuristic  = heuristic;
+		this.tieBreaker = tieBreaker;
+		this.scores     = new long[graph.numberVariables()];
+		this.tieBreaks  = new long[graph.numberVariables()];
+		this.queued     = new boolean[graph.numberVariables()];
+		this.queue      = new TreeSet<>((v1, v2) -> {
+			int result = Long.compare(scores[v1], scores[v2]);
+			if (result == 0) {
+				result = Long.compare(tieBreaks[v1], tieBreaks[v2]);
+				if (result == 0) {
+					result = Integer.compare(v1, v2);
+				}
+			}
+			return result;
+		});
+	}
+	
+	/**
+	 * Constructor breaking ties by variable index.
+	 * @param graph
+	 * @param heuristic
+	 */
+	public EliminationQueue(InteractionGraph graph, EliminationHeuristic heuristic) {
+		this(graph, heuristic, variableIndex -> 0);
+	}
+	
+	/**
+	 * Adds a variable to the queue (to be called once the graph's edges on the variable are in place).
+	 * @param variableIndex
+	 */
+	public void add(int variableIndex) {
+		if (!queued[variableIndex]) {
+			queued[variableIndex] = true;
+			rescore(variableIndex);
+		}
+	}
+	
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+	
+	public int size() {
+		return queue.size();
+	}
+	
+	/**
+	 * Removes the variable to be eliminated next from the queue, without eliminating it from the graph 
+	 * (which is to be done with {@link #eliminate(int)}).
+	 * @return the variable with the lowest score.
+	 */
+	public int poll() {
+		int result = queue.pollFirst();
+		queued[result] = false;
+		return result;
+	}
+	
+	/**
+	 * Eliminates a variable from the graph and rescores the queued variables whose score may have changed.
+	 * @param variableIndex
+	 * @return the variable's neighbors at the time of its elimination.
+	 */
+	public List<Integer> eliminate(int variableIndex) {
+		if (queued[variableIndex]) {
+			queue.remove(variableIndex);
+			queued[variableIndex] = false;
+		}
+		List<Integer> result = graph.eliminate(variableIndex);
+		
+		Set<Integer> affected = new LinkedHashSet<>(result);
+		if (heuristic.scoreDependsOnNeighborsOfNeighbors()) {
+			for (Integer neighbor : result) {
+				affected.addAll(graph.neighbors(neighbor));
+			}
+		}
+		for (Integer affectedVariableIndex : affected) {
+			if (queued[affectedVariableIndex]) {
+				rescore(affectedVariableIndex);
+			}
+		}
+		return result;
+	}
+	
+	//
+	// PRIVATE
+	//
+	private void rescore(int variableIndex) {
+		// must leave the queue while its keys change
+		queue.remove(variableIndex);
+		scores[variableIndex]    = heuristic.score(graph, variableIndex);
+		tieBreaks[variableIndex] = tieBreaker.applyAsLong(variableIndex);
+		queue.add(variableIndex);
+	}
+}
@@ -37,134 +37,283 @@
  */
 package com.sri.ai.praise.lang.grounded.common;
 
-import java.math.BigInteger;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import com.google.common.annotations.Beta;
-import com.sri.ai.util.collect.CartesianProductEnumeration;
-import com.sri.ai.util.math.MixedRadixNumber;
 
 /**
  * Basic representation of a function described by a table of values.
- * 
+ * <p>
+ * Entries are kept in a flat <code>double[]</code> in which the last variable varies fastest
+ * (the same order as in UAI files), and are located with strides precomputed from the cardinalities,
+ * so {@link #entryAt(int...)} and {@link #entryAtLinear(int)} perform no allocation.
+ *
  * @author oreilly
  *
  */
 @Beta
 public class FunctionTable {
 	private List<Integer> varCardinalities = new ArrayList<>();
-	private List<Double> entries;
-	private MixedRadixNumber entryIndex;
-	
+	private int[] cardinalities;
+	private int[] strides;
+	private double[] entries;
+	private List<Double> entriesView = new EntriesView();
+	private long contentHash;
+	private boolean contentHashComputed = false;
+
 	public FunctionTable(List<Integer> varCardinalities, List<Double> entries) {
-		this.varCardinalities.addAll(varCardinalities);	
+		this(varCardinalities, entries.stream().mapToDouble(Double::doubleValue).toArray());
+	}
+
+	/**
+	 * Constructor.
+	 * @param varCardinalities
+	 *        the cardinalities of the table's variables.
+	 * @param entries
+	 *        the table's entries, last variable varying fastest. Note: the array is not copied
+	 *        and must not be modified afterwards.
+	 */
+	public FunctionTable(List<Integer> varCardinalities, double[] entries) {
+		this.varCardinalities.addAll(varCardinalities);
 		this.varCardinalities = Collections.unmodifiableList(this.varCardinalities);
-		this.entries = new ArrayList<>(entries);
-				
+		this.entries = entries;
+
 		int numEntriesExpected = numEntriesFor(varCardinalities);
-		if (numEntriesExpected != this.entries.size()) {
-			throw new IllegalArgumentException("#entries "+this.entries.size()+" does not match the expected # of "+numEntriesExpected);
+		if (numEntriesExpected != this.entries.length) {
+			throw new IllegalArgumentException("#entries "+this.entries.length+" does not match the expected # of "+numEntriesExpected);
 		}
 
-		this.entryIndex = new MixedRadixNumber(BigInteger.ZERO, this.varCardinalities);
+		this.cardinalities = new int[this.varCardinalities.size()];
+		this.strides       = new int[this.varCardinalities.size()];
+		int stride = 1;
+		for (int i = this.cardinalities.length - 1; i >= 0; i--) {
+			this.cardinalities[i] = this.varCardinalities.get(i);
+			this.strides[i]       = stride;
+			stride *= this.cardinalities[i];
+		}
 	}
-	
+
 	public int numberVariables() {
-		return varCardinalities.size();
+		return cardinalities.length;
 	}
-	
+
 	public int cardinality(int varIdx) {
-		return varCardinalities.get(varIdx);
+		return cardinalities[varIdx];
 	}
-	
+
+	/**
+	 *
+	 * @param varIdx
+	 *        the index of one of the table's variables.
+	 * @return the distance, in the linear order of entries, between two entries that only differ by one in the given variable's value.
+	 */
+	public int stride(int varIdx) {
+		return strides[varIdx];
+	}
+
 	public List<Integer> getVariableCardinalities() {
-		return varCardinalities; 
+		return varCardinalities;
 	}
-	
+
 	public int numberEntries() {
-		return entries.size();
+		return entries.length;
 	}
-	
+
+	/**
+	 *
+	 * @return an unmodifiable view of the entries (boxing only happens on access).
+	 */
 	public List<Double> getEntries() {
+		return entriesView;
+	}
+
+	/**
+	 *
+	 * @return the entries, last variable varying fastest, for use by numeric kernels. Note: the array is not copied
+	 *         and must not be modified.
+	 */
+	public double[] getEntriesArray() {
 		return entries;
 	}
-	
+
 	public Double entryFor(List<Integer> varValues) {
-		Double result = null;
-	
-		int[] radixValues = new int[varValues.size()];
-		for (int i = 0; i < radixValues.length; i++) {
-			radixValues[i] = varValues.get(i);
+		int linearIndex = 0;
+		for (int i = 0; i < strides.length; i++) {
+			linearIndex += varValues.get(i) * strides[i];
 		}
-		result = entries.get(this.entryIndex.getValueFor(radixValues).intValue());
-		
+		Double result = entries[linearIndex];
+
 		return result;
 	}
-	
+
+	/**
+	 *
+	 * @param varValues
+	 *        a value for each of the table's variables.
+	 * @return the entry for the given assignment.
+	 */
+	public double entryAt(int... varValues) {
+		return entries[linearIndexOf(varValues)];
+	}
+
+	/**
+	 *
+	 * @param linearIndex
+	 *        the position of an entry in the table (last variable varying fastest).
+	 * @return the entry at the given position.
+	 */
+	public double entryAtLinear(int linearIndex) {
+		return entries[linearIndex];
+	}
+
+	/**
+	 *
+	 * @param varValues
+	 *        a value for each of the table's variables.
+	 * @return the position of the entry for the given assignment (last variable varying fastest).
+	 */
+	public int linearIndexOf(int... varValues) {
+		int result = 0;
+		for (int i = 0; i < strides.length; i++) {
+			result += varValues[i] * strides[i];
+		}
+		return result;
+	}
+
 	public Double valueFor(Map<Integer, Integer> assignmentMap) {
 		double result = 0;
-		
+
 		// If have all assignments then get the entry straight off as opposed to summing them
-		if (assignmentMap.size() == varCardinalities.size()) {
-			result = entryFor(IntStream.range(0, varCardinalities.size()).boxed().map(i -> assignmentMap.get(i)).collect(Collectors.toList()));
+		if (assignmentMap.size() == cardinalities.length) {
+			int linearIndex = 0;
+			for (int i = 0; i < strides.length; i++) {
+				linearIndex += assignmentMap.get(i) * strides[i];
+			}
+			result = entries[linearIndex];
 		}
 		else {
-			// More than 1 entry value needs to be summed up
-			List<List<Integer>> possibleValues = new ArrayList<>(); 
-			for (int i = 0; i < varCardinalities.size(); i++) {
+			// More than 1 entry value needs to be summed up, so enumerate the values of the unassigned variables
+			int   base          = 0;
+			int[] freeVarIdxs   = new int[cardinalities.length];
+			int   numberFree    = 0;
+			for (int i = 0; i < cardinalities.length; i++) {
 				Integer value = assignmentMap.get(i);
 				if (value == null) {
-					possibleValues.add(IntStream.range(0, varCardinalities.get(i)).boxed().collect(Collectors.toList()));
+					freeVarIdxs[numberFree++] = i;
 				}
 				else {
-					possibleValues.add(Arrays.asList(value));
+					base += value * strides[i];
 				}
 			}
-			
-			CartesianProductEnumeration<Integer> cpe = new CartesianProductEnumeration<>(possibleValues);
-			while (cpe.hasMoreElements()) {
-				result += entryFor(cpe.nextElement());
+
+			int[]   freeValues = new int[numberFree];
+			int     offset     = 0;
+			boolean done       = false;
+			while (!done) {
+				result += entries[base + offset];
+				done = true;
+				for (int f = numberFree - 1; f >= 0; f--) {
+					int varIdx = freeVarIdxs[f];
+					if (++freeValues[f] < cardinalities[varIdx]) {
+						offset += strides[varIdx];
+						done = false;
+						break;
+					}
+					offset -= (freeValues[f] - 1) * strides[varIdx];
+					freeValues[f] = 0;
+				}
 			}
 		}
-		
+
 		return result;
 	}
-	 
+
+	/**
+	 * 
+	 * @return a 64-bit hash of the table's cardinalities and entries (computed once), 
+	 *         suitable for indexing tables by content with very few collisions.
+	 */
+	public long contentHash() {
+		if (!contentHashComputed) {
+			long hash = 0xcbf29ce484222325L;
+			for (int cardinality : cardinalities) {
+				hash = mix(hash, cardinality);
+			}
+			for (double entry : entries) {
+				hash = mix(hash, Double.doubleToLongBits(entry));
+			}
+			contentHash         = hash;
+			contentHashComputed = true;
+		}
+		return contentHash;
+	}
+	
+	/**
+	 *
+	 * @param varCardinalities
+	 *        the cardinalities of a table's variables.
+	 * @return the number of entries of the table (1 for a table without variables, i.e. a constant).
+	 */
 	public static int numEntriesFor(List<Integer> varCardinalities) {
-		int result = 0;
-		if (varCardinalities.size() > 0) {
-			result = varCardinalities.stream().reduce((card1, card2) -> card1 * card2).get();
+		int result = 1;
+		for (Integer cardinality : varCardinalities) {
+			result *= cardinality;
 		}
 		return result;
 	}
-	
+
 	public static List<List<Integer>> cardinalityValues(List<Integer> varCardinalities) {
 		List<List<Integer>> result = new ArrayList<>();
-		
+
 		for (Integer card : varCardinalities) {
 			result.add(IntStream.range(0, card).boxed().collect(Collectors.toList()));
 		}
-		
+
 		return result;
 	}
-	
+
 	@Override
 	public boolean equals(Object obj) {
 		if (obj != null && obj instanceof FunctionTable) {
 			FunctionTable other = (FunctionTable) obj;
-			return this.varCardinalities.equals(other.varCardinalities) && this.entries.equals(other.entries);
+			return this.varCardinalities.equals(other.varCardinalities) && Arrays.equals(this.entries, other.entries);
 		}
 		return false;
 	}
-	
+
 	@Override
 	public int hashCode() {
-		return this.varCardinalities.hashCode() + this.entries.hashCode();
+		long hash = contentHash();
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	//
+	// PRIVATE
+	//
+	private static long mix(long hash, long value) {
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		hash   = (hash ^ value) * 0xc4ceb9fe1a85ec53L;
+		return hash ^ (hash >>> 29);
+	}
+
+	private class EntriesView extends AbstractList<Double> implements RandomAccess {
+		@Override
+		public Double get(int index) {
+			return entries[index];
+		}
+
+		@Override
+		public int size() {
+			return entries.length;
+		}
 	}
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * The interaction graph of variables of a {@link GraphicalNetwork}, in which two variables are neighbors 
+ * if they share a table, maintained incrementally as variables are eliminated.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class InteractionGraph {
+	private int[]              cardinalities;
+	private List<Set<Integer>> neighbors;
+	
+	/**
+	 * Constructs a graph on the network's variables without any edges.
+	 * @param network
+	 */
+	public InteractionGraph(GraphicalNetwork network) {
+		this.cardinalities = new int[network.numberVariables()];
+		this.neighbors     = new ArrayList<>(network.numberVariables());
+		for (int i = 0; i < cardinalities.length; i++) {
+			this.cardinalities[i] = network.cardinality(i);
+			this.neighbors.add(new LinkedHashSet<>());
+		}
+	}
+	
+	public int numberVariables() {
+		return cardinalities.length;
+	}
+	
+	public int cardinality(int variableIndex) {
+		return cardinalities[variableIndex];
+	}
+	
+	/**
+	 * Makes all the given variables neighbors of each other (e.g. because they share a table).
+	 * @param variableIndexes
+	 */
+	public void addClique(Collection<Integer> variableIndexes) {
+		for (Integer variableIndex : variableIndexes) {
+			Set<Integer> variableNeighbors = neighbors.get(variableIndex);
+			for (Integer other : variableIndexes) {
+				if (!other.equals(variableIndex)) {
+					variableNeighbors.add(other);
+				}
+			}
+		}
+	}
+	
+	public Set<Integer> neighbors(int variableIndex) {
+		return neighbors.get(variableIndex);
+	}
+	
+	public int numberNeighbors(int variableIndex) {
+		return neighbors.get(variableIndex).size();
+	}
+	
+	/**
+	 * 
+	 * @param variableIndex
+	 * @return the number of edges eliminating the variable would add between its neighbors.
+	 */
+	public long fill(int variableIndex) {
+		long         result            = 0;
+		Set<Integer> variableNeighbors = neighbors.get(variableIndex);
+		for (Integer neighbor : variableNeighbors) {
+			Set<Integer> neighborNeighbors = neighbors.get(neighbor);
+			for (Integer other : variableNeighbors) {
+				if (other < neighbor && !neighborNeighbors.contains(other)) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param variableIndex
+	 * @return the sum, over the edges eliminating the variable would add, of the product of the cardinalities of the variables they join.
+	 */
+	public long weightedFill(int variableIndex) {
+		long         result            = 0;
+		Set<Integer> variableNeighbors = neighbors.get(variableIndex);
+		for (Integer neighbor : variableNeighbors) {
+			Set<Integer> neighborNeighbors = neighbors.get(neighbor);
+			for (Integer other : variableNeighbors) {
+				if (other < neighbor && !neighborNeighbors.contains(other)) {
+					result += ((long) cardinalities[neighbor]) * cardinalities[other];
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Eliminates a variable, making its neighbors neighbors of each other and removing it from the graph.
+	 * @param variableIndex
+	 * @return the variable's neighbors at the time of its elimination.
+	 */
+	public List<Integer> eliminate(int variableIndex) {
+		List<Integer> result = new ArrayList<>(neighbors.get(variableIndex));
+		for (Integer neighbor : result) {
+			neighbors.get(neighbor).remove(variableIndex);
+		}
+		addClique(result);
+		neighbors.get(variableIndex).clear();
+		return result;
+	}
+}
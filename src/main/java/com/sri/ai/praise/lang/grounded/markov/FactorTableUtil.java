@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.lang.grounded.common.GraphicalNetwork;
+
+/**
+ * Numeric kernels on factor tables for use by variable elimination and related transformations.
+ * All tables are laid out with their last variable varying fastest, and assignments are walked
+ * by adding precomputed strides to offsets, so the kernels perform no boxing and no allocation per entry.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class FactorTableUtil {
+	
+	/**
+	 * Multiplies factors into a single factor, in one pass over the product's entries.
+	 * @param network
+	 *        the network the factors' variables belong to.
+	 * @param variableIndexes
+	 *        the variables of the product (in the order the product's table is to be laid out), 
+	 *        which must include all the variables of the factors.
+	 * @param factors
+	 *        the factors to multiply.
+	 * @return the product of the factors.
+	 */
+	public static FactorTable product(GraphicalNetwork network, List<Integer> variableIndexes, List<FactorTable> factors) {
+		int[]      cardinalities = new int[variableIndexes.size()];
+		double[][] entries       = new double[factors.size()][];
+		int[][]    strides       = new int[factors.size()][cardinalities.length];
+		for (int j = 0; j < cardinalities.length; j++) {
+			cardinalities[j] = network.cardinality(variableIndexes.get(j));
+		}
+		for (int f = 0; f < entries.length; f++) {
+			FactorTable   factor = factors.get(f);
+			FunctionTable table  = factor.getTable();
+			entries[f] = table.getEntriesArray();
+			for (int i = 0; i < table.numberVariables(); i++) {
+				int position = variableIndexes.indexOf(factor.getVariableIndexes().get(i));
+				if (position == -1) {
+					throw new IllegalArgumentException("Factor variable "+factor.getVariableIndexes().get(i)+" is not one of the product's variables "+variableIndexes);
+				}
+				strides[f][position] += table.stride(i);
+			}
+		}
+		
+		double[] productEntries = new double[numberEntries(cardinalities)];
+		product(cardinalities, entries, strides, productEntries);
+		
+		FactorTable result = new FactorTable(variableIndexes, new FunctionTable(toList(cardinalities), productEntries));
+		return result;
+	}
+	
+	/**
+	 * Multiplies tables into a table over a given set of variables.
+	 * @param cardinalities
+	 *        the cardinalities of the product's variables.
+	 * @param entries
+	 *        the entries of each of the tables.
+	 * @param strides
+	 *        for each table, the stride in that table of each of the product's variables (0 for variables the table does not contain).
+	 * @param result
+	 *        the array receiving the product's entries, of length the product of the cardinalities.
+	 */
+	public static void product(int[] cardinalities, double[][] entries, int[][] strides, double[] result) {
+		int numberTables = entries.length;
+		int last         = cardinalities.length - 1;
+		if (last < 0) {
+			double product = 1;
+			for (int f = 0; f < numberTables; f++) {
+				product *= entries[f][0];
+			}
+			result[0] = product;
+			return;
+		}
+		
+		// entries are computed a run of the last variable at a time, one table after the other (in the given order, 
+		// so the result does not depend on how runs are formed), walking each table along the run with its last variable stride
+		int   runLength = cardinalities[last];
+		int[] offsets   = new int[numberTables];
+		int[] values    = new int[cardinalities.length];
+		for (int i = 0; i < result.length; i += runLength) {
+			for (int v = 0; v < runLength; v++) {
+				result[i + v] = 1;
+			}
+			for (int f = 0; f < numberTables; f++) {
+				double[] table  = entries[f];
+				int      stride = strides[f][last];
+				int      offset = offsets[f];
+				for (int v = 0; v < runLength; v++, offset += stride) {
+					result[i + v] *= table[offset];
+				}
+			}
+			
+			// move to the next assignment to all but the last variable
+			for (int j = last - 1; j >= 0; j--) {
+				if (++values[j] < cardinalities[j]) {
+					for (int f = 0; f < numberTables; f++) {
+						offsets[f] += strides[f][j];
+					}
+					break;
+				}
+				for (int f = 0; f < numberTables; f++) {
+					offsets[f] -= (values[j] - 1) * strides[f][j];
+				}
+				values[j] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Sums out one of the variables of a factor.
+	 * @param network
+	 *        the network the factor's variables belong to.
+	 * @param factor
+	 *        the factor.
+	 * @param variableIndex
+	 *        the variable to be summed out.
+	 * @return a factor on the remaining variables (in the same order).
+	 */
+	public static FactorTable sumOut(GraphicalNetwork network, FactorTable factor, int variableIndex) {
+		int position = factor.getVariableIndexes().indexOf(variableIndex);
+		if (position == -1) {
+			throw new IllegalArgumentException("Variable "+variableIndex+" is not in factor "+factor.getVariableIndexes());
+		}
+		List<Integer> cardinalities          = factor.getTable().getVariableCardinalities();
+		double[]      summedOut              = sumOut(cardinalities.stream().mapToInt(Integer::intValue).toArray(), factor.getTable().getEntriesArray(), position);
+		List<Integer> remainingVariableIdxs  = new ArrayList<>(factor.getVariableIndexes());
+		List<Integer> remainingCardinalities = new ArrayList<>(cardinalities);
+		remainingVariableIdxs.remove(position);
+		remainingCardinalities.remove(position);
+		
+		FactorTable result = new FactorTable(remainingVariableIdxs, new FunctionTable(remainingCardinalities, summedOut));
+		return result;
+	}
+	
+	/**
+	 * Sums out one of the variables of a table.
+	 * @param cardinalities
+	 *        the cardinalities of the table's variables.
+	 * @param entries
+	 *        the table's entries.
+	 * @param position
+	 *        the position, among the table's variables, of the variable to be summed out.
+	 * @return the entries of the table on the remaining variables.
+	 */
+	public static double[] sumOut(int[] cardinalities, double[] entries, int position) {
+		int cardinality = cardinalities[position];
+		int inner       = 1;
+		for (int j = position + 1; j < cardinalities.length; j++) {
+			inner *= cardinalities[j];
+		}
+		int      outer  = entries.length / (cardinality * inner);
+		double[] result = new double[outer * inner];
+		for (int o = 0, from = 0; o < outer; o++) {
+			int to = o * inner;
+			for (int v = 0; v < cardinality; v++, from += inner) {
+				for (int i = 0; i < inner; i++) {
+					result[to + i] += entries[from + i];
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Sums out all but some of the variables of a factor.
+	 * @param network
+	 *        the network the factor's variables belong to.
+	 * @param factor
+	 *        the factor.
+	 * @param variableIndexes
+	 *        the variables to be kept (in the order the result's table is to be laid out), all of which must be in the factor.
+	 * @return the marginal of the factor on the given variables.
+	 */
+	public static FactorTable marginal(GraphicalNetwork network, FactorTable factor, List<Integer> variableIndexes) {
+		FunctionTable table             = factor.getTable();
+		int[]         cardinalities     = new int[table.numberVariables()];
+		int[]         strides           = new int[table.numberVariables()];
+		List<Integer> keptCardinalities = new ArrayList<>(variableIndexes.size());
+		for (Integer varIdx : variableIndexes) {
+			if (!factor.getVariableIndexes().contains(varIdx)) {
+				throw new IllegalArgumentException("Variable "+varIdx+" is not in factor "+factor.getVariableIndexes());
+			}
+			keptCardinalities.add(network.cardinality(varIdx));
+		}
+		int stride = 1;
+		for (int j = variableIndexes.size() - 1; j >= 0; j--) {
+			strides[factor.getVariableIndexes().indexOf(variableIndexes.get(j))] = stride;
+			stride *= keptCardinalities.get(j);
+		}
+		for (int i = 0; i < cardinalities.length; i++) {
+			cardinalities[i] = table.cardinality(i);
+		}
+		
+		double[] marginalEntries = new double[stride];
+		sumOnto(cardinalities, table.getEntriesArray(), strides, marginalEntries);
+		
+		FactorTable result = new FactorTable(variableIndexes, new FunctionTable(keptCardinalities, marginalEntries));
+		return result;
+	}
+	
+	/**
+	 * Adds the entries of a table into the entries of a table on some of its variables (i.e. sums out the others).
+	 * @param cardinalities
+	 *        the cardinalities of the table's variables.
+	 * @param entries
+	 *        the table's entries.
+	 * @param resultStrides
+	 *        the stride in the result of each of the table's variables (0 for variables summed out).
+	 * @param result
+	 *        the array the entries are added to.
+	 */
+	public static void sumOnto(int[] cardinalities, double[] entries, int[] resultStrides, double[] result) {
+		int last = cardinalities.length - 1;
+		if (last < 0) {
+			result[0] += entries[0];
+			return;
+		}
+		int   runLength = cardinalities[last];
+		int   runStride = resultStrides[last];
+		int   offset    = 0;
+		int[] values    = new int[cardinalities.length];
+		for (int i = 0; i < entries.length; i += runLength) {
+			for (int v = 0, to = offset; v < runLength; v++, to += runStride) {
+				result[to] += entries[i + v];
+			}
+			
+			// move to the next assignment to all but the last variable
+			for (int j = last - 1; j >= 0; j--) {
+				if (++values[j] < cardinalities[j]) {
+					offset += resultStrides[j];
+					break;
+				}
+				offset -= (values[j] - 1) * resultStrides[j];
+				values[j] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * Sums out one of the variables of a table and normalizes the table over that variable, in a single sweep 
+	 * (which reads contiguous entries when the variable is the last one).
+	 * @param cardinalities
+	 *        the cardinalities of the table's variables.
+	 * @param entries
+	 *        the table's entries.
+	 * @param position
+	 *        the position, among the table's variables, of the variable to be summed out.
+	 * @param valueIfZeroSum
+	 *        the normalized value of entries whose assignment to the other variables sums to zero.
+	 * @param summedOut
+	 *        the array receiving the sum for each assignment to the other variables (laid out in the same order).
+	 * @param normalized
+	 *        the array receiving the entries divided by their sums, laid out with the summed out variable moved to the last position.
+	 */
+	public static void sumOutAndNormalize(int[] cardinalities, double[] entries, int position, double valueIfZeroSum, double[] summedOut, double[] normalized) {
+		int cardinality = cardinalities[position];
+		int inner       = 1;
+		for (int j = position + 1; j < cardinalities.length; j++) {
+			inner *= cardinalities[j];
+		}
+		int outer = entries.length / (cardinality * inner);
+		for (int o = 0, p = 0; o < outer; o++) {
+			int start = o * cardinality * inner;
+			for (int i = 0; i < inner; i++, p++) {
+				double sum = 0;
+				for (int v = 0, from = start + i; v < cardinality; v++, from += inner) {
+					sum += entries[from];
+				}
+				summedOut[p] = sum;
+				int to = p * cardinality;
+				if (sum == 0) {
+					for (int v = 0; v < cardinality; v++) {
+						normalized[to + v] = valueIfZeroSum;
+					}
+				}
+				else {
+					for (int v = 0, from = start + i; v < cardinality; v++, from += inner) {
+						normalized[to + v] = entries[from] / sum;
+					}
+				}
+			}
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static int numberEntries(int[] cardinalities) {
+		int result = 1;
+		for (int cardinality : cardinalities) {
+			result *= cardinality;
+		}
+		return result;
+	}
+	
+	private static List<Integer> toList(int[] values) {
+		List<Integer> result = new ArrayList<>(values.length);
+		for (int value : values) {
+			result.add(value);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.markov;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.inference.QueryCanceledException;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlan;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlanner;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+/**
+ * Exact numeric inference on a {@link MarkovNetwork} with evidence, by variable elimination on flat tables 
+ * organized as a bucket tree (a junction tree with one cluster per eliminated variable). 
+ * Eliminating the variables in the planned order computes the partition function (the probability of the evidence, PR, for Bayes networks), 
+ * and passing messages back in the reverse order then gives the marginals of all the variables (MAR) for about twice the cost.
+ * <p>
+ * Tables and messages are rescaled to a largest entry of 1 as they are created, the scales being accumulated in log space,
+ * so that products of many small numbers do not underflow.
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class NumericVariableElimination {
+	private MarkovNetwork              network;
+	private Map<Integer, Integer>      evidence = new LinkedHashMap<>();
+	private EliminationPlan            plan;
+	private CancellationToken          cancellationToken;
+	//
+	private List<List<FactorTable>>    bucketFactors          = new ArrayList<>(); // the (conditioned) tables whose first eliminated variable is the bucket's
+	private List<List<Integer>>        bucketChildren         = new ArrayList<>();
+	private List<List<Integer>>        clusterScopes          = new ArrayList<>();
+	private FactorTable[]              upMessages;
+	private double                     log10PartitionFunction = 0;
+	private Map<Integer, List<Double>> marginals              = null;
+	
+	/**
+	 * Constructor, eliminating variables in the order of the best plan found by {@link EliminationPlanner#bestPlan}.
+	 * @param network
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 */
+	public NumericVariableElimination(MarkovNetwork network, Map<Integer, Integer> evidence) {
+		this(network, evidence, new CancellationToken());
+	}
+	
+	/**
+	 * Constructor, eliminating variables in the order of the best plan found by {@link EliminationPlanner#bestPlan}.
+	 * @param network
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 * @param cancellationToken
+	 *        a token checked before each bucket is processed, here and when computing marginals.
+	 * @throws QueryCanceledException if the token is canceled before the partition function is computed.
+	 */
+	public NumericVariableElimination(MarkovNetwork network, Map<Integer, Integer> evidence, CancellationToken cancellationToken) {
+		this(network, evidence, EliminationPlanner.bestPlan(network, evidence.keySet()), cancellationToken);
+	}
+	
+	/**
+	 * Constructor, computing the partition function.
+	 * @param network
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 * @param plan
+	 *        a plan for eliminating all variables without evidence.
+	 */
+	public NumericVariableElimination(MarkovNetwork network, Map<Integer, Integer> evidence, EliminationPlan plan) {
+		this(network, evidence, plan, new CancellationToken());
+	}
+	
+	/**
+	 * Constructor, computing the partition function.
+	 * @param network
+	 * @param evidence
+	 *        a map from variable indexes to their observed value indexes.
+	 * @param plan
+	 *        a plan for eliminating all variables without evidence.
+	 * @param cancellationToken
+	 *        a token checked before each bucket is processed, here and when computing marginals.
+	 * @throws QueryCanceledException if the token is canceled before the partition function is computed.
+	 */
+	public NumericVariableElimination(MarkovNetwork network, Map<Integer, Integer> evidence, EliminationPlan plan, CancellationToken cancellationToken) {
+		this.network           = network;
+		this.evidence.putAll(evidence);
+		this.plan              = plan;
+		this.cancellationToken = cancellationToken;
+		
+		eliminate();
+	}
+	
+	public EliminationPlan getPlan() {
+		return plan;
+	}
+	
+	/**
+	 * 
+	 * @return the log (base 10) of the sum, over all assignments consistent with the evidence, of the product of the network's tables
+	 *         (negative infinity if the evidence is impossible).
+	 */
+	public double log10PartitionFunction() {
+		return log10PartitionFunction;
+	}
+	
+	/**
+	 * 
+	 * @return a map from each variable index to its marginal given the evidence (computed on the first call).
+	 * @throws IllegalArgumentException if the evidence is impossible.
+	 * @throws QueryCanceledException if the token given on construction is canceled before they are computed.
+	 */
+	public Map<Integer, List<Double>> marginals() {
+		if (marginals == null) {
+			if (log10PartitionFunction == Double.NEGATIVE_INFINITY) {
+				throw new IllegalArgumentException("Evidence has probability zero");
+			}
+			marginals = passMessagesBack();
+		}
+		return marginals;
+	}
+	
+	//
+	// PRIVATE
+	//
+	private void eliminate() {
+		List<Integer> order    = plan.getOrder();
+		int[]         position = new int[network.numberVariables()];
+		Arrays.fill(position, -1);
+		for (int i = 0; i < order.size(); i++) {
+			position[order.get(i)] = i;
+			bucketFactors.add(new ArrayList<>());
+			bucketChildren.add(new ArrayList<>());
+		}
+		
+		for (int t = 0; t < network.numberTables(); t++) {
+			FactorTable conditioned = rescaleIntoPartitionFunction(conditionOnEvidence(network.getVariableIndexesForTable(t), network.getTable(t)));
+			int         bucket      = firstBucket(conditioned.getVariableIndexes(), position);
+			if (bucket != -1) {
+				bucketFactors.get(bucket).add(conditioned);
+			}
+			// otherwise a constant, already accounted for when rescaled
+		}
+		
+		upMessages = new FactorTable[order.size()];
+		for (int i = 0; i < order.size(); i++) {
+			cancellationToken.throwIfCanceled();
+			int               varIdx  = order.get(i);
+			List<FactorTable> factors = bucketContents(i, null);
+			List<Integer>     scope   = new ArrayList<>();
+			scope.add(varIdx);
+			for (FactorTable factor : factors) {
+				for (Integer scopeVarIdx : factor.getVariableIndexes()) {
+					if (!scope.contains(scopeVarIdx)) {
+						scope.add(scopeVarIdx);
+					}
+				}
+			}
+			clusterScopes.add(scope);
+			
+			FactorTable message = FactorTableUtil.sumOut(network, FactorTableUtil.product(network, scope, factors), varIdx);
+			upMessages[i] = rescaleIntoPartitionFunction(message);
+			int parent = firstBucket(message.getVariableIndexes(), position);
+			if (parent != -1) {
+				bucketChildren.get(parent).add(i);
+			}
+		}
+	}
+	
+	private Map<Integer, List<Double>> passMessagesBack() {
+		List<Integer>      order            = plan.getOrder();
+		List<List<Double>> varIdxToMarginal = new ArrayList<>(Collections.nCopies(network.numberVariables(), null));
+		FactorTable[]      downMessages     = new FactorTable[order.size()];
+		for (int i = order.size() - 1; i >= 0; i--) {
+			cancellationToken.throwIfCanceled();
+			int         varIdx = order.get(i);
+			FactorTable belief = FactorTableUtil.product(network, clusterScopes.get(i), bucketContents(i, downMessages[i]));
+			downMessages[i] = null;
+			
+			double[] marginal = FactorTableUtil.marginal(network, belief, Collections.singletonList(varIdx)).getTable().getEntriesArray();
+			double   total    = 0;
+			for (double value : marginal) {
+				total += value;
+			}
+			List<Double> normalized = new ArrayList<>(marginal.length);
+			for (double value : marginal) {
+				normalized.add(value / total);
+			}
+			varIdxToMarginal.set(varIdx, normalized);
+			
+			for (int child : bucketChildren.get(i)) {
+				// the belief on the separator divided by what the child sent (0 where it sent 0, since the child's belief is 0 there anyway)
+				FactorTable up        = upMessages[child];
+				double[]    upEntries = up.getTable().getEntriesArray();
+				double[]    entries   = FactorTableUtil.marginal(network, belief, up.getVariableIndexes()).getTable().getEntriesArray();
+				double[]    down      = new double[entries.length];
+				for (int e = 0; e < down.length; e++) {
+					down[e] = upEntries[e] == 0 ? 0 : entries[e] / upEntries[e];
+				}
+				downMessages[child] = rescale(new FactorTable(up.getVariableIndexes(), new FunctionTable(up.getTable().getVariableCardinalities(), down)));
+			}
+		}
+		
+		Map<Integer, List<Double>> result = new LinkedHashMap<>();
+		for (int varIdx = 0; varIdx < network.numberVariables(); varIdx++) {
+			List<Double> marginal = varIdxToMarginal.get(varIdx);
+			if (marginal == null) {
+				// an evidence variable
+				marginal = new ArrayList<>(Collections.nCopies(network.cardinality(varIdx), 0.0));
+				marginal.set(evidence.get(varIdx), 1.0);
+			}
+			result.put(varIdx, marginal);
+		}
+		return result;
+	}
+	
+	private List<FactorTable> bucketContents(int bucket, FactorTable downMessage) {
+		List<FactorTable> result = new ArrayList<>(bucketFactors.get(bucket));
+		for (int child : bucketChildren.get(bucket)) {
+			result.add(upMessages[child]);
+		}
+		if (downMessage != null) {
+			result.add(downMessage);
+		}
+		return result;
+	}
+	
+	private static int firstBucket(List<Integer> variableIndexes, int[] position) {
+		int result = -1;
+		for (Integer varIdx : variableIndexes) {
+			if (position[varIdx] != -1 && (result == -1 || position[varIdx] < result)) {
+				result = position[varIdx];
+			}
+		}
+		return result;
+	}
+	
+	private FactorTable conditionOnEvidence(List<Integer> variableIndexes, FunctionTable table) {
+		List<Integer> freeVarIdxs       = new ArrayList<>();
+		List<Integer> freeCardinalities = new ArrayList<>();
+		List<Integer> freeStrides       = new ArrayList<>();
+		int           base              = 0;
+		for (int i = 0; i < variableIndexes.size(); i++) {
+			Integer valueIdx = evidence.get(variableIndexes.get(i));
+			if (valueIdx == null) {
+				freeVarIdxs.add(variableIndexes.get(i));
+				freeCardinalities.add(table.cardinality(i));
+				freeStrides.add(table.stride(i));
+			}
+			else {
+				base += valueIdx * table.stride(i);
+			}
+		}
+		
+		FactorTable result;
+		if (freeVarIdxs.size() == variableIndexes.size()) {
+			result = new FactorTable(variableIndexes, table);
+		}
+		else {
+			double[] entries = new double[FunctionTable.numEntriesFor(freeCardinalities)];
+			int[]    values  = new int[freeVarIdxs.size()];
+			int      offset  = base;
+			for (int e = 0; e < entries.length; e++) {
+				entries[e] = table.entryAtLinear(offset);
+				for (int j = values.length - 1; j >= 0; j--) {
+					if (++values[j] < freeCardinalities.get(j)) {
+						offset += freeStrides.get(j);
+						break;
+					}
+					offset -= (values[j] - 1) * freeStrides.get(j);
+					values[j] = 0;
+				}
+			}
+			result = new FactorTable(freeVarIdxs, new FunctionTable(freeCardinalities, entries));
+		}
+		return result;
+	}
+	
+	private FactorTable rescaleIntoPartitionFunction(FactorTable factor) {
+		double max = max(factor.getTable().getEntriesArray());
+		if (max == 0) {
+			log10PartitionFunction = Double.NEGATIVE_INFINITY;
+		}
+		else {
+			log10PartitionFunction += Math.log10(max);
+		}
+		return rescale(factor, max);
+	}
+	
+	private static FactorTable rescale(FactorTable factor) {
+		return rescale(factor, max(factor.getTable().getEntriesArray()));
+	}
+	
+	private static FactorTable rescale(FactorTable factor, double max) {
+		FactorTable result = factor;
+		if (max != 0 && max != 1) {
+			double[] entries = factor.getTable().getEntriesArray();
+			double[] scaled  = new double[entries.length];
+			for (int e = 0; e < scaled.length; e++) {
+				scaled[e] = entries[e] / max;
+			}
+			result = new FactorTable(factor.getVariableIndexes(), new FunctionTable(factor.getTable().getVariableCardinalities(), scaled));
+		}
+		return result;
+	}
+	
+	private static double max(double[] entries) {
+		double result = 0;
+		for (double entry : entries) {
+			result = Math.max(result, entry);
+		}
+		return result;
+	}
+}
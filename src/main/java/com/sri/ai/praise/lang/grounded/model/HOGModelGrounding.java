@@ -44,27 +44,40 @@ import static com.sri.ai.util.Util.myAssert;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 import com.google.common.annotations.Beta;
 import com.google.common.base.Function;
 import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.expresso.api.IntensionalSet;
 import com.sri.ai.expresso.api.Symbol;
 import com.sri.ai.expresso.helper.Expressions;
 import com.sri.ai.grinder.api.Context;
 import com.sri.ai.grinder.api.Theory;
 import com.sri.ai.grinder.library.FunctorConstants;
+import com.sri.ai.grinder.library.indexexpression.IndexExpressions;
+import com.sri.ai.grinder.library.set.Sets;
 import com.sri.ai.praise.inference.ExpressionFactorsAndTypes;
 import com.sri.ai.praise.inference.FactorsAndTypes;
 import com.sri.ai.praise.inference.InferenceForFactorGraphAndEvidence;
 import com.sri.ai.praise.model.v1.HOGMSortDeclaration;
 import com.sri.ai.util.base.BinaryFunction;
-import com.sri.ai.util.base.TernaryProcedure;
+import com.sri.ai.util.base.Pair;
 import com.sri.ai.util.base.Triple;
 import com.sri.ai.util.math.MixedRadixNumber;
 import com.sri.ai.util.math.Rational;
@@ -76,6 +89,20 @@ public class HOGModelGrounding {
 	
 	public static boolean useContextSensitiveGrounding = true;
 	
+	/**
+	 * Whether factors are grounded concurrently (they are still reported to the {@link Listener} in order).
+	 */
+	public static boolean useParallelGrounding = true;
+	
+	// total number of runs memoized for the recurring residual blocks of a factor, to bound the memory used per factor
+	private static final int MAX_MEMOIZED_RUNS_PER_FACTOR = 1 << 16;
+	// functor of the cartesian product of the argument types in a function type, e.g. '->'(x(People, People), Boolean)
+	private static final String CARTESIAN_PRODUCT = "x";
+	
+	public static final int NUMBER_OF_GROUNDING_THREADS = Math.max(1, Integer.getInteger("hogm.grounding.threads", Runtime.getRuntime().availableProcessors()));
+	
+	private static ForkJoinPool groundingPool;
+	
 	public interface Listener {
 		//
 		// Preamble information
@@ -94,63 +121,181 @@ public class HOGModelGrounding {
 		void groundingComplete();
 	}
 	
+	/**
+	 * A {@link Listener} that receives each factor's table in one call, instead of one {@link #factorValue} call per entry
+	 * (which is not invoked on bulk listeners). By default tables are delivered as runs of equal consecutive values,
+	 * so that constant blocks of a table are not expanded unless the listener needs them to be.
+	 */
+	public interface BulkListener extends Listener {
+		/**
+		 * 
+		 * @return true if tables should be delivered with exact values, through {@link #factorValues(int, Rational[])}, 
+		 *         instead of as doubles (false by default).
+		 */
+		default boolean exactFactorValues() {
+			return false;
+		}
+		
+		/**
+		 * 
+		 * @return true if the participants of all factors should be announced (in factor order) before any factor's table,
+		 *         e.g. so that formats with all participants in a preamble (such as UAI) can be written in a single pass 
+		 *         (false by default, in which case each factor's participants are announced just before its table).
+		 */
+		default boolean participantsBeforeValues() {
+			return false;
+		}
+		
+		/**
+		 * Receives a whole factor table (last participant varying fastest).
+		 * @param factorIndex
+		 * @param values
+		 */
+		void factorValues(int factorIndex, double[] values);
+		
+		/**
+		 * Receives a whole factor table with exact values, if {@link #exactFactorValues()} is true 
+		 * (by default converts the values to doubles and delegates to {@link #factorValues(int, double[])}).
+		 * @param factorIndex
+		 * @param values
+		 */
+		default void factorValues(int factorIndex, Rational[] values) {
+			double[] doubleValues = new double[values.length];
+			for (int i = 0; i < values.length; i++) {
+				doubleValues[i] = values[i].doubleValue();
+			}
+			factorValues(factorIndex, doubleValues);
+		}
+		
+		/**
+		 * Receives a whole factor table as runs of equal consecutive values
+		 * (by default expands the runs and delegates to {@link #factorValues(int, double[])}).
+		 * @param factorIndex
+		 * @param numberFactorValues the total number of values in the table (i.e. the sum of the run lengths).
+		 * @param runValues the value of each run.
+		 * @param runLengths the number of times each run's value is repeated.
+		 * @param numberRuns the number of runs (the arrays may be larger).
+		 */
+		default void factorValueRuns(int factorIndex, int numberFactorValues, double[] runValues, int[] runLengths, int numberRuns) {
+			double[] values = new double[numberFactorValues];
+			int      offset = 0;
+			for (int run = 0; run < numberRuns; run++) {
+				Arrays.fill(values, offset, offset + runLengths[run], runValues[run]);
+				offset += runLengths[run];
+			}
+			factorValues(factorIndex, values);
+		}
+		
+		@Override
+		default void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+			throw new UnsupportedOperationException("Bulk listeners receive whole factor tables");
+		}
+	}
+	
 	public static void ground(FactorsAndTypes factorsAndTypes, List<Expression> evidence, Listener listener) {
+		ground(factorsAndTypes, evidence, listener, new ConcurrentHashMap<>());
+	}
+	
+	/**
+	 * Same as {@link #ground(FactorsAndTypes, List, Listener)}, keeping the tables shared by instances of lifted factors in the given map,
+	 * one per lifted factor index and instance pattern (the instance with its random variables replaced by placeholders).
+	 */
+	static void ground(FactorsAndTypes factorsAndTypes, List<Expression> evidence, Listener listener, Map<Pair<Integer, Expression>, FactorBuffer> sharedTables) {
 		if (factorsAndTypes.getMapFromNonUniquelyNamedConstantNameToTypeName().size() > 0) {
 			throw new IllegalArgumentException("Constants cannot be grounded");
 		}
 		Map<Expression, Triple<Expression, Integer, List<Expression>>> randomVariableNameToTypeSizeAndUniqueConstants = createRandomVariableNameToTypeSizeAndUniqueConstantsMap(factorsAndTypes);
+		Map<Expression, RelationalRandomVariable> relationalRandomVariables = createRelationalRandomVariables(factorsAndTypes);
 		Map<Expression, Integer> randomVariableIndexes = new LinkedHashMap<>();
 		AtomicInteger atomicVariableIndex = new AtomicInteger(-1);
-		listener.numberGroundVariables(randomVariableNameToTypeSizeAndUniqueConstants.size());
+		int numberGroundVariables = randomVariableNameToTypeSizeAndUniqueConstants.size();
+		for (RelationalRandomVariable relationalRandomVariable : relationalRandomVariables.values()) {
+			numberGroundVariables = Math.addExact(numberGroundVariables, relationalRandomVariable.numberGroundAtoms);
+		}
+		listener.numberGroundVariables(numberGroundVariables);
 		randomVariableNameToTypeSizeAndUniqueConstants.entrySet().forEach(entry -> {
 			randomVariableIndexes.put(entry.getKey(), atomicVariableIndex.addAndGet(1));
 			listener.groundVariableCardinality(atomicVariableIndex.get(), entry.getValue().second);
 		});
+		// the ground atoms of relational random variables are not created, their indexes are computed from their arguments when needed
+		for (RelationalRandomVariable relationalRandomVariable : relationalRandomVariables.values()) {
+			relationalRandomVariable.firstGroundVariableIndex = atomicVariableIndex.get() + 1;
+			for (int i = 0; i < relationalRandomVariable.numberGroundAtoms; i++) {
+				listener.groundVariableCardinality(atomicVariableIndex.addAndGet(1), relationalRandomVariable.codomainTypeSizeAndUniqueConstants.second);
+			}
+		}
+		
+		List<Expression> factors = factorsAndTypes.getFactors();
+		List<Triple<Expression, Integer, List<Expression>>> typesToGround = new ArrayList<>(randomVariableNameToTypeSizeAndUniqueConstants.values());
+		for (RelationalRandomVariable relationalRandomVariable : relationalRandomVariables.values()) {
+			typesToGround.addAll(relationalRandomVariable.argumentTypeSizeAndUniqueConstants);
+			typesToGround.add(relationalRandomVariable.codomainTypeSizeAndUniqueConstants);
+		}
+		for (Expression factor : factors) {
+			if (LiftedFactor.isLiftedFactor(factor)) {
+				for (Expression indexType : LiftedFactor.indexTypes(factor)) {
+					typesToGround.add(createTypeSizeAndUniqueConstants(indexType, factorsAndTypes));
+				}
+			}
+		}
+		Map<Expression, List<Expression>> typeToValues = createTypeToValuesMap(factorsAndTypes, typesToGround);
+		relationalRandomVariables.values().forEach(relationalRandomVariable -> relationalRandomVariable.indexArgumentValues(typeToValues));
+		GroundRandomVariables groundRandomVariables = new GroundRandomVariables(randomVariableNameToTypeSizeAndUniqueConstants, randomVariableIndexes, relationalRandomVariables);
 		
-		Map<Expression, List<Expression>> typeToValues = createTypeToValuesMap(factorsAndTypes, randomVariableNameToTypeSizeAndUniqueConstants);
 		Map<String, String> newUniqueConstantToTypeMap = createGroundedUniqueConstantToTypeMap(typeToValues);
 	    
-		InferenceForFactorGraphAndEvidence inferencer = makeInferencer(factorsAndTypes, newUniqueConstantToTypeMap);
-		
-		Context context = inferencer.makeContextWithTypeInformation();
-		
-		listener.numberFactors(factorsAndTypes.getFactors().size());
-		int factorIndex = 0;
-		for (Expression factor : factorsAndTypes.getFactors()) {
-	    	ArrayList<Expression> randomVariablesInFactor = new ArrayList<>(Expressions.getSubExpressionsSatisfying(factor, randomVariableNameToTypeSizeAndUniqueConstants::containsKey));
-	    	if (randomVariablesInFactor.size() == 0) {
-	    		throw new IllegalArgumentException("Factor contains no random variables: "+factor);
-	    	}
-	    	
-	    	int[] participantVariableIndexes = new int[randomVariablesInFactor.size()];
-	    	for (int i = 0; i < randomVariablesInFactor.size(); i++) {
-	    		Expression randomVariable = randomVariablesInFactor.get(i);
-	    		participantVariableIndexes[i] = randomVariableIndexes.get(randomVariable);
-	    	}
-	    	listener.factorParticipants(factorIndex, participantVariableIndexes);
-
-	    	if (!useContextSensitiveGrounding) {
-	    		fullGrounding(
-	    				factor,
-	    				randomVariablesInFactor,
-	    				listener,
-	    				randomVariableNameToTypeSizeAndUniqueConstants,
-	    				typeToValues,
-	    				inferencer,
-	    				context);
-	    	}
-	    	else {
-	    		contextSensitiveGrounding(
-	    				factor,
-	    				randomVariablesInFactor,
-	    				listener,
-	    				randomVariableNameToTypeSizeAndUniqueConstants,
-	    				typeToValues,
-	    				inferencer,
-	    				context);
-	    	}
-
-	    	factorIndex++;
+		// inferencers and their contexts keep state of their own and are therefore never used by more than one thread at a time
+		Supplier<Pair<InferenceForFactorGraphAndEvidence, Context>> makeInferencerAndContext = () -> {
+			InferenceForFactorGraphAndEvidence inferencer = makeInferencer(factorsAndTypes, newUniqueConstantToTypeMap);
+			return Pair.make(inferencer, inferencer.makeContextWithTypeInformation());
+		};
+		Pair<InferenceForFactorGraphAndEvidence, Context> inferencerAndContext = makeInferencerAndContext.get();
+		Context                                           context              = inferencerAndContext.second;
+		
+		// Factors over logical variables (i.e. products over their instances) are grounded into one factor per instance
+		LiftedFactor[] liftedFactors            = new LiftedFactor[factors.size()];
+		int[]          firstGroundFactorIndexes = new int[factors.size() + 1];
+		for (int i = 0; i < factors.size(); i++) {
+			if (LiftedFactor.isLiftedFactor(factors.get(i))) {
+				liftedFactors[i] = new LiftedFactor(factors.get(i), typeToValues);
+			}
+			firstGroundFactorIndexes[i + 1] = Math.addExact(firstGroundFactorIndexes[i], liftedFactors[i] == null ? 1 : liftedFactors[i].numberInstances);
+		}
+		int numberGroundFactors = firstGroundFactorIndexes[factors.size()];
+		
+		listener.numberFactors(numberGroundFactors);
+		if (participantsBeforeValues(listener)) {
+			// finding the participants of a factor is cheap compared to grounding its table
+			for (int factorIndex = 0; factorIndex < numberGroundFactors; factorIndex++) {
+				int        originalFactorIndex = originalFactorIndex(factorIndex, firstGroundFactorIndexes);
+				Expression groundFactor        = liftedFactors[originalFactorIndex] == null ? factors.get(originalFactorIndex) : liftedFactors[originalFactorIndex].instance(factorIndex - firstGroundFactorIndexes[originalFactorIndex], context);
+				listener.factorParticipants(factorIndex, participantVariableIndexes(randomVariablesIn(groundFactor, groundRandomVariables), groundRandomVariables));
+			}
+		}
+		FactorGrounder factorGrounder = (factorIndex, factorListener, inferencer, factorContext) -> {
+			int originalFactorIndex = originalFactorIndex(factorIndex, firstGroundFactorIndexes);
+			if (liftedFactors[originalFactorIndex] == null) {
+				groundFactor(factorIndex, factors.get(originalFactorIndex), factorListener, groundRandomVariables, typeToValues, inferencer, factorContext);
+			}
+			else {
+				Expression instance = liftedFactors[originalFactorIndex].instance(factorIndex - firstGroundFactorIndexes[originalFactorIndex], factorContext);
+				groundLiftedFactorInstance(factorIndex, originalFactorIndex, instance, factorListener, sharedTables, groundRandomVariables, typeToValues, inferencer, factorContext);
+			}
+		};
+		if (!useParallelGrounding || NUMBER_OF_GROUNDING_THREADS == 1 || numberGroundFactors < 2) {
+			for (int factorIndex = 0; factorIndex < numberGroundFactors; factorIndex++) {
+				if (listener instanceof BulkListener) {
+					FactorBuffer buffer = new FactorBuffer();
+					factorGrounder.ground(factorIndex, buffer, inferencerAndContext.first, context);
+					buffer.replay(factorIndex, listener);
+				}
+				else {
+					factorGrounder.ground(factorIndex, listener, inferencerAndContext.first, context);
+				}
+			}
+		}
+		else {
+			groundInParallel(numberGroundFactors, factorGrounder, makeInferencerAndContext, listener);
 		}
 		
 		// Handle the evidence
@@ -169,6 +314,487 @@ public class HOGModelGrounding {
 		listener.groundingComplete();
 	}
 
+	/**
+	 * Grounds a single factor, informing the listener of its participants and then of its values.
+	 */
+	private static void groundFactor(int factorIndex, Expression factor, Listener listener, GroundRandomVariables groundRandomVariables, Map<Expression, List<Expression>> typeToValues, InferenceForFactorGraphAndEvidence inferencer, Context context) {
+		ArrayList<Expression> randomVariablesInFactor = randomVariablesIn(factor, groundRandomVariables);
+		listener.factorParticipants(factorIndex, participantVariableIndexes(randomVariablesInFactor, groundRandomVariables));
+		
+		// type information for the factor's random variables (some of which may be ground atoms of relational random variables)
+		Map<Expression, Triple<Expression, Integer, List<Expression>>> randomVariableNameToTypeSizeAndUniqueConstants = new LinkedHashMap<>();
+		for (Expression randomVariable : randomVariablesInFactor) {
+			randomVariableNameToTypeSizeAndUniqueConstants.put(randomVariable, groundRandomVariables.typeSizeAndUniqueConstants(randomVariable));
+		}
+
+		if (!useContextSensitiveGrounding) {
+			fullGrounding(
+					factor,
+					randomVariablesInFactor,
+					listener,
+					randomVariableNameToTypeSizeAndUniqueConstants,
+					typeToValues,
+					inferencer,
+					context);
+		}
+		else {
+			contextSensitiveGrounding(
+					factor,
+					randomVariablesInFactor,
+					listener,
+					randomVariableNameToTypeSizeAndUniqueConstants,
+					typeToValues,
+					inferencer,
+					context);
+		}
+	}
+
+	/**
+	 * Grounds an instance of a lifted factor. Instances that only differ in the ground atoms they are about
+	 * have the same table, so each distinct table is only grounded once and then shared by reference by all such instances.
+	 */
+	private static void groundLiftedFactorInstance(int factorIndex, int liftedFactorIndex, Expression instance, Listener listener, Map<Pair<Integer, Expression>, FactorBuffer> sharedTables, GroundRandomVariables groundRandomVariables, Map<Expression, List<Expression>> typeToValues, InferenceForFactorGraphAndEvidence inferencer, Context context) {
+		ArrayList<Expression> randomVariablesInInstance = randomVariablesIn(instance, groundRandomVariables);
+		int[] participantVariableIndexes = participantVariableIndexes(randomVariablesInInstance, groundRandomVariables);
+		
+		Expression instancePattern = instance;
+		for (int i = 0; i < randomVariablesInInstance.size(); i++) {
+			instancePattern = instancePattern.replaceAllOccurrences(randomVariablesInInstance.get(i), makeSymbol("#participant" + i), context);
+		}
+		Pair<Integer, Expression> tableKey = Pair.make(liftedFactorIndex, instancePattern);
+		FactorBuffer table = sharedTables.get(tableKey);
+		if (table == null) {
+			table = new FactorBuffer();
+			groundFactor(factorIndex, instance, table, groundRandomVariables, typeToValues, inferencer, context);
+			FactorBuffer alreadyShared = sharedTables.putIfAbsent(tableKey, table);
+			if (alreadyShared != null) {
+				table = alreadyShared;
+			}
+		}
+		
+		if (listener instanceof FactorBuffer) {
+			((FactorBuffer) listener).shareTable(participantVariableIndexes, table);
+		}
+		else {
+			FactorBuffer instanceBuffer = new FactorBuffer();
+			instanceBuffer.shareTable(participantVariableIndexes, table);
+			instanceBuffer.replay(factorIndex, listener);
+		}
+	}
+	
+	private static ArrayList<Expression> randomVariablesIn(Expression factor, GroundRandomVariables groundRandomVariables) {
+		ArrayList<Expression> result = new ArrayList<>(Expressions.getSubExpressionsSatisfying(factor, groundRandomVariables::isGroundRandomVariable));
+		if (result.size() == 0) {
+			throw new IllegalArgumentException("Factor contains no random variables: "+factor);
+		}
+		return result;
+	}
+	
+	private static int[] participantVariableIndexes(List<Expression> randomVariablesInFactor, GroundRandomVariables groundRandomVariables) {
+		int[] result = new int[randomVariablesInFactor.size()];
+		for (int i = 0; i < randomVariablesInFactor.size(); i++) {
+			result[i] = groundRandomVariables.index(randomVariablesInFactor.get(i));
+		}
+		return result;
+	}
+	
+	private static boolean participantsBeforeValues(Listener listener) {
+		return listener instanceof BulkListener && ((BulkListener) listener).participantsBeforeValues();
+	}
+	
+	private static int originalFactorIndex(int groundFactorIndex, int[] firstGroundFactorIndexes) {
+		// i.e. the last original factor whose first ground factor is not after the given one
+		int low  = 0;
+		int high = firstGroundFactorIndexes.length - 2;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (firstGroundFactorIndexes[middle] <= groundFactorIndex) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Grounds factors on the shared pool of grounding threads, each factor into its own buffer, and replays the buffers
+	 * to the listener in factor order, so the listener receives exactly the same calls as with sequential grounding.
+	 * The number of factors grounded ahead of the one being replayed is bounded, to keep memory use in check.
+	 * Each task borrows an inferencer (and its context) that no other task is using, making new ones only when all are busy.
+	 */
+	private static void groundInParallel(int numberFactors, FactorGrounder factorGrounder, Supplier<Pair<InferenceForFactorGraphAndEvidence, Context>> makeInferencerAndContext, Listener listener) {
+		ForkJoinPool                                             pool                       = groundingPool();
+		int                                                      maxInFlight                = 2 * NUMBER_OF_GROUNDING_THREADS;
+		List<Future<FactorBuffer>>                               inFlight                   = new ArrayList<>(maxInFlight);
+		Queue<Pair<InferenceForFactorGraphAndEvidence, Context>> idleInferencersAndContexts = new ConcurrentLinkedQueue<>();
+		try {
+			int nextToSubmit = 0;
+			for (int factorIndex = 0; factorIndex < numberFactors; factorIndex++) {
+				while (nextToSubmit < numberFactors && nextToSubmit - factorIndex < maxInFlight) {
+					int indexToSubmit = nextToSubmit++;
+					inFlight.add(pool.submit(() -> {
+						Pair<InferenceForFactorGraphAndEvidence, Context> inferencerAndContext = idleInferencersAndContexts.poll();
+						if (inferencerAndContext == null) {
+							inferencerAndContext = makeInferencerAndContext.get();
+						}
+						try {
+							FactorBuffer buffer = new FactorBuffer();
+							factorGrounder.ground(indexToSubmit, buffer, inferencerAndContext.first, inferencerAndContext.second);
+							return buffer;
+						}
+						finally {
+							idleInferencersAndContexts.add(inferencerAndContext);
+						}
+					}));
+				}
+				waitFor(inFlight.remove(0)).replay(factorIndex, listener);
+			}
+		}
+		finally {
+			inFlight.forEach(future -> future.cancel(true));
+		}
+	}
+	
+	/**
+	 * @return the pool of grounding threads shared by all groundings, made on first use 
+	 *         (its threads are daemons, so it never needs to be shut down).
+	 */
+	private static synchronized ForkJoinPool groundingPool() {
+		if (groundingPool == null) {
+			groundingPool = new ForkJoinPool(NUMBER_OF_GROUNDING_THREADS);
+		}
+		return groundingPool;
+	}
+
+	private static FactorBuffer waitFor(Future<FactorBuffer> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while grounding", ie);
+		}
+		catch (ExecutionException ee) {
+			if (ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ee.getCause();
+			}
+			throw new RuntimeException(ee.getCause());
+		}
+	}
+	
+	private static class ValueRun {
+		final Expression value;
+		final int        count;
+		
+		ValueRun(Expression value, int count) {
+			this.value = value;
+			this.count = count;
+		}
+	}
+	
+	/**
+	 * The blocks of values already grounded for residual expressions of a factor, keyed by the index of the first variable they range over
+	 * and the residual expression. A block's runs are also part of the blocks of its enclosing residual expressions, 
+	 * so they count against {@link #MAX_MEMOIZED_RUNS_PER_FACTOR} once for each of them.
+	 */
+	private static class GroundedBlocks {
+		private Map<Pair<Integer, Expression>, List<ValueRun>> blocks     = new HashMap<>();
+		private int                                            numberRuns = 0;
+		
+		List<ValueRun> get(Pair<Integer, Expression> residual) {
+			return blocks.get(residual);
+		}
+		
+		int numberRunsThatCanStillBeMemoized() {
+			return MAX_MEMOIZED_RUNS_PER_FACTOR - numberRuns;
+		}
+		
+		void putIfRoom(Pair<Integer, Expression> residual, List<ValueRun> block) {
+			if (block.size() <= numberRunsThatCanStillBeMemoized()) {
+				blocks.put(residual, block);
+				numberRuns += block.size();
+			}
+		}
+	}
+	
+	@FunctionalInterface
+	private interface ValueRunRecorder {
+		void record(boolean runIncludesFirstValue, boolean runIncludesLastValue, Expression value, int count);
+	}
+	
+	@FunctionalInterface
+	private interface FactorGrounder {
+		void ground(int factorIndex, Listener factorListener, InferenceForFactorGraphAndEvidence inferencer, Context context);
+	}
+	
+	/**
+	 * A random variable with a function type, e.g. <code>friends : People x People -> Boolean</code>.
+	 * Its ground atoms (e.g. <code>friends(bob, ann)</code>) are numbered consecutively (last argument varying fastest) 
+	 * starting at {@link #firstGroundVariableIndex}, so they never need to be materialized.
+	 */
+	private static class RelationalRandomVariable {
+		final List<Triple<Expression, Integer, List<Expression>>> argumentTypeSizeAndUniqueConstants = new ArrayList<>();
+		final Triple<Expression, Integer, List<Expression>>       codomainTypeSizeAndUniqueConstants;
+		final int                                                 numberGroundAtoms;
+		int                                                       firstGroundVariableIndex;
+		private List<Map<Expression, Integer>>                    argumentValueIndexes = new ArrayList<>();
+		
+		RelationalRandomVariable(Expression functionType, FactorsAndTypes factorsAndTypes) {
+			List<Expression> argumentTypes = new ArrayList<>(functionType.getArguments().subList(0, functionType.numberOfArguments() - 1));
+			if (argumentTypes.size() == 1 && argumentTypes.get(0).hasFunctor(CARTESIAN_PRODUCT)) {
+				argumentTypes = argumentTypes.get(0).getArguments();
+			}
+			int numberGroundAtoms = 1;
+			for (Expression argumentType : argumentTypes) {
+				Triple<Expression, Integer, List<Expression>> typeSizeAndUniqueConstants = createTypeSizeAndUniqueConstants(argumentType, factorsAndTypes);
+				argumentTypeSizeAndUniqueConstants.add(typeSizeAndUniqueConstants);
+				numberGroundAtoms = Math.multiplyExact(numberGroundAtoms, typeSizeAndUniqueConstants.second);
+			}
+			this.numberGroundAtoms                  = numberGroundAtoms;
+			this.codomainTypeSizeAndUniqueConstants = createTypeSizeAndUniqueConstants(functionType.get(functionType.numberOfArguments() - 1), factorsAndTypes);
+		}
+		
+		void indexArgumentValues(Map<Expression, List<Expression>> typeToValues) {
+			for (Triple<Expression, Integer, List<Expression>> typeSizeAndUniqueConstants : argumentTypeSizeAndUniqueConstants) {
+				Map<Expression, Integer> valueIndexes = new HashMap<>();
+				List<Expression>         values       = typeToValues.get(typeSizeAndUniqueConstants.first);
+				for (int i = 0; i < values.size(); i++) {
+					valueIndexes.put(values.get(i), i);
+				}
+				argumentValueIndexes.add(valueIndexes);
+			}
+		}
+		
+		/**
+		 * @return the index of the ground variable corresponding to the given atom, 
+		 *         or null if its arguments are not all values of the argument types.
+		 */
+		Integer groundVariableIndex(Expression atom) {
+			if (atom.numberOfArguments() != argumentValueIndexes.size()) {
+				return null;
+			}
+			int offset = 0;
+			for (int i = 0; i < argumentValueIndexes.size(); i++) {
+				Integer valueIndex = argumentValueIndexes.get(i).get(atom.get(i));
+				if (valueIndex == null) {
+					return null;
+				}
+				offset = offset * argumentTypeSizeAndUniqueConstants.get(i).second + valueIndex;
+			}
+			return firstGroundVariableIndex + offset;
+		}
+	}
+	
+	/**
+	 * Identifies the ground random variables of a model, both plain and ground atoms of relational random variables.
+	 */
+	private static class GroundRandomVariables {
+		private Map<Expression, Triple<Expression, Integer, List<Expression>>> randomVariableNameToTypeSizeAndUniqueConstants;
+		private Map<Expression, Integer>                                       randomVariableIndexes;
+		private Map<Expression, RelationalRandomVariable>                      relationalRandomVariables;
+		
+		GroundRandomVariables(Map<Expression, Triple<Expression, Integer, List<Expression>>> randomVariableNameToTypeSizeAndUniqueConstants, Map<Expression, Integer> randomVariableIndexes, Map<Expression, RelationalRandomVariable> relationalRandomVariables) {
+			this.randomVariableNameToTypeSizeAndUniqueConstants = randomVariableNameToTypeSizeAndUniqueConstants;
+			this.randomVariableIndexes                          = randomVariableIndexes;
+			this.relationalRandomVariables                      = relationalRandomVariables;
+		}
+		
+		boolean isGroundRandomVariable(Expression expression) {
+			return randomVariableIndexes.containsKey(expression) || groundAtomIndex(expression) != null;
+		}
+		
+		int index(Expression groundRandomVariable) {
+			Integer result = randomVariableIndexes.get(groundRandomVariable);
+			if (result == null) {
+				result = groundAtomIndex(groundRandomVariable);
+			}
+			return result;
+		}
+		
+		Triple<Expression, Integer, List<Expression>> typeSizeAndUniqueConstants(Expression groundRandomVariable) {
+			Triple<Expression, Integer, List<Expression>> result = randomVariableNameToTypeSizeAndUniqueConstants.get(groundRandomVariable);
+			if (result == null) {
+				result = relationalRandomVariables.get(groundRandomVariable.getFunctor()).codomainTypeSizeAndUniqueConstants;
+			}
+			return result;
+		}
+		
+		private Integer groundAtomIndex(Expression expression) {
+			Integer result = null;
+			if (expression.getFunctor() != null) {
+				RelationalRandomVariable relationalRandomVariable = relationalRandomVariables.get(expression.getFunctor());
+				if (relationalRandomVariable != null) {
+					result = relationalRandomVariable.groundVariableIndex(expression);
+				}
+			}
+			return result;
+		}
+	}
+	
+	/**
+	 * A factor over logical variables, i.e. <code>product({{ (on X in People, Y in People) body | true }})</code>,
+	 * which stands for one factor per assignment to its indices (last index varying fastest).
+	 */
+	private static class LiftedFactor {
+		final int                      numberInstances;
+		private Expression             body;
+		private List<Expression>       indices     = new ArrayList<>();
+		private List<List<Expression>> indexValues = new ArrayList<>();
+		
+		static boolean isLiftedFactor(Expression factor) {
+			return factor.hasFunctor(FunctorConstants.PRODUCT) && factor.numberOfArguments() == 1 && Sets.isIntensionalMultiSet(factor.get(0));
+		}
+		
+		static Collection<Expression> indexTypes(Expression liftedFactor) {
+			return indexToType(liftedFactor).values();
+		}
+		
+		LiftedFactor(Expression liftedFactor, Map<Expression, List<Expression>> typeToValues) {
+			IntensionalSet intensionalSet = (IntensionalSet) liftedFactor.get(0);
+			if (!intensionalSet.getCondition().equals(Expressions.TRUE)) {
+				throw new UnsupportedOperationException("Only unconditional products of factors can currently be grounded: "+liftedFactor);
+			}
+			this.body = intensionalSet.getHead();
+			int numberInstances = 1;
+			for (Map.Entry<Expression, Expression> indexAndType : indexToType(liftedFactor).entrySet()) {
+				List<Expression> values = typeToValues.get(indexAndType.getValue());
+				indices.add(indexAndType.getKey());
+				indexValues.add(values);
+				numberInstances = Math.multiplyExact(numberInstances, values.size());
+			}
+			this.numberInstances = numberInstances;
+		}
+		
+		Expression instance(int instanceIndex, Context context) {
+			Expression result = body;
+			for (int i = indices.size() - 1; i >= 0; i--) {
+				List<Expression> values = indexValues.get(i);
+				result = result.replaceAllOccurrences(indices.get(i), values.get(instanceIndex % values.size()), context);
+				instanceIndex /= values.size();
+			}
+			return result;
+		}
+		
+		private static Map<Expression, Expression> indexToType(Expression liftedFactor) {
+			Map<Expression, Expression> result = IndexExpressions.getIndexToTypeMapWithDefaultNull(((IntensionalSet) liftedFactor.get(0)).getIndexExpressions());
+			result.forEach((index, type) -> {
+				if (type == null) {
+					throw new IllegalArgumentException("Index "+index+" of a product of factors must have a type: "+liftedFactor);
+				}
+			});
+			return result;
+		}
+	}
+	
+	/**
+	 * Records the participants and values of a single factor, as runs of equal consecutive values, so that they can be replayed later
+	 * (either value by value or in bulk).
+	 */
+	static class FactorBuffer implements Listener {
+		private int[]      participantVariableIndexes;
+		private int        numberFactorValues;
+		private Rational[] runValues  = new Rational[8];
+		private int[]      runLengths = new int[8];
+		private int        numberRuns = 0;
+		
+		@Override
+		public void numberGroundVariables(int number) {
+			throw new IllegalStateException("Not expected when grounding a single factor");
+		}
+
+		@Override
+		public void groundVariableCardinality(int variableIndex, int cardinality) {
+			throw new IllegalStateException("Not expected when grounding a single factor");
+		}
+
+		@Override
+		public void numberFactors(int number) {
+			throw new IllegalStateException("Not expected when grounding a single factor");
+		}
+
+		@Override
+		public void factorParticipants(int factorIndex, int[] variableIndexes) {
+			participantVariableIndexes = variableIndexes;
+		}
+
+		@Override
+		public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+			factorValueRun(numberFactorValues, value, 1);
+		}
+		
+		/**
+		 * Makes this buffer's table the given (complete) buffer's table, sharing its runs rather than copying them.
+		 */
+		void shareTable(int[] participantVariableIndexes, FactorBuffer table) {
+			this.participantVariableIndexes = participantVariableIndexes;
+			this.numberFactorValues         = table.numberFactorValues;
+			this.runValues                  = table.runValues;
+			this.runLengths                 = table.runLengths;
+			this.numberRuns                 = table.numberRuns;
+		}
+		
+		void factorValueRun(int numberFactorValues, Rational value, int count) {
+			this.numberFactorValues = numberFactorValues;
+			if (numberRuns > 0 && runValues[numberRuns - 1].equals(value)) {
+				runLengths[numberRuns - 1] += count;
+			}
+			else {
+				if (numberRuns == runValues.length) {
+					runValues  = Arrays.copyOf(runValues, 2 * numberRuns);
+					runLengths = Arrays.copyOf(runLengths, 2 * numberRuns);
+				}
+				runValues[numberRuns]  = value;
+				runLengths[numberRuns] = count;
+				numberRuns++;
+			}
+		}
+
+		@Override
+		public void evidence(int variableIndex, int valueIndex) {
+			throw new IllegalStateException("Not expected when grounding a single factor");
+		}
+
+		@Override
+		public void groundingComplete() {
+			throw new IllegalStateException("Not expected when grounding a single factor");
+		}
+		
+		void replay(int factorIndex, Listener listener) {
+			if (!participantsBeforeValues(listener)) {
+				listener.factorParticipants(factorIndex, participantVariableIndexes);
+			}
+			if (listener instanceof BulkListener) {
+				BulkListener bulkListener = (BulkListener) listener;
+				if (bulkListener.exactFactorValues()) {
+					Rational[] values = new Rational[numberFactorValues];
+					int        offset = 0;
+					for (int run = 0; run < numberRuns; run++) {
+						Arrays.fill(values, offset, offset + runLengths[run], runValues[run]);
+						offset += runLengths[run];
+					}
+					bulkListener.factorValues(factorIndex, values);
+				}
+				else {
+					double[] doubleRunValues = new double[numberRuns];
+					for (int run = 0; run < numberRuns; run++) {
+						doubleRunValues[run] = runValues[run].doubleValue();
+					}
+					bulkListener.factorValueRuns(factorIndex, numberFactorValues, doubleRunValues, runLengths, numberRuns);
+				}
+			}
+			else {
+				int valueIndex = 0;
+				for (int run = 0; run < numberRuns; run++) {
+					for (int i = 0; i < runLengths[run]; i++, valueIndex++) {
+						listener.factorValue(numberFactorValues, valueIndex == 0, valueIndex == numberFactorValues - 1, runValues[run]);
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Provides an appropriate {@link InferenceForFactorGraphAndEvidence} object.
 	 * @param factorsAndTypes
@@ -275,39 +901,58 @@ public class HOGModelGrounding {
 	private static Map<Expression, Triple<Expression, Integer, List<Expression>>> createRandomVariableNameToTypeSizeAndUniqueConstantsMap(FactorsAndTypes factorsAndTypes) {
 		Map<Expression, Triple<Expression, Integer, List<Expression>>> result = new LinkedHashMap<>();
 		factorsAndTypes.getMapFromRandomVariableNameToTypeName().entrySet().forEach(entry -> {
-			Expression       randomVariableName = Expressions.parse(entry.getKey());
-			Expression       type               = Expressions.parse(entry.getValue());
-			int              size               = 0;			
-			List<Expression> uniqueConstants    = new ArrayList<>();
-			if (Expressions.hasFunctor(type, FunctorConstants.FUNCTION_TYPE)) {
-				throw new UnsupportedOperationException("Relational random variables, "+randomVariableName+", are currently not supported.");
-			}
-			else if (Expressions.hasFunctor(type, HOGMSortDeclaration.IN_BUILT_INTEGER.getName()) && type.numberOfArguments() == 2) {
-				size = (type.get(1).intValueExact() - type.get(0).intValueExact()) + 1;
+			Expression randomVariableName = Expressions.parse(entry.getKey());
+			Expression type               = Expressions.parse(entry.getValue());
+			// relational random variables are handled by createRelationalRandomVariables
+			if (!Expressions.hasFunctor(type, FunctorConstants.FUNCTION_TYPE)) {
+				result.put(randomVariableName, createTypeSizeAndUniqueConstants(type, factorsAndTypes));
 			}
-			else if (type.hasFunctor(FunctorConstants.INTEGER_INTERVAL) && type.numberOfArguments() == 2) {
-				size = (type.get(1).intValueExact() - type.get(0).intValueExact()) + 1;
+		});
+		return result;
+	}
+	
+	private static Triple<Expression, Integer, List<Expression>> createTypeSizeAndUniqueConstants(Expression type, FactorsAndTypes factorsAndTypes) {
+		int              size            = 0;			
+		List<Expression> uniqueConstants = new ArrayList<>();
+		if (Expressions.hasFunctor(type, FunctorConstants.FUNCTION_TYPE)) {
+			throw new IllegalArgumentException("Function types cannot be used as the type of an argument or value of a random variable: "+type);
+		}
+		else if (Expressions.hasFunctor(type, HOGMSortDeclaration.IN_BUILT_INTEGER.getName()) && type.numberOfArguments() == 2) {
+			size = (type.get(1).intValueExact() - type.get(0).intValueExact()) + 1;
+		}
+		else if (type.hasFunctor(FunctorConstants.INTEGER_INTERVAL) && type.numberOfArguments() == 2) {
+			size = (type.get(1).intValueExact() - type.get(0).intValueExact()) + 1;
+		}
+		else {
+			String typeName   = type.toString();
+			String sizeString = factorsAndTypes.getMapFromCategoricalTypeNameToSizeString().get(typeName);
+			if (sizeString == null) {
+				throw new IllegalArgumentException("Size of sort " + type + " is unknown");
 			}
-			else {
-				String sizeString = factorsAndTypes.getMapFromCategoricalTypeNameToSizeString().get(type);
-				if (sizeString == null) {
-					throw new IllegalArgumentException("Size of sort " + type + " is unknown");
-				}
-				size = Integer.parseInt(sizeString);
-				factorsAndTypes.getMapFromUniquelyNamedConstantNameToTypeName()
-					.entrySet().stream()
-					.filter(uniqueConstantAndTypeEntry -> uniqueConstantAndTypeEntry.getValue().equals(entry.getValue()))
-					.forEach(uniqueConstantAndTypeEntry -> uniqueConstants.add(Expressions.parse(uniqueConstantAndTypeEntry.getKey())));
+			size = Integer.parseInt(sizeString);
+			factorsAndTypes.getMapFromUniquelyNamedConstantNameToTypeName()
+				.entrySet().stream()
+				.filter(uniqueConstantAndTypeEntry -> uniqueConstantAndTypeEntry.getValue().equals(typeName))
+				.forEach(uniqueConstantAndTypeEntry -> uniqueConstants.add(Expressions.parse(uniqueConstantAndTypeEntry.getKey())));
+		}
+		return new Triple<>(type, size, uniqueConstants);
+	}
+	
+	private static Map<Expression, RelationalRandomVariable> createRelationalRandomVariables(FactorsAndTypes factorsAndTypes) {
+		Map<Expression, RelationalRandomVariable> result = new LinkedHashMap<>();
+		factorsAndTypes.getMapFromRandomVariableNameToTypeName().entrySet().forEach(entry -> {
+			Expression type = Expressions.parse(entry.getValue());
+			if (Expressions.hasFunctor(type, FunctorConstants.FUNCTION_TYPE)) {
+				result.put(Expressions.parse(entry.getKey()), new RelationalRandomVariable(type, factorsAndTypes));
 			}
-			result.put(randomVariableName, new Triple<>(type, size, uniqueConstants));
 		});
 		return result;
 	}
 	
-	private static Map<Expression, List<Expression>> createTypeToValuesMap(FactorsAndTypes factorsAndTypes, Map<Expression, Triple<Expression, Integer, List<Expression>>> randomVariableNameToTypeExpressionTypeSizeAndUniqueConstants) {
+	private static Map<Expression, List<Expression>> createTypeToValuesMap(FactorsAndTypes factorsAndTypes, Collection<Triple<Expression, Integer, List<Expression>>> typesSizesAndUniqueConstants) {
 		Map<Expression, List<Expression>> typeToValuesMap = new LinkedHashMap<>();
 		
-		randomVariableNameToTypeExpressionTypeSizeAndUniqueConstants.values().forEach(typeSizeAndUniqueConstants -> {
+		typesSizesAndUniqueConstants.forEach(typeSizeAndUniqueConstants -> {
 			Expression       type            = typeSizeAndUniqueConstants.first;
 		    Integer          size            = typeSizeAndUniqueConstants.second;
 		    List<Expression> uniqueConstants = typeSizeAndUniqueConstants.third;
@@ -380,6 +1025,22 @@ public class HOGModelGrounding {
 		int numberFactorValues = 
 				numberOfAssignmentsForVariablesStartingAt(0, randomVariablesInFactor.size(), fromVariableIndexToDomainSize);
 		
+		ValueRunRecorder recordValueRun;
+		if (listener instanceof FactorBuffer) {
+			// keep runs as they are
+			FactorBuffer buffer = (FactorBuffer) listener;
+			recordValueRun = (runIncludesFirstValue, runIncludesLastValue, value, count) 
+					-> buffer.factorValueRun(numberFactorValues, value.rationalValue(), count);
+		}
+		else {
+			recordValueRun = (runIncludesFirstValue, runIncludesLastValue, value, count) -> {
+				Rational rationalValue = value.rationalValue();
+				for (int i = 0; i != count; i++) {
+					listener.factorValue(numberFactorValues, runIncludesFirstValue && i == 0, runIncludesLastValue && i == count - 1, rationalValue);
+				}
+			};
+		}
+		
 		contextSensitiveGroundingFrom(
 				0,
 				factor, // starting from first variable
@@ -389,8 +1050,8 @@ public class HOGModelGrounding {
 				inferencer.getTheory(),
 				true, // first time this variable is being iterated (it happens only once)
 				true, // last time this variable is being iterated (it happens only once)
-				(isFirstValue, isLastValue, value)
-				-> listener.factorValue(numberFactorValues, isFirstValue, isLastValue, value.rationalValue()),
+				recordValueRun,
+				new GroundedBlocks(), // grounded blocks of this factor's residual expressions
 				context);
 	}
 
@@ -403,7 +1064,8 @@ public class HOGModelGrounding {
 			Theory theory,
 			boolean firstIterationForVariable,
 			boolean lastIterationForVariable,
-			TernaryProcedure<Boolean, Boolean, Expression> recordValue,
+			ValueRunRecorder recordValueRun,
+			GroundedBlocks groundedBlocks,
 			Context context) {
 		
 		Expression variable = variables.get(variableIndex);
@@ -426,19 +1088,16 @@ public class HOGModelGrounding {
 				int numberOfTimesThisValueMustBeWritten
 				= numberOfAssignmentsForVariablesStartingAt(variableIndex + 1, variables.size(), fromVariableIndexToDomainSize);
 				
-				for (int i = 0; i != numberOfTimesThisValueMustBeWritten; i++) {
-					boolean isFirstOverallValue = 
-							firstIterationForVariable && 
-							thisVariableIsAtItsFirstValue &&
-							i == 0;
-					
-					boolean isLastOverallValue =
-							lastIterationForVariable &&
-							thisVariableIsAtItsLastValue &&
-							i == numberOfTimesThisValueMustBeWritten - 1;
-					
-					recordValue.apply(isFirstOverallValue, isLastOverallValue, simplifiedExpression);
-				}
+				// the value is recorded once, as a run, and only expanded by those needing one value at a time
+				boolean runIncludesFirstOverallValue = 
+						firstIterationForVariable && 
+						thisVariableIsAtItsFirstValue;
+				
+				boolean runIncludesLastOverallValue =
+						lastIterationForVariable &&
+						thisVariableIsAtItsLastValue;
+				
+				recordValueRun.record(runIncludesFirstOverallValue, runIncludesLastOverallValue, simplifiedExpression, numberOfTimesThisValueMustBeWritten);
 			}
 			else {
 				boolean firstIterationForNextVariable
@@ -447,17 +1106,44 @@ public class HOGModelGrounding {
 				boolean lastIterationForNextVariable
 				= lastIterationForVariable && thisVariableIsAtItsLastValue;
 				
-				contextSensitiveGroundingFrom(
-						variableIndex + 1,
-						simplifiedExpression,
-						variables,
-						fromVariableIndexAndValueIndexToValue,
-						fromVariableIndexToDomainSize,
-						theory,
-						firstIterationForNextVariable,
-						lastIterationForNextVariable,
-						recordValue,
-						context);
+				// The same residual expression often shows up in several branches (e.g. when a variable does not affect it),
+				// in which case the values it was grounded to are simply copied
+				Pair<Integer, Expression> residual = Pair.make(variableIndex + 1, simplifiedExpression);
+				List<ValueRun> groundedBlock = groundedBlocks.get(residual);
+				if (groundedBlock != null) {
+					for (int run = 0; run < groundedBlock.size(); run++) {
+						ValueRun valueRun = groundedBlock.get(run);
+						recordValueRun.record(firstIterationForNextVariable && run == 0, lastIterationForNextVariable && run == groundedBlock.size() - 1, valueRun.value, valueRun.count);
+					}
+				}
+				else {
+					// runs are only kept while the block can still be memoized
+					List<ValueRun> block             = new ArrayList<>();
+					int[]          numberRunsInBlock = new int[1];
+					ValueRunRecorder recordAndKeepValueRun = (runIncludesFirstValue, runIncludesLastValue, runValue, count) -> {
+						if (numberRunsInBlock[0]++ < groundedBlocks.numberRunsThatCanStillBeMemoized()) {
+							block.add(new ValueRun(runValue, count));
+						}
+						recordValueRun.record(runIncludesFirstValue, runIncludesLastValue, runValue, count);
+					};
+					
+					contextSensitiveGroundingFrom(
+							variableIndex + 1,
+							simplifiedExpression,
+							variables,
+							fromVariableIndexAndValueIndexToValue,
+							fromVariableIndexToDomainSize,
+							theory,
+							firstIterationForNextVariable,
+							lastIterationForNextVariable,
+							recordAndKeepValueRun,
+							groundedBlocks,
+							context);
+					
+					if (block.size() == numberRunsInBlock[0]) {
+						groundedBlocks.putIfRoom(residual, block);
+					}
+				}
 			}
 		}
 	}
@@ -38,7 +38,7 @@
 package com.sri.ai.praise.lang.grounded.transform;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -47,12 +47,15 @@ import java.util.Set;
 
 import com.google.common.annotations.Beta;
 import com.sri.ai.praise.lang.grounded.bayes.ConditionalProbabilityTable;
+import com.sri.ai.praise.lang.grounded.common.EliminationHeuristic;
+import com.sri.ai.praise.lang.grounded.common.EliminationQueue;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.lang.grounded.common.InteractionGraph;
 import com.sri.ai.praise.lang.grounded.markov.FactorTable;
+import com.sri.ai.praise.lang.grounded.markov.FactorTableUtil;
 import com.sri.ai.praise.lang.grounded.markov.MarkovNetwork;
 import com.sri.ai.util.Util;
 import com.sri.ai.util.base.Pair;
-import com.sri.ai.util.collect.CartesianProductEnumeration;
 
 /**
  * Utility for transforming a Markov Network into an equivalent Bayes Network.
@@ -69,23 +72,45 @@ public class XFormMarkovToBayes {
 	}
 	
 	public static void transform(MarkovNetwork markov, BayesOutputListener bayesListener) {
+		transform(markov, EliminationHeuristic.MIN_NEIGHBORS, bayesListener);
+	}
+	
+	/**
+	 * Transforms a Markov Network into an equivalent Bayes Network, picking the variables to become children 
+	 * (i.e. to be eliminated) with the given heuristic.
+	 * @param markov
+	 * @param heuristic
+	 * @param bayesListener
+	 */
+	public static void transform(MarkovNetwork markov, EliminationHeuristic heuristic, BayesOutputListener bayesListener) {
 		// Determine the random variable to factor associations
 		Map<Integer, List<FactorTable>> randomVariableToFactors = new LinkedHashMap<>();
-		List<FactorTable> factors = new ArrayList<>();
+		Map<FactorTable, Integer>       factorToOrder           = new IdentityHashMap<>();
+		InteractionGraph                graph                   = new InteractionGraph(markov);
 		for (int i = 0; i < markov.numberFactors(); i++) {
 			FactorTable factor = markov.getFactor(i);
-			factors.add(factor);
+			factorToOrder.put(factor, factorToOrder.size());
+			graph.addClique(factor.getVariableIndexes());
 			for (Integer rvIdx : factor.getVariableIndexes()) {
 				List<FactorTable> rvFactors = Util.getValuePossiblyCreatingIt(randomVariableToFactors, rvIdx, ArrayList.class);
 				rvFactors.add(factor);
 			}
 		}
+		// Ties are broken in favor of the variable appearing first in the factors (in the order they were created),
+		// the factors of each variable being kept in that order
+		EliminationQueue queue = new EliminationQueue(graph, heuristic, rvIdx -> {
+			FactorTable firstFactor = randomVariableToFactors.get(rvIdx).get(0);
+			return (((long) factorToOrder.get(firstFactor)) << 32) | firstFactor.getVariableIndexes().indexOf(rvIdx);
+		});
+		for (Integer rvIdx : randomVariableToFactors.keySet()) {
+			queue.add(rvIdx);
+		}
 		
 		while (!randomVariableToFactors.isEmpty()) {
 			// STEP 1:
 			// Pick a variable such that number of random variable neighbors
-			// (that is, other vars sharing factors) is minimal.
-			Integer c = pickMinimal(factors);
+			// (that is, other vars sharing factors) is minimal (or best according to the given heuristic).
+			Integer c = pickMinimal(queue, graph);
 		
 			// STEP 2:
 			// Multiply all factors containing this var - remove them from
@@ -100,7 +125,6 @@ public class XFormMarkovToBayes {
 			p.remove(c); // Now ensure c is not included in p
 			
 			randomVariableToFactors.remove(c);
-			factors.removeAll(factorsContainingC);			
 			for (Integer pv : p) {
 				randomVariableToFactors.get(pv).removeAll(factorsContainingC);
 			}
@@ -121,71 +145,40 @@ public class XFormMarkovToBayes {
 			bayesListener.newCPT(cCPT);
 			
 			if (zFactor != null) {
-				factors.add(zFactor);
+				factorToOrder.put(zFactor, factorToOrder.size());
 				for (Integer pv : p) {
 					randomVariableToFactors.get(pv).add(zFactor);
 				}
 			}
 			
+			// Only the variables whose neighborhoods changed are rescored
+			queue.eliminate(c);
+			
 		} // Repeat for the remaining of the factor graph
 	}
 	
 	//
 	// PRIVATE
 	//
-	private static Integer pickMinimal(List<FactorTable> factors) {		
-		if (factors.size() == 0) {
+	private static Integer pickMinimal(EliminationQueue queue, InteractionGraph graph) {		
+		if (queue.isEmpty()) {
 			throw new IllegalArgumentException("Need > 0 factors to pick a minimum");
 		}
 		
-		Map<Integer, Set<Integer>> randomVariableNeighbors = new LinkedHashMap<>();
-		
-		for (FactorTable factor : factors) {
-			for (Integer rv : factor.getVariableIndexes()) {
-				Set<Integer> neighbors = Util.getValuePossiblyCreatingIt(randomVariableNeighbors, rv, LinkedHashSet.class);
-				neighbors.addAll(factor.getVariableIndexes()); // NOTE: include self for efficiency as all counts will end up being + 1
-			}
-		}
+		Integer result = queue.poll();
 		
-		Map.Entry<Integer, Set<Integer>> smallestEntry = randomVariableNeighbors.entrySet().stream()
-					.min((e1, e2) -> Integer.compare(e1.getValue().size(), e2.getValue().size())).get();
-
-		if (smallestEntry.getValue().size() > MAX_NUM_ALLOWED_PARENTS_IN_CPT) {			
-			throw new IllegalStateException("Too large a CPT will need be generated as #parents="+(smallestEntry.getValue().size()-1));
+		int numberParents = graph.numberNeighbors(result);
+		if (numberParents + 1 > MAX_NUM_ALLOWED_PARENTS_IN_CPT) {			
+			throw new IllegalStateException("Too large a CPT will need be generated as #parents="+numberParents);
 		}	
 		
-		Integer result = smallestEntry.getKey();		
-		
 		return result;
 	}
 	
 	private static FactorTable newMegaFactor(MarkovNetwork markov, Set<Integer> varIdxs,  List<FactorTable> factorsContainingC) {
 		List<Integer> variableIndexes = new ArrayList<>(varIdxs);
 		
-		Map<Integer, Integer> varIdxToOffset   = new LinkedHashMap<>();
-		List<Integer>         varCardinalities = new ArrayList<>();
-		for (Integer varIdx : variableIndexes) {
-			varIdxToOffset.put(varIdx, varIdxToOffset.size());
-			varCardinalities.add(markov.cardinality(varIdx));
-		}
-		List<Double>  entries   = new ArrayList<>(FunctionTable.numEntriesFor(varCardinalities));
-		List<Integer> varValues = new ArrayList<>();
-		CartesianProductEnumeration<Integer> cpe = new CartesianProductEnumeration<>(FunctionTable.cardinalityValues(varCardinalities));
-		while (cpe.hasMoreElements()) {
-			List<Integer> assignments = cpe.nextElement();
-			
-			double product = 1;
-			for (FactorTable ft : factorsContainingC) {
-				varValues.clear();
-				for (Integer varIdx : ft.getVariableIndexes()) {
-					varValues.add(assignments.get(varIdxToOffset.get(varIdx)));
-				}
-				product *= ft.getTable().entryFor(varValues);
-			}
-			entries.add(product);
-		}
-		
-		FactorTable result = new FactorTable(variableIndexes, new FunctionTable(varCardinalities, entries));
+		FactorTable result = FactorTableUtil.product(markov, variableIndexes, factorsContainingC);
 		
 		return result;
 	}
@@ -194,72 +187,32 @@ public class XFormMarkovToBayes {
 		List<Integer> parentVarIdxs = new ArrayList<>(cFactor.getVariableIndexes());
 		parentVarIdxs.remove(c);
 		int cCardinality = markov.cardinality(c);
-		int cIdx         = cFactor.getVariableIndexes().indexOf(c);        
-		FactorTable   summedOut = null;
-		FunctionTable cptTable  = null;
-		if (parentVarIdxs.size() == 0) {
-			// No summed out factor as no remaining elements but still need to ensure the cpt values are normalized			
-			int idx = 0;
-			List<Double> factorEntries = cFactor.getTable().getEntries();
-			List<Double> cptEntries    = new ArrayList<>(factorEntries.size());
-			while (idx < factorEntries.size()) {
-				double total = 0;
-				for (int i = 0; i < cCardinality; i++) {
-					total += factorEntries.get(idx+i);
-				}
-				for (int i = 0; i < cCardinality; i++) {
-					cptEntries.add(factorEntries.get(idx+i)/total);
-				}
-				idx += cCardinality;
-			}
-			cptTable = new FunctionTable(Arrays.asList(cCardinality), cptEntries);
+		int cIdx         = cFactor.getVariableIndexes().indexOf(c);
+		
+		FunctionTable cFactorTable  = cFactor.getTable();
+		int[]         cardinalities = new int[cFactorTable.numberVariables()];
+		for (int i = 0; i < cardinalities.length; i++) {
+			cardinalities[i] = cFactorTable.cardinality(i);
 		}
-		else {
-			List<Integer> cptCardinalities       = new ArrayList<>();
-			List<Integer> parentVarCardinalities = new ArrayList<>();
-			Map<Integer, Integer> parentCardIdxToCFactorIdx = new LinkedHashMap<>();
-			int cFactorCardIdx = 0;
-			for (Integer varIdx : cFactor.getVariableIndexes()) {
-				if (!varIdx.equals(c)) {				
-					int card = markov.cardinality(varIdx);
-					cptCardinalities.add(card);
-					parentVarCardinalities.add(card);
-					parentCardIdxToCFactorIdx.put(parentCardIdxToCFactorIdx.size(), cFactorCardIdx);
-				}
-				
-				cFactorCardIdx++;
-			}
-			// The child index will be placed at the end of the table by convention
-			cptCardinalities.add(markov.cardinality(c));
-			
-			List<Double> cptEntries             = new ArrayList<>(FunctionTable.numEntriesFor(cptCardinalities));
-			List<Double> parentSummedOutEntries = new ArrayList<>(FunctionTable.numEntriesFor(parentVarCardinalities));	
-			Map<Integer, Integer> assignmentMap = new LinkedHashMap<>();
-			CartesianProductEnumeration<Integer> cpe = new CartesianProductEnumeration<>(FunctionTable.cardinalityValues(parentVarCardinalities));
-			while (cpe.hasMoreElements()) {
-				List<Integer> parentValues = cpe.nextElement();
-				assignmentMap.clear();
-				for (int i = 0; i < parentValues.size(); i++) {
-					assignmentMap.put(parentCardIdxToCFactorIdx.get(i), parentValues.get(i));
-				}
-				Double sum = cFactor.getTable().valueFor(assignmentMap);
-				parentSummedOutEntries.add(sum);
-				for (int i = 0; i < cCardinality; i++) {
-					assignmentMap.put(cIdx, i);
-					if (sum.equals(0.0)) {
+		List<Integer> parentVarCardinalities = new ArrayList<>(cFactorTable.getVariableCardinalities());
+		parentVarCardinalities.remove(cIdx);
+		// The child index will be placed at the end of the table by convention
+		List<Integer> cptCardinalities = new ArrayList<>(parentVarCardinalities);
+		cptCardinalities.add(cCardinality);
+		
+		double[] parentSummedOutEntries = new double[cFactorTable.numberEntries() / cCardinality];
+		double[] cptEntries             = new double[cFactorTable.numberEntries()];
 // TODO - is this approach correct?						
-						// NOTE: This prevents invalid models being generated by assigning an impossibly small probability to an event that should never occur
-						cptEntries.add(Double.MIN_NORMAL); 
-					}
-					else {
-						cptEntries.add(cFactor.getTable().valueFor(assignmentMap) / sum);
-					}
-				}				
-			}
+		// NOTE: Parent assignments summing to 0 get an impossibly small probability for each child value, 
+		// which prevents invalid models being generated for events that should never occur
+		FactorTableUtil.sumOutAndNormalize(cardinalities, cFactorTable.getEntriesArray(), cIdx, Double.MIN_NORMAL, parentSummedOutEntries, cptEntries);
+		
+		FactorTable summedOut = null;
+		if (parentVarIdxs.size() > 0) {
 			summedOut = new FactorTable(parentVarIdxs, new FunctionTable(parentVarCardinalities, parentSummedOutEntries));
-			
-			cptTable  = new FunctionTable(cptCardinalities, cptEntries);
 		}
+		// else no summed out factor as no remaining elements but the cpt values are still normalized
+		FunctionTable cptTable = new FunctionTable(cptCardinalities, cptEntries);
 		ConditionalProbabilityTable cpt = new ConditionalProbabilityTable(parentVarIdxs, c, cptTable);
 		Pair<FactorTable, ConditionalProbabilityTable> result = new Pair<>(summedOut, cpt);		
 		return result;
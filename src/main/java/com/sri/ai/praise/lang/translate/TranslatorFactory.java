@@ -44,7 +44,9 @@ import com.google.common.annotations.Beta;
 import com.sri.ai.praise.lang.ModelLanguage;
 import com.sri.ai.praise.lang.translate.impl.HOGMv1_to_UAI_Translator;
 import com.sri.ai.praise.lang.translate.impl.UAI_to_HOGMv1_Using_Inequalities_Translator;
+import com.sri.ai.praise.lang.translate.impl.UAIBinary_to_UAI_Translator;
 import com.sri.ai.praise.lang.translate.impl.UAI_to_HuginDotNet_Translator;
+import com.sri.ai.praise.lang.translate.impl.UAI_to_UAIBinary_Translator;
 import com.sri.ai.util.base.Pair;
 
 /**
@@ -62,6 +64,9 @@ public class TranslatorFactory {
 		_translators.put(new Pair<>(ModelLanguage.UAI, ModelLanguage.HOGMv1),      UAI_to_HOGMv1_Using_Inequalities_Translator.class);
 //		_translators.put(new Pair<>(ModelLanguage.UAI, ModelLanguage.HOGMv1),      UAI_to_HOGMv1_Using_Equalities_Translator.class);
 		_translators.put(new Pair<>(ModelLanguage.UAI, ModelLanguage.HuginDotNet), UAI_to_HuginDotNet_Translator.class);
+		_translators.put(new Pair<>(ModelLanguage.UAI, ModelLanguage.UAIBinary),   UAI_to_UAIBinary_Translator.class);
+		//
+		_translators.put(new Pair<>(ModelLanguage.UAIBinary, ModelLanguage.UAI),   UAIBinary_to_UAI_Translator.class);
 // TODO - implementations of:
 // Church -> HOGMv1
 // HOGMv1 -> PMTK3
@@ -92,7 +92,12 @@ public abstract class AbstractTranslator implements Translator {
 				// perform the translation, first into the cached files
 				PrintWriter[] cachedWriters = new PrintWriter[cachedOutputs.size()];
 				for (int i = 0; i < cachedWriters.length; i++) {
-					cachedWriters[i] = new PrintWriter(cachedOutputs.get(i));
+					if (getTarget().isBinary()) {
+						cachedWriters[i] = new PrintWriter(Files.newBufferedWriter(cachedOutputs.get(i).toPath(), getTargetCharset()));
+					}
+					else {
+						cachedWriters[i] = new PrintWriter(cachedOutputs.get(i));
+					}
 				}
 				translate(inputIdentifier, inputModelReaders, cachedWriters);
 				for (int i = 0; i < cachedWriters.length; i++) {
@@ -101,12 +106,23 @@ public abstract class AbstractTranslator implements Translator {
 				}
 			}
 			// We now know we have cached files, now take these and feed them to
-			// the translatedOutputs
+			// the translatedOutputs (binary ones as they are, as they are not line based)
 			for (int i = 0; i < cachedOutputs.size(); i++) {
-				BufferedReader br = Files.newBufferedReader(cachedOutputs.get(i).toPath());
-				final PrintWriter translatedOutputI = translatedOutputs[i];
-				br.lines().forEach(line -> translatedOutputI.println(line));
-				translatedOutputI.flush();
+				if (getTarget().isBinary()) {
+					char[] buffer = new char[1 << 16];
+					try (BufferedReader br = Files.newBufferedReader(cachedOutputs.get(i).toPath(), getTargetCharset())) {
+						int read;
+						while ((read = br.read(buffer)) != -1) {
+							translatedOutputs[i].write(buffer, 0, read);
+						}
+					}
+				}
+				else {
+					BufferedReader br = Files.newBufferedReader(cachedOutputs.get(i).toPath());
+					final PrintWriter translatedOutputI = translatedOutputs[i];
+					br.lines().forEach(line -> translatedOutputI.println(line));
+				}
+				translatedOutputs[i].flush();
 			}
 		} else {
 			translate(inputIdentifier, inputModelReaders, translatedOutputs);
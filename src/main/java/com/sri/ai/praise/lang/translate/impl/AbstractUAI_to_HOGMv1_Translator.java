@@ -40,14 +40,15 @@ package com.sri.ai.praise.lang.translate.impl;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 import com.google.common.annotations.Beta;
-import com.google.common.util.concurrent.AtomicDouble;
 import com.sri.ai.expresso.api.Expression;
 import com.sri.ai.expresso.helper.Expressions;
-import com.sri.ai.grinder.library.controlflow.IfThenElse;
 import com.sri.ai.praise.lang.ModelLanguage;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.model.v1.imports.uai.GenericTableExpressionCache;
+import com.sri.ai.praise.model.v1.imports.uai.TableCompressionStatistics;
 import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
 import com.sri.ai.praise.model.v1.imports.uai.UAIUtil;
 
@@ -105,29 +106,14 @@ public abstract class AbstractUAI_to_HOGMv1_Translator extends AbstractUAI_to_Ta
 		hogmv1ModelWriter.println();
 		hogmv1ModelWriter.println("// RULES:");
 		
-		double totalNumberUniqueEntries        = 0;
-		double totalCompressedEntries          = 0;
-		double bestIndividualCompressionRatio  = 100; // i.e. none at all
-		double worstIndividualCompressionRatio = 0;
-				
-		for (int i = 0; i < uaiModel.numberUniqueFunctionTables(); i++) {
+		TableCompressionStatistics stats = new TableCompressionStatistics();
+		
+		// Tables are compiled in parallel (or taken from the table expression cache, if enabled) but consumed here in order, so the output is deterministic
+		Function<FunctionTable, Expression> compiler = table -> GenericTableExpressionCache.compileUsingDefaultCache(getTableCompilationKind(), table, this::convertToHOGMv1Expression);
+		UAIUtil.compileUniqueFunctionTablesInParallel(uaiModel, compiler, (i, genericTableExpression) -> {
 			FunctionTable table = uaiModel.getUniqueFunctionTable(i);
 			
-			totalNumberUniqueEntries += table.numberEntries();
-			
-			Expression genericTableExpression = convertToHOGMv1Expression(table);
-			
-			double compressedEntries = calculateCompressedEntries(genericTableExpression);
-			
-			double compressedRatio = compressedEntries / table.numberEntries();
-			if (compressedRatio < bestIndividualCompressionRatio) {
-				bestIndividualCompressionRatio = compressedRatio;
-			}
-			if (compressedRatio > worstIndividualCompressionRatio) {
-				worstIndividualCompressionRatio = compressedRatio;
-			}
-			
-			totalCompressedEntries += compressedEntries;
+			stats.add(table, genericTableExpression);
 			
 			for (int tableIdx : uaiModel.getTableIndexes(i)) {
 				Expression instanceTableExpression = UAIUtil.convertGenericTableToInstance(table, genericTableExpression, uaiModel.getVariableIndexesForTable(tableIdx));
@@ -136,15 +122,16 @@ public abstract class AbstractUAI_to_HOGMv1_Translator extends AbstractUAI_to_Ta
 					hogmv1ModelWriter.println(instanceTableExpression.toString()+";");
 				}
 			}
-		}
+			return true;
+		});
 		
 		//
 		// 4. Output some stats related to the translation to potentials
 		hogmv1ModelWriter.println();
 		hogmv1ModelWriter.println("// STATS: ");
-		hogmv1ModelWriter.println("// Table compression ratio            = "+(totalCompressedEntries/totalNumberUniqueEntries));
-		hogmv1ModelWriter.println("// Best individual compression ratio  = "+bestIndividualCompressionRatio);
-		hogmv1ModelWriter.println("// Worst individual compression ratio = "+worstIndividualCompressionRatio);		
+		hogmv1ModelWriter.println("// Table compression ratio            = "+stats.getCompressionRatio());
+		hogmv1ModelWriter.println("// Best individual compression ratio  = "+stats.getBestIndividualCompressionRatio());
+		hogmv1ModelWriter.println("// Worst individual compression ratio = "+stats.getWorstIndividualCompressionRatio());		
 	}
 
 	/**
@@ -156,29 +143,17 @@ public abstract class AbstractUAI_to_HOGMv1_Translator extends AbstractUAI_to_Ta
 	 */
 	public abstract void addSortAndRandomVariableDeclarationsRegarding(int varIdx, int varCardinality, List<String> sorts, List<String> randoms);
 
+	/**
+	 * 
+	 * @return the name identifying {@link #convertToHOGMv1Expression(FunctionTable)} and its version in the {@link GenericTableExpressionCache}.
+	 */
+	public abstract String getTableCompilationKind();
+
 	/**
 	 * Provides the HOGMv1 expression for given {@link FunctionTable}.
+	 * Note: this is invoked concurrently for different tables, so implementations must be thread safe.
 	 * @param table
 	 * @return
 	 */
 	public abstract Expression convertToHOGMv1Expression(FunctionTable table);
-
-	private static double calculateCompressedEntries(Expression compressedTableExpression) {
-		AtomicDouble count = new AtomicDouble(0);
-		
-		visitCompressedTableEntries(compressedTableExpression, count);
-		
-		return count.doubleValue();
-	}
-	
-	private static void visitCompressedTableEntries(Expression compressedTableExpression, AtomicDouble count) {
-		if (IfThenElse.isIfThenElse(compressedTableExpression)) {
-			visitCompressedTableEntries(IfThenElse.thenBranch(compressedTableExpression), count);
-			visitCompressedTableEntries(IfThenElse.elseBranch(compressedTableExpression), count);
-		}
-		else {
-			// We are at a leaf node, therefore increment the count
-			count.addAndGet(1);
-		}
-	}
-}
\ No newline at end of file
+}
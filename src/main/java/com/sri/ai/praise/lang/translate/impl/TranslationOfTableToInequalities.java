@@ -68,6 +68,7 @@ import com.sri.ai.grinder.library.boole.And;
 import com.sri.ai.grinder.library.boole.Or;
 import com.sri.ai.grinder.library.controlflow.IfThenElse;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.model.v1.imports.uai.GenericTableExpressionCache;
 import com.sri.ai.praise.model.v1.imports.uai.UAIUtil;
 import com.sri.ai.util.base.Pair;
 import com.sri.ai.util.collect.CartesianProductEnumeration;
@@ -81,6 +82,12 @@ import com.sri.ai.util.math.MixedRadixNumber;
  */
 @Beta
 public class TranslationOfTableToInequalities {
+	
+	/**
+	 * Identifies {@link #constructGenericTableExpressionUsingInequalities(FunctionTable)} and its version in {@link GenericTableExpressionCache}
+	 * (to be changed whenever the expressions it produces change).
+	 */
+	public static final String TABLE_COMPILATION_USING_INEQUALITIES = "inequalities-v1";
 
 	/**
 	 * A class representing a <i>contiguous</i> sub-set of indices of a function table.
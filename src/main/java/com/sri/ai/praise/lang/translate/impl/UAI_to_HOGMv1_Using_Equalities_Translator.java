@@ -72,6 +72,11 @@ public class UAI_to_HOGMv1_Using_Equalities_Translator extends AbstractUAI_to_HO
 		randoms.add("random "+varName+": "+varTypeName+";");
 	}
 
+	@Override
+	public String getTableCompilationKind() {
+		return UAIUtil.TABLE_COMPILATION_USING_EQUALITIES;
+	}
+
 	@Override
 	public Expression convertToHOGMv1Expression(FunctionTable table) {
 		Expression result = UAIUtil.constructGenericTableExpressionUsingEqualities(table);
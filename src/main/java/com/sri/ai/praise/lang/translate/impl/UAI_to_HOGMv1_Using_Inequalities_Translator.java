@@ -60,6 +60,11 @@ public class UAI_to_HOGMv1_Using_Inequalities_Translator extends AbstractUAI_to_
 		randoms.add("random " + varName + ": " + varTypeName + ";");
 	}
 
+	@Override
+	public String getTableCompilationKind() {
+		return TranslationOfTableToInequalities.TABLE_COMPILATION_USING_INEQUALITIES;
+	}
+
 	@Override
 	public Expression convertToHOGMv1Expression(FunctionTable table) {
 		Expression result = TranslationOfTableToInequalities.constructGenericTableExpressionUsingInequalities(table);
@@ -37,142 +37,158 @@
  */
 package com.sri.ai.praise.model.v1.export;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.io.Reader;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.google.common.annotations.Beta;
 import com.sri.ai.praise.lang.grounded.model.HOGModelGrounding;
+import com.sri.ai.praise.model.v1.imports.uai.UAIUtil;
 import com.sri.ai.util.base.Pair;
 import com.sri.ai.util.math.Rational;
 
+/**
+ * Writes a grounding in the UAI format in a single pass: as all factor participants are announced before
+ * any factor table (see {@link HOGModelGrounding.BulkListener#participantsBeforeValues()}), the preamble
+ * and then the function tables are streamed straight to the model output through a single buffer.
+ */
 @Beta
-public class UAIHOGModelGroundingListener implements HOGModelGrounding.Listener {
+public class UAIHOGModelGroundingListener implements HOGModelGrounding.BulkListener {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
 	private PrintWriter uaiModelOutput    = null;
 	private PrintWriter uaiEvidenceOutput = null;
-	private File tempPreambleFile         = null;
-	private File tempFunctionTablesFile   = null;
 	private List<Pair<Integer, Integer>> evidence = new ArrayList<>();
 	
-	private int    numberVariables;
-	private Writer preamble       = null;
-	private Writer functionTables = null;
+	private int           numberVariables;
+	private StringBuilder pending = new StringBuilder(BUFFER_SIZE + 1024);
 	
 	public UAIHOGModelGroundingListener(PrintWriter uaiModelOutput, PrintWriter uaiEvidenceOutput) {
 		this.uaiModelOutput    = uaiModelOutput;
 		this.uaiEvidenceOutput = uaiEvidenceOutput;
-		try {	
-			tempPreambleFile       = File.createTempFile("preamble", "uai");
-			tempFunctionTablesFile = File.createTempFile("factorTables", "uai");
-			
-			preamble       = new OutputStreamWriter(new FileOutputStream(tempPreambleFile));
-			functionTables = new OutputStreamWriter(new FileOutputStream(tempFunctionTablesFile));
-		}
-		catch (IOException ioe) {
-			throw new RuntimeException(ioe);
-		}
-		
 	}
 	
 	//
 	// START-HOGModelGrounding.Listener
+	@Override
+	public boolean participantsBeforeValues() {
+		return true;
+	}
+	
 	@Override
 	public void numberGroundVariables(int number) { 
 		this.numberVariables = number;
-		writePreamble("MARKOV\n");
-		writePreamble(""+number+"\n");
+		pending.append("MARKOV\n");
+		pending.append(number).append('\n');
 	}	
 	
 	@Override
 	public void groundVariableCardinality(int variableIndex, int cardinality) {
-		writePreamble(""+cardinality);
+		pending.append(cardinality);
 		if (variableIndex == (numberVariables-1)) {
-			writePreamble("\n");
+			pending.append('\n');
 		}
 		else {
-			writePreamble(" ");
+			pending.append(' ');
 		}
+		flushIfFull();
 	}
 	
 	@Override
 	public void numberFactors(int number) {
-		writePreamble(""+number+"\n");
+		pending.append(number).append('\n');
 	}
 	
 	@Override
 	public void factorParticipants(int factorIndex, int[] variableIndexes) {
-		writePreamble(""+variableIndexes.length);
+		pending.append(variableIndexes.length);
 		for (int i = 0; i < variableIndexes.length; i++) {
-			writePreamble(" "+variableIndexes[i]);
+			pending.append(' ').append(variableIndexes[i]);
 		}
-		writePreamble("\n");
+		pending.append('\n');
+		flushIfFull();
 	}
 	
 	@Override
 	public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
 		if (isFirstValue) {
-			writeFunctionTables("\n"+numberFactorValues+"\n");
+			pending.append('\n').append(numberFactorValues).append('\n');
 		}
 		else {
-			writeFunctionTables(" ");
+			pending.append(' ');
 		}
 		
-		writeFunctionTables(""+value.doubleValue());
+		UAIUtil.appendDouble(pending, value.doubleValue());
 	
 		if (isLastValue) {
-			writeFunctionTables("\n");
+			pending.append('\n');
 		}
+		flushIfFull();
 	}	
 	
 	@Override
-	public void evidence(int variableIndex, int valueIndex) {
-		evidence.add(new Pair<>(variableIndex, valueIndex));
+	public void factorValues(int factorIndex, double[] values) {
+		pending.append('\n').append(values.length).append('\n');
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				pending.append(' ');
+			}
+			UAIUtil.appendDouble(pending, values[i]);
+			flushIfFull();
+		}
+		pending.append('\n');
 	}
 	
 	@Override
-	public void groundingComplete() {
-		try {
-			preamble.flush();preamble.close();
-			functionTables.flush();functionTables.close();
-			
-			try (Reader fisPreamble       = new FileReader(tempPreambleFile);
-				 Reader fisFunctionTables = new FileReader(tempFunctionTablesFile);) {
-				
-				char[] buffer = new char[1024];
-				int read;
-				while ((read = fisPreamble.read(buffer)) != -1) {
-					uaiModelOutput.write(buffer, 0, read);
+	public void factorValueRuns(int factorIndex, int numberFactorValues, double[] runValues, int[] runLengths, int numberRuns) {
+		pending.append('\n').append(numberFactorValues).append('\n');
+		for (int run = 0; run < numberRuns; run++) {
+			// each distinct run value is only formatted once, and then copied
+			int valueStart = pending.length() + (run > 0 ? 1 : 0);
+			if (run > 0) {
+				pending.append(' ');
+			}
+			UAIUtil.appendDouble(pending, runValues[run]);
+			int valueEnd = pending.length();
+			for (int i = 1; i < runLengths[run]; i++) {
+				pending.append(' ');
+				// in case the buffer was flushed since the value was formatted
+				if (valueStart < 0) {
+					UAIUtil.appendDouble(pending, runValues[run]);
 				}
-				while ((read = fisFunctionTables.read(buffer)) != -1) {
-					uaiModelOutput.write(buffer, 0, read);
+				else {
+					pending.append(pending, valueStart, valueEnd);
 				}
-				uaiModelOutput.flush();
-				
-				// Indicate number of observed variables in the evidence file
-				uaiEvidenceOutput.write(""+evidence.size());
-				// and their variable and value indexes
-				for (Pair<Integer, Integer> evidenceAssignment : evidence) {
-					uaiEvidenceOutput.write(" ");
-					uaiEvidenceOutput.write(""+evidenceAssignment.first);
-					uaiEvidenceOutput.write(" ");
-					uaiEvidenceOutput.write(""+evidenceAssignment.second);
+				if (pending.length() >= BUFFER_SIZE) {
+					flush();
+					valueStart = -1;
 				}
-				uaiEvidenceOutput.flush();
 			}
-		
-			tempPreambleFile.delete();
-			tempFunctionTablesFile.delete();
+			flushIfFull();
 		}
-		catch (IOException ioe) {
-			throw new RuntimeException(ioe);
+		pending.append('\n');
+	}
+	
+	@Override
+	public void evidence(int variableIndex, int valueIndex) {
+		evidence.add(new Pair<>(variableIndex, valueIndex));
+	}
+	
+	@Override
+	public void groundingComplete() {
+		flush();
+		uaiModelOutput.flush();
+		
+		// Indicate number of observed variables in the evidence file
+		StringBuilder evidenceOutput = new StringBuilder();
+		evidenceOutput.append(evidence.size());
+		// and their variable and value indexes
+		for (Pair<Integer, Integer> evidenceAssignment : evidence) {
+			evidenceOutput.append(' ').append(evidenceAssignment.first);
+			evidenceOutput.append(' ').append(evidenceAssignment.second);
 		}
+		uaiEvidenceOutput.write(evidenceOutput.toString());
+		uaiEvidenceOutput.flush();
 	}
 	
 	// END-HOGModelGrounding.Listener
@@ -181,21 +197,14 @@ public class UAIHOGModelGroundingListener implements HOGModelGrounding.Listener
 	//
 	// PRIVATE
 	//
-	private void writePreamble(String string) {
-		try {
-			preamble.write(string);
-		}
-		catch (IOException ioe) {
-			throw new RuntimeException(ioe);
+	private void flushIfFull() {
+		if (pending.length() >= BUFFER_SIZE) {
+			flush();
 		}
 	}
 	
-	private void writeFunctionTables(String string) {
-		try {
-			functionTables.write(string);
-		}
-		catch (IOException ioe) {
-			throw new RuntimeException(ioe);
-		}
+	private void flush() {
+		uaiModelOutput.append(pending);
+		pending.setLength(0);
 	}
 }
@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.expresso.api.Symbol;
+import com.sri.ai.expresso.helper.Expressions;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.util.math.Rational;
+
+/**
+ * A persistent, content addressed cache of compiled generic table expressions 
+ * (e.g. as produced by {@link UAIUtil#constructGenericTableExpressionUsingEqualities(FunctionTable)}), 
+ * so that tables recurring across models and runs are only compiled once.
+ * <p>
+ * Entries are keyed by the kind of compilation (which identifies the compiler and its version), the table's cardinalities 
+ * and a SHA-256 digest of its cardinalities and entries, and are stored one per file in a compact binary form 
+ * (shared sub-expressions are only written once). Each file also holds the full digest, which is checked on a hit,
+ * so a table never gets the compilation of another one. When the total size of the files exceeds the 
+ * configured bound the least recently used entries are removed (recency is tracked in memory, so entries
+ * recovered from a previous run are considered from the oldest to the newest written).
+ * <p>
+ * The default cache is configured with the system properties <code>uai.table.cache.dir</code>
+ * (caching is disabled if not set) and <code>uai.table.cache.max.bytes</code> (256MB by default).
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class GenericTableExpressionCache {
+	
+	public static final String CACHE_DIRECTORY_PROPERTY = "uai.table.cache.dir";
+	public static final String CACHE_MAX_BYTES_PROPERTY = "uai.table.cache.max.bytes";
+	//
+	private static final long   DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+	private static final int    MAGIC             = 0x55414943; // i.e. 'UAIC'
+	private static final int    VERSION           = 2;
+	private static final int    DIGEST_BYTES      = 32;
+	private static final int    DIGEST_NAME_BYTES = 16; // the part of the digest used in file names
+	private static final String FILE_SUFFIX       = ".gte";
+	private static final int    RATIONAL_RADIX    = 16;
+	//
+	private static final byte TAG_REFERENCE   = 0;
+	private static final byte TAG_STRING      = 1;
+	private static final byte TAG_BOOLEAN     = 2;
+	private static final byte TAG_RATIONAL    = 3;
+	private static final byte TAG_APPLICATION = 4;
+	//
+	private static GenericTableExpressionCache defaultCache = null;
+	
+	private File directory;
+	private long maxBytes;
+	// file name -> size, in least to most recently used order
+	private LinkedHashMap<String, Long> entrySizes = new LinkedHashMap<>(16, 0.75f, true);
+	private long totalBytes = 0;
+	
+	/**
+	 * 
+	 * @return the cache configured by the system properties, or null if caching is not enabled.
+	 */
+	public static synchronized GenericTableExpressionCache getDefault() {
+		String directoryName = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+		if (directoryName == null) {
+			return null;
+		}
+		File directory = new File(directoryName);
+		if (defaultCache == null || !defaultCache.directory.equals(directory)) {
+			defaultCache = new GenericTableExpressionCache(directory, Long.getLong(CACHE_MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES));
+		}
+		return defaultCache;
+	}
+	
+	/**
+	 * Returns the compilation of the given table obtained from the default cache if enabled,
+	 * or simply compiles it otherwise.
+	 * @param compilationKind
+	 *        a name identifying the compiler and its version (tables compiled by different compilers are cached separately,
+	 *        so it must be changed whenever the compiler's output changes).
+	 * @param table
+	 *        the table to be compiled.
+	 * @param compiler
+	 *        the compiler to use if the table is not in the cache.
+	 * @return the compiled table expression.
+	 */
+	public static Expression compileUsingDefaultCache(String compilationKind, FunctionTable table, Function<FunctionTable, Expression> compiler) {
+		Expression result;
+		GenericTableExpressionCache cache = getDefault();
+		if (cache == null) {
+			result = compiler.apply(table);
+		}
+		else {
+			result = cache.getOrCompile(compilationKind, table, compiler);
+		}
+		return result;
+	}
+	
+	/**
+	 * Constructor.
+	 * @param directory
+	 *        the directory where cached expressions are stored (created if it does not exist).
+	 * @param maxBytes
+	 *        the bound on the total size of the cached expression files.
+	 */
+	public GenericTableExpressionCache(File directory, long maxBytes) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Maximum cache size must be positive: "+maxBytes);
+		}
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("Unable to create cache directory: "+directory.getAbsolutePath());
+		}
+		if (!directory.isDirectory()) {
+			throw new IllegalArgumentException("Cache directory is invalid: "+directory.getAbsolutePath());
+		}
+		this.directory = directory;
+		this.maxBytes  = maxBytes;
+		
+		// recover the existing entries, least recently used first
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			entrySizes.put(file.getName(), file.length());
+			totalBytes += file.length();
+		}
+	}
+	
+	public File getDirectory() {
+		return directory;
+	}
+	
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+	
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+	
+	/**
+	 * 
+	 * @param compilationKind
+	 *        a name identifying the compiler and its version.
+	 * @param table
+	 *        the table to be compiled.
+	 * @param compiler
+	 *        the compiler to use if the table is not in the cache.
+	 * @return the cached compilation of the table if present, otherwise the compiled table (which is added to the cache).
+	 */
+	public Expression getOrCompile(String compilationKind, FunctionTable table, Function<FunctionTable, Expression> compiler) {
+		Expression result = get(compilationKind, table);
+		if (result == null) {
+			result = compiler.apply(table);
+			put(compilationKind, table, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * 
+	 * @param compilationKind
+	 *        a name identifying the compiler and its version.
+	 * @param table
+	 *        a table.
+	 * @return the cached compilation of the table, or null if not present.
+	 */
+	public Expression get(String compilationKind, FunctionTable table) {
+		Expression result = null;
+		byte[] digest   = digest(table);
+		String fileName = fileName(compilationKind, table, digest);
+		File   file     = new File(directory, fileName);
+		synchronized (this) {
+			if (entrySizes.get(fileName) == null) { // also marks it as the most recently used
+				return null;
+			}
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Cache entry of an unknown version: "+fileName);
+			}
+			// another table with the same name (i.e. whose digest starts the same) is a miss, but its entry remains valid 
+			if (readCardinalities(in).equals(table.getVariableCardinalities()) && Arrays.equals(readDigest(in), digest)) {
+				result = readExpression(in, new ArrayList<>());
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			// an unreadable entry (e.g. removed or truncated by another process, or written by another version) is simply treated as missing
+			remove(fileName);
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the compilation of a table to the cache (expressions that cannot be serialized are ignored).
+	 * @param compilationKind
+	 *        a name identifying the compiler and its version.
+	 * @param table
+	 *        a table.
+	 * @param tableExpression
+	 *        the compilation of the table.
+	 */
+	public void put(String compilationKind, FunctionTable table, Expression tableExpression) {
+		byte[] digest   = digest(table);
+		String fileName = fileName(compilationKind, table, digest);
+		File   file     = new File(directory, fileName);
+		try {
+			File temporaryFile = File.createTempFile(fileName, ".tmp", directory);
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+					out.writeInt(MAGIC);
+					out.writeInt(VERSION);
+					List<Integer> cardinalities = table.getVariableCardinalities();
+					out.writeInt(cardinalities.size());
+					for (Integer cardinality : cardinalities) {
+						out.writeInt(cardinality);
+					}
+					out.write(digest);
+					writeExpression(tableExpression, out, new IdentityHashMap<>());
+				}
+				Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			finally {
+				temporaryFile.delete();
+			}
+			synchronized (this) {
+				Long previousSize = entrySizes.put(fileName, file.length());
+				totalBytes += file.length() - (previousSize == null ? 0 : previousSize);
+				evictIfNeeded();
+			}
+		}
+		catch (IOException | IllegalArgumentException ex) {
+			// not being able to cache is not an error, the table will just be compiled again next time
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static String fileName(String compilationKind, FunctionTable table, byte[] digest) {
+		StringBuilder result = new StringBuilder(compilationKind);
+		for (Integer cardinality : table.getVariableCardinalities()) {
+			result.append('_');
+			result.append(cardinality);
+		}
+		result.append('-');
+		for (int i = 0; i < DIGEST_NAME_BYTES; i++) {
+			result.append(String.format("%02x", digest[i]));
+		}
+		result.append(FILE_SUFFIX);
+		return result.toString();
+	}
+	
+	private static byte[] digest(FunctionTable table) {
+		MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+			throw new IllegalStateException("SHA-256 is required to be supported by every Java platform", noSuchAlgorithmException);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(8 * 1024, Integer.BYTES * (table.numberVariables() + 1)));
+		buffer.putInt(table.numberVariables());
+		for (Integer cardinality : table.getVariableCardinalities()) {
+			buffer.putInt(cardinality);
+		}
+		for (double entry : table.getEntriesArray()) {
+			if (buffer.remaining() < Long.BYTES) {
+				buffer.flip();
+				messageDigest.update(buffer);
+				buffer.clear();
+			}
+			buffer.putLong(Double.doubleToLongBits(entry));
+		}
+		buffer.flip();
+		messageDigest.update(buffer);
+		return messageDigest.digest();
+	}
+	
+	private static byte[] readDigest(DataInputStream in) throws IOException {
+		byte[] result = new byte[DIGEST_BYTES];
+		in.readFully(result);
+		return result;
+	}
+	
+	private synchronized void remove(String fileName) {
+		Long size = entrySizes.remove(fileName);
+		if (size != null) {
+			totalBytes -= size;
+			new File(directory, fileName).delete();
+		}
+	}
+	
+	private void evictIfNeeded() {
+		while (totalBytes > maxBytes && entrySizes.size() > 1) {
+			Map.Entry<String, Long> leastRecentlyUsed = entrySizes.entrySet().iterator().next();
+			remove(leastRecentlyUsed.getKey());
+		}
+	}
+	
+	private static List<Integer> readCardinalities(DataInputStream in) throws IOException {
+		int numberVariables = in.readInt();
+		List<Integer> result = new ArrayList<>(numberVariables);
+		for (int i = 0; i < numberVariables; i++) {
+			result.add(in.readInt());
+		}
+		return result;
+	}
+	
+	private static void writeExpression(Expression expression, DataOutputStream out, Map<Expression, Integer> written) throws IOException {
+		Integer reference = written.get(expression);
+		if (reference != null) {
+			out.writeByte(TAG_REFERENCE);
+			out.writeInt(reference);
+			return;
+		}
+		
+		if (expression.getSyntacticFormType().equals(Symbol.SYNTACTIC_FORM_TYPE)) {
+			Object value = expression.getValue();
+			if (value instanceof Rational) {
+				Rational rational = (Rational) value;
+				out.writeByte(TAG_RATIONAL);
+				out.writeUTF(rational.getNumerator().toString(RATIONAL_RADIX)+"/"+rational.getDenominator().toString(RATIONAL_RADIX));
+			}
+			else if (value instanceof Boolean) {
+				out.writeByte(TAG_BOOLEAN);
+				out.writeBoolean((Boolean) value);
+			}
+			else if (value instanceof String) {
+				out.writeByte(TAG_STRING);
+				out.writeUTF((String) value);
+			}
+			else {
+				throw new IllegalArgumentException("Unsupported symbol value: "+value);
+			}
+		}
+		else if (Expressions.isFunctionApplicationWithArguments(expression)) {
+			out.writeByte(TAG_APPLICATION);
+			writeExpression(expression.getFunctor(), out, written);
+			out.writeInt(expression.getArguments().size());
+			for (Expression argument : expression.getArguments()) {
+				writeExpression(argument, out, written);
+			}
+		}
+		else {
+			throw new IllegalArgumentException("Unsupported expression: "+expression);
+		}
+		written.put(expression, written.size());
+	}
+	
+	private static Expression readExpression(DataInputStream in, List<Expression> read) throws IOException {
+		Expression result;
+		byte tag = in.readByte();
+		switch (tag) {
+		case TAG_REFERENCE:
+			return read.get(in.readInt());
+		case TAG_RATIONAL:
+			result = Expressions.makeSymbol(new Rational(in.readUTF(), RATIONAL_RADIX));
+			break;
+		case TAG_BOOLEAN:
+			result = Expressions.makeSymbol(in.readBoolean());
+			break;
+		case TAG_STRING:
+			result = Expressions.makeSymbol(in.readUTF());
+			break;
+		case TAG_APPLICATION:
+			Expression functor = readExpression(in, read);
+			int numberOfArguments = in.readInt();
+			List<Expression> arguments = new ArrayList<>(numberOfArguments);
+			for (int i = 0; i < numberOfArguments; i++) {
+				arguments.add(readExpression(in, read));
+			}
+			result = Expressions.apply(functor, arguments);
+			break;
+		default:
+			throw new IOException("Invalid cache entry tag: "+tag);
+		}
+		read.add(result);
+		return result;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import com.google.common.annotations.Beta;
+import com.google.common.util.concurrent.AtomicDouble;
+import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.grinder.library.controlflow.IfThenElse;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+/**
+ * Accumulates how much the decision trees compiled for function tables compress them
+ * (i.e. the ratio between the number of leaves of a tree and the number of entries of its table).
+ * 
+ * @author oreilly
+ *
+ */
+@Beta
+public class TableCompressionStatistics {
+	private double totalNumberUniqueEntries        = 0;
+	private double totalCompressedEntries          = 0;
+	private double bestIndividualCompressionRatio  = 100; // i.e. none at all
+	private double worstIndividualCompressionRatio = 0;
+	
+	/**
+	 * Adds a unique table and its compilation to the statistics.
+	 * @param table
+	 *        a function table.
+	 * @param genericTableExpression
+	 *        the decision tree compiled for the table.
+	 */
+	public void add(FunctionTable table, Expression genericTableExpression) {
+		totalNumberUniqueEntries += table.numberEntries();
+		
+		double compressedEntries = calculateCompressedEntries(genericTableExpression);
+		
+		double compressedRatio = compressedEntries / table.numberEntries();
+		if (compressedRatio < bestIndividualCompressionRatio) {
+			bestIndividualCompressionRatio = compressedRatio;
+		}
+		if (compressedRatio > worstIndividualCompressionRatio) {
+			worstIndividualCompressionRatio = compressedRatio;
+		}
+		
+		totalCompressedEntries += compressedEntries;
+	}
+	
+	public double getCompressionRatio() {
+		return totalCompressedEntries / totalNumberUniqueEntries;
+	}
+	
+	public double getBestIndividualCompressionRatio() {
+		return bestIndividualCompressionRatio;
+	}
+	
+	public double getWorstIndividualCompressionRatio() {
+		return worstIndividualCompressionRatio;
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static double calculateCompressedEntries(Expression compressedTableExpression) {
+		AtomicDouble count = new AtomicDouble(0);
+		
+		visitCompressedTableEntries(compressedTableExpression, count);
+		
+		return count.doubleValue();
+	}
+	
+	private static void visitCompressedTableEntries(Expression compressedTableExpression, AtomicDouble count) {
+		if (IfThenElse.isIfThenElse(compressedTableExpression)) {
+			visitCompressedTableEntries(IfThenElse.thenBranch(compressedTableExpression), count);
+			visitCompressedTableEntries(IfThenElse.elseBranch(compressedTableExpression), count);
+		}
+		else {
+			// We are at a leaf node, therefore increment the count
+			count.addAndGet(1);
+		}
+	}
+}
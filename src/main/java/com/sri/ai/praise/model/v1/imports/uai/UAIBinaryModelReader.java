@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+/**
+ * Reads models in the binary sibling of the UAI format (as written by {@link UAIBinaryModelWriter}).
+ * All values are little-endian:
+ * <pre>
+ * "UAIB" version type
+ * numberVariables cardinality*
+ * numberTables (numberTableVariables variableIndex* uniqueTableIndex)*
+ * numberUniqueTables (numberEntries entry*)*
+ * </pre>
+ * where doubles are used for table entries and 32 bit integers for everything else (<code>type</code> being a {@link UAIModelType} ordinal).
+ * Table entries are copied in bulk from memory-mapped regions of the file, and the tables that share a unique table
+ * share the same {@link FunctionTable}, whose unique table index is that of the file, so tables are neither parsed nor deduplicated again.
+ * 
+ * @author oreilly
+ */
+@Beta
+public class UAIBinaryModelReader {
+	public static final byte[] MAGIC   = {'U', 'A', 'I', 'B'};
+	public static final int    VERSION = 1;
+	
+	public static UAIModel read(File modelFile) throws IOException {
+		try (Input input = new MappedFileInput(modelFile)) {
+			return read(input);
+		}
+	}
+	
+	/**
+	 * Reads a model from a reader whose characters are the bytes of the file (i.e. decoded as ISO-8859-1),
+	 * which is how binary models are passed between translators.
+	 * @param modelReader
+	 * @return the model read.
+	 * @throws IOException
+	 */
+	public static UAIModel read(Reader modelReader) throws IOException {
+		// the characters are converted straight into the bytes the model is read from, which are not copied again
+		byte[] bytes       = new byte[1 << 16];
+		int    numberBytes = 0;
+		char[] buffer      = new char[1 << 16];
+		int read;
+		while ((read = modelReader.read(buffer)) != -1) {
+			if (bytes.length - numberBytes < read) {
+				bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, numberBytes + read));
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer[i] > 0xFF) {
+					throw new IllegalArgumentException("Binary UAI models must be read as ISO-8859-1, found character "+(int) buffer[i]);
+				}
+				bytes[numberBytes++] = (byte) buffer[i];
+			}
+		}
+		try (Input input = new Input(ByteBuffer.wrap(bytes, 0, numberBytes))) {
+			return read(input);
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static UAIModel read(Input input) throws IOException {
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (input.nextByte() != MAGIC[i]) {
+				throw new IllegalArgumentException("Not a binary UAI model");
+			}
+		}
+		int version = input.nextInt();
+		if (version != VERSION) {
+			throw new IllegalArgumentException("Unsupported binary UAI model version "+version);
+		}
+		int type = input.nextInt();
+		if (type < 0 || type >= UAIModelType.values().length) {
+			throw new IllegalArgumentException("Unknown type of network "+type);
+		}
+		
+		int                   numberVariables     = checkCount(input.nextInt(), "variables");
+		Map<Integer, Integer> varIdxToCardinality = new LinkedHashMap<>();
+		for (int i = 0; i < numberVariables; i++) {
+			varIdxToCardinality.put(i, input.nextInt());
+		}
+		
+		int                 numberTables                 = checkCount(input.nextInt(), "tables");
+		List<List<Integer>> tableInstanceVariableIndexes = new ArrayList<>(numberTables);
+		int[]               tableUniqueTableIdxs         = new int[numberTables];
+		for (int t = 0; t < numberTables; t++) {
+			int           numberTableVariables = checkCount(input.nextInt(), "table variables");
+			List<Integer> tableVarIdxs         = new ArrayList<>(numberTableVariables);
+			for (int v = 0; v < numberTableVariables; v++) {
+				int varIdx = input.nextInt();
+				if (varIdx < 0 || varIdx >= numberVariables) {
+					throw new IllegalArgumentException("Badly defined table "+t+", variable index "+varIdx+" is not in [0, "+numberVariables+")");
+				}
+				tableVarIdxs.add(varIdx);
+			}
+			tableInstanceVariableIndexes.add(tableVarIdxs);
+			tableUniqueTableIdxs[t] = input.nextInt();
+		}
+		
+		int                 numberUniqueTables       = checkCount(input.nextInt(), "unique tables");
+		List<List<Integer>> uniqueTableCardinalities = new ArrayList<>(numberUniqueTables);
+		for (int u = 0; u < numberUniqueTables; u++) {
+			uniqueTableCardinalities.add(null);
+		}
+		// the cardinalities of a unique table are those of (any of) its table instances
+		for (int t = 0; t < numberTables; t++) {
+			int uniqueTableIdx = tableUniqueTableIdxs[t];
+			if (uniqueTableIdx < 0 || uniqueTableIdx >= numberUniqueTables) {
+				throw new IllegalArgumentException("Badly defined table "+t+", unique table index "+uniqueTableIdx+" is not in [0, "+numberUniqueTables+")");
+			}
+			if (uniqueTableCardinalities.get(uniqueTableIdx) == null) {
+				List<Integer> cardinalities = new ArrayList<>();
+				for (Integer varIdx : tableInstanceVariableIndexes.get(t)) {
+					cardinalities.add(varIdxToCardinality.get(varIdx));
+				}
+				uniqueTableCardinalities.set(uniqueTableIdx, cardinalities);
+			}
+		}
+		
+		List<FunctionTable> uniqueTables = new ArrayList<>(numberUniqueTables);
+		for (int u = 0; u < numberUniqueTables; u++) {
+			double[] entries = new double[checkCount(input.nextInt(), "entries")];
+			input.nextDoubles(entries);
+			// unique tables not used by any table instance are skipped
+			uniqueTables.add(uniqueTableCardinalities.get(u) == null ? null : new FunctionTable(uniqueTableCardinalities.get(u), entries));
+		}
+		
+		UAIModel result = new UAIModel(UAIModelType.values()[type], varIdxToCardinality, tableInstanceVariableIndexes, uniqueTables, tableUniqueTableIdxs);
+		
+		return result;
+	}
+	
+	private static int checkCount(int count, String description) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Invalid number of "+description+": "+count);
+		}
+		return count;
+	}
+	
+	/**
+	 * Little-endian input from a byte buffer, which subclasses may refill (i.e. move along a larger input).
+	 */
+	private static class Input implements AutoCloseable {
+		protected ByteBuffer buffer;
+		
+		Input(ByteBuffer buffer) {
+			this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		
+		byte nextByte() throws IOException {
+			ensureRemaining(1);
+			return buffer.get();
+		}
+		
+		int nextInt() throws IOException {
+			ensureRemaining(Integer.BYTES);
+			return buffer.getInt();
+		}
+		
+		void nextDoubles(double[] doubles) throws IOException {
+			int offset = 0;
+			while (offset < doubles.length) {
+				ensureRemaining(Double.BYTES);
+				int length = Math.min(doubles.length - offset, buffer.remaining() / Double.BYTES);
+				buffer.asDoubleBuffer().get(doubles, offset, length); // the view's order is the buffer's, i.e. little-endian
+				buffer.position(buffer.position() + length * Double.BYTES);
+				offset += length;
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+		}
+		
+		protected void ensureRemaining(int numberBytes) throws IOException {
+			if (buffer.remaining() < numberBytes) {
+				throw new IllegalArgumentException("Unexpected end of binary UAI model");
+			}
+		}
+	}
+	
+	private static class MappedFileInput extends Input {
+		private static final long MAX_REGION_SIZE = 1L << 30;
+		
+		private FileChannel channel;
+		private long        size;
+		private long        regionStart;
+		
+		MappedFileInput(File file) throws IOException {
+			super(ByteBuffer.allocate(0));
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			this.size    = channel.size();
+			map(0);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			buffer = null;
+			channel.close();
+		}
+		
+		@Override
+		protected void ensureRemaining(int numberBytes) throws IOException {
+			if (buffer.remaining() < numberBytes) {
+				map(regionStart + buffer.position());
+				super.ensureRemaining(numberBytes);
+			}
+		}
+		
+		private void map(long start) throws IOException {
+			regionStart = start;
+			buffer      = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, MAX_REGION_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+/**
+ * Writes models in the binary sibling of the UAI format (see {@link UAIBinaryModelReader} for its layout),
+ * storing each of the model's unique function tables only once.
+ * 
+ * @author oreilly
+ */
+@Beta
+public class UAIBinaryModelWriter {
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	public static void write(UAIModel model, File modelFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(modelFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			write(model, channel);
+		}
+	}
+	
+	/**
+	 * Writes a model to a writer, one character per byte (i.e. to be encoded as ISO-8859-1),
+	 * which is how binary models are passed between translators.
+	 * @param model
+	 * @param modelWriter
+	 * @throws IOException
+	 */
+	public static void write(UAIModel model, Writer modelWriter) throws IOException {
+		write(model, new WritableByteChannel() {
+			private char[] chars = new char[BUFFER_SIZE];
+			@Override
+			public int write(ByteBuffer bytes) throws IOException {
+				int result = 0;
+				while (bytes.hasRemaining()) {
+					int length = Math.min(chars.length, bytes.remaining());
+					for (int i = 0; i < length; i++) {
+						chars[i] = (char) (bytes.get() & 0xFF);
+					}
+					modelWriter.write(chars, 0, length);
+					result += length;
+				}
+				return result;
+			}
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+			@Override
+			public void close() {
+			}
+		});
+		modelWriter.flush();
+	}
+	
+	public static void write(UAIModel model, WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		
+		buffer.put(UAIBinaryModelReader.MAGIC);
+		buffer.putInt(UAIBinaryModelReader.VERSION);
+		buffer.putInt(model.getType().ordinal());
+		
+		buffer.putInt(model.numberVariables());
+		for (int i = 0; i < model.numberVariables(); i++) {
+			putInt(model.cardinality(i), buffer, channel);
+		}
+		
+		int[] tableUniqueTableIdxs = new int[model.numberTables()];
+		for (int u = 0; u < model.numberUniqueFunctionTables(); u++) {
+			for (Integer tableIdx : model.getTableIndexes(u)) {
+				tableUniqueTableIdxs[tableIdx] = u;
+			}
+		}
+		putInt(model.numberTables(), buffer, channel);
+		for (int t = 0; t < model.numberTables(); t++) {
+			List<Integer> tableVarIdxs = model.getVariableIndexesForTable(t);
+			putInt(tableVarIdxs.size(), buffer, channel);
+			for (Integer varIdx : tableVarIdxs) {
+				putInt(varIdx, buffer, channel);
+			}
+			putInt(tableUniqueTableIdxs[t], buffer, channel);
+		}
+		
+		putInt(model.numberUniqueFunctionTables(), buffer, channel);
+		for (int u = 0; u < model.numberUniqueFunctionTables(); u++) {
+			FunctionTable uniqueTable = model.getUniqueFunctionTable(u);
+			putInt(uniqueTable.numberEntries(), buffer, channel);
+			for (int i = 0; i < uniqueTable.numberEntries(); i++) {
+				if (buffer.remaining() < Double.BYTES) {
+					drain(buffer, channel);
+				}
+				buffer.putDouble(uniqueTable.entryAtLinear(i));
+			}
+		}
+		
+		drain(buffer, channel);
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static void putInt(int value, ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		if (buffer.remaining() < Integer.BYTES) {
+			drain(buffer, channel);
+		}
+		buffer.putInt(value);
+	}
+	
+	private static void drain(ByteBuffer buffer, WritableByteChannel channel) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import com.google.common.annotations.Beta;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+/**
+ * Loads the function tables of a UAI model file on demand, from the offsets of their bodies in the file
+ * (as recorded by {@link UAIModelReader#readLazily(File)}). The file is opened (and mapped) once, on the first load,
+ * and kept open until {@link #close()} is called. Not thread safe (callers synchronize on the model).
+ * 
+ * @author oreilly
+ */
+@Beta
+class UAIFunctionTableLoader {
+	private File                file;
+	private long[]              tableOffsets;
+	private List<List<Integer>> tableCardinalities;
+	private UAITokenizer        tokenizer = null; // opened on the first load
+	
+	UAIFunctionTableLoader(File file, long[] tableOffsets, List<List<Integer>> tableCardinalities) {
+		this.file               = file;
+		this.tableOffsets       = tableOffsets;
+		this.tableCardinalities = tableCardinalities;
+	}
+	
+	int numberTables() {
+		return tableOffsets.length;
+	}
+	
+	FunctionTable load(int tableIdx) {
+		try {
+			return load(tableIdx, openTokenizer());
+		}
+		catch (IOException ioException) {
+			throw new UncheckedIOException("Unable to load table "+tableIdx+" from "+file.getAbsolutePath(), ioException);
+		}
+	}
+	
+	/**
+	 * Loads the tables with the given indexes in a single pass over the file.
+	 * @param tableIdxs the indexes of the tables to be loaded, in increasing order.
+	 * @param consumer receives each table index and its loaded table.
+	 */
+	void load(List<Integer> tableIdxs, BiConsumer<Integer, FunctionTable> consumer) {
+		try {
+			UAITokenizer tokenizer = openTokenizer();
+			for (Integer tableIdx : tableIdxs) {
+				consumer.accept(tableIdx, load(tableIdx, tokenizer));
+			}
+		}
+		catch (IOException ioException) {
+			throw new UncheckedIOException("Unable to load tables from "+file.getAbsolutePath(), ioException);
+		}
+	}
+	
+	/**
+	 * Closes the file (and releases its mapping), which is opened again by the next load.
+	 */
+	void close() {
+		if (tokenizer != null) {
+			try {
+				tokenizer.close();
+			}
+			catch (IOException ioException) {
+				throw new UncheckedIOException("Unable to close "+file.getAbsolutePath(), ioException);
+			}
+			finally {
+				tokenizer = null;
+			}
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private UAITokenizer openTokenizer() throws IOException {
+		if (tokenizer == null) {
+			tokenizer = UAITokenizer.tokenizer(file);
+		}
+		return tokenizer;
+	}
+	
+	private FunctionTable load(int tableIdx, UAITokenizer tokenizer) throws IOException {
+		tokenizer.position(tableOffsets[tableIdx]);
+		return UAIModelReader.createFunctionTable(tableCardinalities.get(tableIdx), tokenizer);
+	}
+}
@@ -37,11 +37,13 @@
  */
 package com.sri.ai.praise.model.v1.imports.uai;
 
-import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.constructGenericTableExpressionUsingEqualities;
+import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.compileUniqueFunctionTablesInParallel;
 import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.convertGenericTableToInstance;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -50,35 +52,37 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import com.google.common.annotations.Beta;
-import com.google.common.util.concurrent.AtomicDouble;
 import com.sri.ai.expresso.api.Expression;
 import com.sri.ai.expresso.helper.Expressions;
-import com.sri.ai.grinder.api.MultiQuantifierEliminator;
 import com.sri.ai.grinder.api.Theory;
 import com.sri.ai.grinder.library.Equality;
-import com.sri.ai.grinder.library.FunctorConstants;
 import com.sri.ai.grinder.library.boole.And;
 import com.sri.ai.grinder.library.boole.Not;
-import com.sri.ai.grinder.library.controlflow.IfThenElse;
-import com.sri.ai.grinder.library.number.Division;
 import com.sri.ai.grinder.theory.compound.CompoundTheory;
 import com.sri.ai.grinder.theory.differencearithmetic.DifferenceArithmeticTheory;
 import com.sri.ai.grinder.theory.equality.EqualityTheory;
 import com.sri.ai.grinder.theory.propositional.PropositionalTheory;
+import com.sri.ai.praise.inference.CancellationToken;
 import com.sri.ai.praise.inference.FactorsAndTypes;
 import com.sri.ai.praise.inference.InferenceForFactorGraphAndEvidence;
+import com.sri.ai.praise.inference.QueryCanceledException;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlan;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlanner;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
 import com.sri.ai.praise.lang.grounded.common.GraphicalNetwork;
+import com.sri.ai.praise.lang.grounded.markov.MarkovNetwork;
+import com.sri.ai.praise.lang.grounded.markov.NumericVariableElimination;
 
 /**
  * 
@@ -90,6 +94,23 @@ public class UAIMARSolver {
 	
 	private static final boolean DO_NOT_SOLVE = Boolean.getBoolean("uai.mar.solver.do.not.solve");
 	
+	/**
+	 * Number of models solved at the same time by {@link #main(String[])} (defaults to the number of available processors).
+	 */
+	public static final int NUMBER_OF_SOLVER_THREADS = Math.max(1, Integer.getInteger("uai.mar.solver.threads", Runtime.getRuntime().availableProcessors()));
+	
+	/**
+	 * Models whose best elimination plan creates a table with more entries than this are reported as not solved without trying
+	 * (by default all models are tried).
+	 */
+	public static final long MAX_PREDICTED_PEAK_TABLE_SIZE = Long.getLong("uai.mar.solver.max.predicted.peak.table.size", Long.MAX_VALUE);
+	
+	/**
+	 * If true, Markov networks are solved with {@link NumericVariableElimination} over their tables instead of
+	 * compiling them to expressions and solving them symbolically (with the same time outs).
+	 */
+	public static final boolean NUMERIC = Boolean.getBoolean("uai.mar.solver.numeric");
+	
 	public static void main(String[] args) throws IOException {
 		
 		if (args.length != 4) {
@@ -106,15 +127,16 @@ public class UAIMARSolver {
 		}
 		int maxSolverTimeInSeconds = Integer.parseInt(args[2]);
 		
-		Theory theory;
+		// each model is solved with a theory of its own, as theories keep state of their own and are not shared between threads
+		Supplier<Theory> makeTheory;
 		if (args[3].equals("equalities")) {
-			theory = 
+			makeTheory = () ->
 					new CompoundTheory(
 							new PropositionalTheory(),
 							new EqualityTheory(true, true));
 		}
 		else if (args[3].equals("difference_arithmetic")) {
-			theory = 
+			makeTheory = () ->
 					new CompoundTheory(
 							new PropositionalTheory(),
 							new DifferenceArithmeticTheory(true, true));
@@ -142,24 +164,74 @@ public class UAIMARSolver {
 		// Sort based on what we consider to be the simplest to hardest
 		// Collections.sort(models, (model1, model2) -> Double.compare(model1.ratioUniqueTablesToTables(), model2.ratioUniqueTablesToTables()));
 		// Collections.sort(models, (model1, model2) -> Integer.compare(model1.largestNumberOfFunctionTableEntries(), model2.largestNumberOfFunctionTableEntries()));
-		Collections.sort(models, (model1, model2) -> Integer.compare(model1.totalNumberEntriesForAllFunctionTables(), model2.totalNumberEntriesForAllFunctionTables()));
+		// Collections.sort(models, (model1, model2) -> Integer.compare(model1.totalNumberEntriesForAllFunctionTables(), model2.totalNumberEntriesForAllFunctionTables()));
+		// by the predicted cost of variable elimination
+		Map<UAIModel, EliminationPlan> modelToPlan = new HashMap<>();
+		for (UAIModel model : models) {
+			modelToPlan.put(model, EliminationPlanner.bestPlan(model, model.getEvidence().keySet()));
+		}
+		Collections.sort(models, (model1, model2) -> Long.compare(modelToPlan.get(model1).getTotalTableSize(), modelToPlan.get(model2).getTotalTableSize()));
 		// Collections.sort(models, (model1, model2) -> Integer.compare(model1.numberTables(), model2.numberTables()));
 		
 		Map<String, Boolean> modelSolvedStatus = new LinkedHashMap<>();
 		Map<String, Long>    modelSolvedTime   = new LinkedHashMap<>();
 		
-		System.out.println("#models read="+models.size());
-		final AtomicInteger cnt = new AtomicInteger(1);
-		models.stream().forEach(model -> {
-			System.out.println("Starting to Solve: "+modelToFile.get(model).getName()+" ("+cnt.getAndAdd(1)+" of "+models.size()+")");
-			long start = System.currentTimeMillis();
-			boolean solved = solve(model, model.getEvidence(), model.getMARSolution(), maxSolverTimeInSeconds, theory);
-			long took = (System.currentTimeMillis() - start);
-			System.out.println("---- Took "+took+"ms. solved="+solved);
-			
-			modelSolvedStatus.put(modelToFile.get(model).getName(), solved);
-			modelSolvedTime.put(modelToFile.get(model).getName(), took);
-		});
+		// the processors are divided between the models being solved at the same time (unless told otherwise)
+		int numberSolverThreads           = Math.max(1, Math.min(NUMBER_OF_SOLVER_THREADS, models.size()));
+		int numberTableCompilationThreads = Math.max(1, Integer.getInteger(UAIUtil.TABLE_COMPILATION_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() / numberSolverThreads));
+		System.out.println("#models read="+models.size()+", solving "+numberSolverThreads+" at a time, each compiling its tables with "+numberTableCompilationThreads+" threads");
+		// The models are started from the simplest to the hardest, and their status is reported as they complete
+		// (each one's output is kept until then, so that the output of models being solved at the same time is not interleaved)
+		ExecutorService                pool      = Executors.newFixedThreadPool(numberSolverThreads);
+		CompletionService<SolvedModel> completed = new ExecutorCompletionService<>(pool);
+		final AtomicInteger            started   = new AtomicInteger(1);
+		for (UAIModel model : models) {
+			completed.submit(() -> {
+				String                name   = modelToFile.get(model).getName();
+				EliminationPlan       plan   = modelToPlan.get(model);
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				PrintStream           out    = new PrintStream(output, true);
+				System.out.println("Starting to Solve: "+name+" ("+started.getAndAdd(1)+" of "+models.size()+"), "+plan);
+				long start = System.currentTimeMillis();
+				boolean solved = false;
+				if (plan.getPeakTableSize() > MAX_PREDICTED_PEAK_TABLE_SIZE) {
+					out.println("Not solving "+name+" as its predicted peak table size exceeds "+MAX_PREDICTED_PEAK_TABLE_SIZE);
+				}
+				else {
+					try (CancellationToken cancellationToken = CancellationToken.withTimeout(maxSolverTimeInSeconds, TimeUnit.SECONDS)) {
+						solved = solve(new SolverTask(model, model.getEvidence(), model.getMARSolution(), cancellationToken, makeTheory.get(), numberTableCompilationThreads, out, out));
+					}
+					finally {
+						// only the preambles of the models are kept, so memory does not grow with the number of models solved
+						model.unloadTables();
+					}
+				}
+				out.flush();
+				return new SolvedModel(name, solved, System.currentTimeMillis() - start, output.toString());
+			});
+		}
+		Map<String, SolvedModel> nameToSolvedModel = new HashMap<>();
+		try {
+			for (int i = 1; i <= models.size(); i++) {
+				SolvedModel solvedModel = completed.take().get();
+				System.out.println("---- "+solvedModel.name+" output:");
+				System.out.print(solvedModel.output);
+				System.out.println("---- "+solvedModel.name+" took "+solvedModel.took+"ms. solved="+solvedModel.solved+" ("+i+" of "+models.size()+" completed)");
+				nameToSolvedModel.put(solvedModel.name, solvedModel);
+			}
+		}
+		catch (InterruptedException | ExecutionException ex) {
+			throw new RuntimeException("Unable to solve all the models", ex);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		// in the order the models were started
+		for (UAIModel model : models) {
+			SolvedModel solvedModel = nameToSolvedModel.get(modelToFile.get(model).getName());
+			modelSolvedStatus.put(solvedModel.name, solvedModel.solved);
+			modelSolvedTime.put(solvedModel.name, solvedModel.took);
+		}
 		
 		System.out.println("MODELS SOLVE STATUS");
 		modelSolvedStatus.entrySet().stream().forEach(e -> System.out.printf("%-25s %-5b %12sms.\n", e.getKey(), e.getValue(), modelSolvedTime.get(e.getKey())));	
@@ -168,149 +240,142 @@ public class UAIMARSolver {
 		System.out.println("#models unsolved="+modelSolvedStatus.values().stream().filter(status -> status == false).count());
 	}
 	
+	/**
+	 * Solves a model on the calling thread, canceling the solver if it takes longer than the given time
+	 * (in which case the solver stops at its next check and the model is considered not solved).
+	 */
 	public static boolean solve(GraphicalNetwork model, Map<Integer, Integer> evidence,  Map<Integer, List<Double>> solution, int maxSolverTimeInSeconds, Theory theory) {
+		try (CancellationToken cancellationToken = CancellationToken.withTimeout(maxSolverTimeInSeconds, TimeUnit.SECONDS)) {
+			return solve(model, evidence, solution, cancellationToken, theory);
+		}
+	}
+	
+	/**
+	 * Solves a model on the calling thread until solved or the given token is canceled.
+	 */
+	public static boolean solve(GraphicalNetwork model, Map<Integer, Integer> evidence,  Map<Integer, List<Double>> solution, CancellationToken cancellationToken, Theory theory) {
+		return solve(new SolverTask(model, evidence, solution, cancellationToken, theory, UAIUtil.TABLE_COMPILATION_THREADS, System.out, System.err));
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static boolean solve(SolverTask solver) {
 		boolean result = false;
 		
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		SolverTask      solver   = new SolverTask(model, evidence, solution, theory);
-		Future<Boolean> future   = executor.submit(solver);  
-		
 		try {
-            System.out.println("Started..");
-            result = future.get(maxSolverTimeInSeconds, TimeUnit.SECONDS);
-            System.out.println("Finished!");
-        }
-		catch (TimeoutException toe) {
-			System.out.println("Timeout occurred, interrupting solver.");
-			solver.interrupt();
-			try {
-				// Wait until the solver shuts down properly from the interrupt
-				System.out.println("Waiting for interrupted result");
-				result = future.get();
-				System.out.println("Finished waiting for interrupted result");
-			}
-			catch (Throwable t) {
-				System.out.println("Finished waiting for interrupted result : "+(t.getMessage() == null ? t.getClass().getName() : t.getMessage()));
-			}
+			result = solver.call();
 		}
 		catch (Throwable t) {
-            System.out.println("Terminated! : "+(t.getMessage() == null ? t.getClass().getName() : t.getMessage()));
-            t.printStackTrace();
-        }
-
-        executor.shutdown();
-        System.out.println("executor is shutdown:"+executor.isShutdown());
-        
+			solver.out.println("Terminated! : "+(t.getMessage() == null ? t.getClass().getName() : t.getMessage()));
+			t.printStackTrace(solver.err);
+		}
+		
 		return result;		
 	}
 	
-	//
-	// PRIVATE
-	//
+	private static class SolvedModel {
+		final String  name;
+		final boolean solved;
+		final long    took;
+		final String  output;
+		
+		SolvedModel(String name, boolean solved, long took, String output) {
+			this.name   = name;
+			this.solved = solved;
+			this.took   = took;
+			this.output = output;
+		}
+	}
+	
 	static class SolverTask implements Callable<Boolean> {
 		private GraphicalNetwork           model;
 		private Map<Integer, Integer>      evidence;
 		private Map<Integer, List<Double>> solution;
-		private Theory           theory;
-		//
-		private InferenceForFactorGraphAndEvidence inferencer;
-		boolean interrupted = false;
-		private MultiQuantifierEliminator genericTableSolver = null;
+		private CancellationToken          cancellationToken;
+		private Theory                     theory;
+		private int                        numberTableCompilationThreads;
+		private PrintStream                out;
+		private PrintStream                err;
 		
-		SolverTask(GraphicalNetwork model, Map<Integer, Integer> evidence,  Map<Integer, List<Double>> solution, Theory theory) {
-			this.model    = model;
-			this.evidence = evidence;
-			this.solution = solution;
-			this.theory = theory;
+		SolverTask(GraphicalNetwork model, Map<Integer, Integer> evidence,  Map<Integer, List<Double>> solution, CancellationToken cancellationToken, Theory theory, int numberTableCompilationThreads, PrintStream out, PrintStream err) {
+			this.model                         = model;
+			this.evidence                      = evidence;
+			this.solution                      = solution;
+			this.cancellationToken             = cancellationToken;
+			this.theory                        = theory;
+			this.numberTableCompilationThreads = numberTableCompilationThreads;
+			this.out                           = out;
+			this.err                           = err;
 		}
 		
-		public MultiQuantifierEliminator checkInterruption(MultiQuantifierEliminator solver) {
-			this.genericTableSolver = solver;
-			if (interrupted) {
-				interrupt();
-			}
-			return solver;
+		public void interrupt() {
+			cancellationToken.cancel();
 		}
 		
-		public void interrupt() {
-			interrupted = true;
+		@Override
+		public Boolean call() throws Exception {
+			out.println("#variables="+model.numberVariables());
+			out.println("#tables="+model.numberTables());
+			out.println("Largest variable cardinality="+model.largestCardinality());
+			out.println("Largest # entries="+model.largestNumberOfFunctionTableEntries());
+			out.println("Total #entries across all function tables="+model.totalNumberEntriesForAllFunctionTables());
 			
-			if (genericTableSolver != null) {
-				try {
-					genericTableSolver.interrupt();
-					System.out.println("Generic Table Compression Solver interrupted (c).");
-				}
-				catch (Throwable t) {
-					System.out.println("Generic Table Compression Solver interrupted (e) : "+(t.getMessage() == null ? t.getClass().getName() : t.getMessage()));
-				}
+			// If Solving not to actually be performed (i.e. just getting a summary of the models) then 
+			// indicate failed to solve (before any table is loaded, as the above only needs the models' preambles)
+			if (DO_NOT_SOLVE) {
+				return false;
 			}
 			
-			if (inferencer != null) {
+			if (NUMERIC && model instanceof MarkovNetwork) {
+				if (model instanceof UAIModel) {
+					// in a single pass, as the elimination reads the tables one at a time
+					((UAIModel) model).loadAllTables();
+				}
+				Map<Integer, List<Double>> computed;
 				try {
-					inferencer.interrupt();
-					System.out.println("Solver interrupted (c).");
+					computed = new NumericVariableElimination((MarkovNetwork) model, evidence, cancellationToken).marginals();
 				}
-				catch (Throwable t) {
-					System.out.println("Solver interrupted (e) : "+(t.getMessage() == null ? t.getClass().getName() : t.getMessage()));					
+				catch (QueryCanceledException queryCanceledException) {
+					out.println("Solver Interrupted (n).");
+					return false;
 				}
-			}	
-		}
-		
-		@Override
-		public Boolean call() throws Exception {
-			System.out.println("#variables="+model.numberVariables());
-			System.out.println("#tables="+model.numberTables());
-			System.out.println("#unique function tables="+model.numberUniqueFunctionTables());
-			System.out.println("Largest variable cardinality="+model.largestCardinality());
-			System.out.println("Largest # entries="+model.largestNumberOfFunctionTableEntries());
-			System.out.println("Total #entries across all function tables="+model.totalNumberEntriesForAllFunctionTables());
+				out.println("Query marginal probabilities (numeric variable elimination) are: "+computed);
+				return matchesSolution(computed);
+			}
 
-			double totalNumberUniqueEntries        = 0;
-			double totalCompressedEntries          = 0;
-			double bestIndividualCompressionRatio  = 100; // i.e. none at all
-			double worstIndividualCompressionRatio = 0;
+			TableCompressionStatistics stats = new TableCompressionStatistics();
 			List<Expression> tables = new ArrayList<>();
-			for (int i = 0; i < model.numberUniqueFunctionTables(); i++) {
-				FunctionTable table = model.getUniqueFunctionTable(i);
-				
-				totalNumberUniqueEntries += table.numberEntries();
-				
-				if (interrupted) {
-					System.out.println("Solver Interrupted (t).");
+			// Unique tables are compiled in parallel and handed back here in order, so the factors are always in the same order
+			boolean allCompiled = compileUniqueFunctionTablesInParallel(model, numberTableCompilationThreads,
+					table -> cancellationToken.isCanceled() ? null : GenericTableExpressionCache.compileUsingDefaultCache(UAIUtil.TABLE_COMPILATION_USING_EQUALITIES, table, UAIUtil::constructGenericTableExpressionUsingEqualities), 
+					(i, genericTableExpression) -> {
+				if (cancellationToken.isCanceled()) {
 					return false;
 				}
 				
-				Expression genericTableExpression;
-				genericTableExpression = constructGenericTableExpressionUsingEqualities(table, this::checkInterruption);
-				
-				double compressedEntries = calculateCompressedEntries(genericTableExpression);
-				
-				double compressedRatio = compressedEntries / table.numberEntries();
-				if (compressedRatio < bestIndividualCompressionRatio) {
-					bestIndividualCompressionRatio = compressedRatio;
-				}
-				if (compressedRatio > worstIndividualCompressionRatio) {
-					worstIndividualCompressionRatio = compressedRatio;
-				}
+				FunctionTable table = model.getUniqueFunctionTable(i);
 				
-				totalCompressedEntries += compressedEntries;
+				stats.add(table, genericTableExpression);
 				
 				for (int tableIdx : model.getTableIndexes(i)) {
 					Expression instanceTableExpression = convertGenericTableToInstance(table, genericTableExpression, model.getVariableIndexesForTable(tableIdx));
 					tables.add(instanceTableExpression);
 				}
-			}
+				return true;
+			});
 			
-			System.out.println("Table compression ratio            = " + (totalCompressedEntries/totalNumberUniqueEntries));
-			System.out.println("Best individual compression ratio  = " + bestIndividualCompressionRatio);
-			System.out.println("Worst individual compression ratio = " + worstIndividualCompressionRatio);
-			
-			// If Solving not to actually be performed (i.e. just getting a summary of the models) then 
-			// indicate failed to solve
-			if (DO_NOT_SOLVE) {
+			if (!allCompiled) {
+				out.println("Solver Interrupted (t).");
 				return false;
 			}
 			
+			// only known now that all the tables have been loaded
+			out.println("#unique function tables="+model.numberUniqueFunctionTables());
+			out.println("Table compression ratio            = " + stats.getCompressionRatio());
+			out.println("Best individual compression ratio  = " + stats.getBestIndividualCompressionRatio());
+			out.println("Worst individual compression ratio = " + stats.getWorstIndividualCompressionRatio());
+			
 			FactorsAndTypes factorsAndTypes = new UAIFactorsAndTypes(tables, model);
 
 			Expression evidenceExpr = null; 
@@ -334,65 +399,60 @@ public class UAIMARSolver {
 				evidenceExpr = And.make(conjuncts);
 			}
 			
-			// System.out.println("mapFromCategoricalTypeNameToSizeString="+mapFromCategoricalTypeNameToSizeString);
-			// System.out.println("mapFromVariableNameToTypeName="+mapFromVariableNameToTypeName);
-			// System.out.println("Markov Network=\n"+markovNetwork);
+			// out.println("mapFromCategoricalTypeNameToSizeString="+mapFromCategoricalTypeNameToSizeString);
+			// out.println("mapFromVariableNameToTypeName="+mapFromVariableNameToTypeName);
+			// out.println("Markov Network=\n"+markovNetwork);
 			
-			if (interrupted) {
-				System.out.println("Solver Interrupted (b).");
+			if (cancellationToken.isCanceled()) {
+				out.println("Solver Interrupted (b).");
 				return false;
 			}
 			
-			inferencer = new InferenceForFactorGraphAndEvidence(factorsAndTypes, false, evidenceExpr, true, theory);
+			InferenceForFactorGraphAndEvidence inferencer = new InferenceForFactorGraphAndEvidence(factorsAndTypes, false, evidenceExpr, true, theory);
 			
 			Map<Integer, List<Double>> computed = new LinkedHashMap<>();
 			for (int i = 0; i < model.numberVariables(); i++) {
 				int varCardinality = model.cardinality(i);
-				List<Integer> remainingQueryValueIdxs = IntStream.range(0, varCardinality).boxed().collect(Collectors.toList());
-				double[] values = new double[varCardinality];
-				while (remainingQueryValueIdxs.size() > 0) {
-					int queryValueIdx = remainingQueryValueIdxs.get(0);
-					Expression varExpr   = Expressions.makeSymbol(UAIUtil.instanceVariableName(i));
-					Expression valueExpr = Expressions.makeSymbol(UAIUtil.instanceConstantValueForVariable(queryValueIdx, i, varCardinality));
-					Expression queryExpression = Equality.make(varExpr, valueExpr);	
-					Expression marginal;
-					if (interrupted) {
-						System.out.println("Solver Interrupted (l).");
-						return false;
-					}
-					marginal = inferencer.solve(queryExpression);
-					
-					if (evidenceExpr == null) {
-						System.out.println("Query marginal probability P(" + queryExpression + ") is: " + marginal);
-					}
-					else {
-						System.out.println("Query posterior probability P(" + queryExpression + " | " + evidenceExpr + ") is: " + marginal);
-					}
-					
-					Map<Expression, Integer> possibleValueExprToIndex = new LinkedHashMap<>();
-					possibleValueExprToIndex.put(valueExpr, queryValueIdx);
-					if (IfThenElse.isIfThenElse(marginal)) {
-						for (Integer c : remainingQueryValueIdxs) {
-							possibleValueExprToIndex.put(Expressions.makeSymbol(UAIUtil.instanceConstantValueForVariable(c, i, varCardinality)), c);
-						}
-					}
-					
-					assignComputedValues(varExpr, marginal, possibleValueExprToIndex, remainingQueryValueIdxs, values);
+				Expression varExpr = Expressions.makeSymbol(UAIUtil.instanceVariableName(i));
+				List<Expression> valueExprs = new ArrayList<>(varCardinality);
+				for (int valueIdx = 0; valueIdx < varCardinality; valueIdx++) {
+					valueExprs.add(Expressions.makeSymbol(UAIUtil.instanceConstantValueForVariable(valueIdx, i, varCardinality)));
+				}
+				// a single elimination per variable gives us its whole distribution
+				double[] values;
+				try {
+					values = inferencer.solveMarginalDistribution(varExpr, valueExprs, cancellationToken);
+				}
+				catch (QueryCanceledException queryCanceledException) {
+					out.println("Solver Interrupted (l), after computing "+computed.size()+" of "+model.numberVariables()+" marginals: "+computed);
+					return false;
+				}
+				
+				if (evidenceExpr == null) {
+					out.println("Query marginal probability P(" + varExpr + ") is: " + Arrays.toString(values));
 				}
+				else {
+					out.println("Query posterior probability P(" + varExpr + " | " + evidenceExpr + ") is: " + Arrays.toString(values));
+				}
+				
 				computed.put(i, Arrays.stream(values).boxed().collect(Collectors.toList()));
 			}
 			
+			return matchesSolution(computed);
+		}
+		
+		private boolean matchesSolution(Map<Integer, List<Double>> computed) {
 			List<Integer> diffs = UAICompare.compareMAR(solution, computed);
-			System.out.println("----");
+			out.println("----");
 			boolean result = true;
 			if (diffs.size() == 0) {
-				System.out.println("Computed values match solution: "+computed);
+				out.println("Computed values match solution: "+computed);
 			}
 			else {
 				result = false; // Failed to solve correctly
-				System.err.println("These variables "+diffs+" did not match the solution.");
-				System.err.println("solution="+solution);
-				System.err.println("computed="+computed);
+				err.println("These variables "+diffs+" did not match the solution.");
+				err.println("solution="+solution);
+				err.println("computed="+computed);
 			}
 			
 			return result;
@@ -400,7 +460,8 @@ public class UAIMARSolver {
 	}
 	
 	private static UAIModel read(File uaiFile, File solutionDir) throws IOException {
-		UAIModel model = UAIModelReader.read(uaiFile);
+		// Tables are only loaded when the model is solved, so that all the models can be sorted and summarized up front
+		UAIModel model = UAIModelReader.readLazily(uaiFile);
 		
 		UAIEvidenceReader.read(uaiFile, model);
 		
@@ -417,80 +478,4 @@ public class UAIMARSolver {
 		
 		return model;
 	}
-	
-	private static double calculateCompressedEntries(Expression compressedTableExpression) {
-		AtomicDouble count = new AtomicDouble(0);
-		
-		visitCompressedTableEntries(compressedTableExpression, count);
-		
-		return count.doubleValue();
-	}
-	
-	private static void visitCompressedTableEntries(Expression compressedTableExpression, AtomicDouble count) {
-		if (IfThenElse.isIfThenElse(compressedTableExpression)) {
-			visitCompressedTableEntries(IfThenElse.thenBranch(compressedTableExpression), count);
-			visitCompressedTableEntries(IfThenElse.elseBranch(compressedTableExpression), count);
-		}
-		else {
-			// We are at a leaf node, therefore increment the count
-			count.addAndGet(1);
-		}
-	}
-	
-	private static void assignComputedValues(Expression varExpr, Expression marginal, Map<Expression, Integer> possibleValueExprToIndex, List<Integer> remainingQueryValueIdxs, double[] values) {
-		boolean leafValue = true;
-		if (IfThenElse.isIfThenElse(marginal)) {
-			leafValue = false;
-			Expression condExpr = IfThenElse.condition(marginal);
-			int valueIdx = identifyValueIdx(varExpr, condExpr, possibleValueExprToIndex);
-			Expression thenExpr = IfThenElse.thenBranch(marginal);
-			for (Map.Entry<Expression, Integer> entry : possibleValueExprToIndex.entrySet()) {
-				if (entry.getValue() == valueIdx) {
-					possibleValueExprToIndex.remove(entry.getKey());
-					break;
-				}
-			}
-			remainingQueryValueIdxs.remove(remainingQueryValueIdxs.indexOf(valueIdx));
-			values[valueIdx] = thenExpr.rationalValue().doubleValue();
-			Expression elseExpr = IfThenElse.elseBranch(marginal);
-			assignComputedValues(varExpr, elseExpr, possibleValueExprToIndex, remainingQueryValueIdxs, values);
-		}
-		else if (Expressions.hasFunctor(marginal, FunctorConstants.DIVISION)) {
-			marginal = Division.simplify(marginal);
-		}
-		
-		
-		if (leafValue) {
-			if (possibleValueExprToIndex.size() != 1) {
-				throw new IllegalStateException("Unable to identify what value index to assing the marginal : "+marginal+" to "+possibleValueExprToIndex);
-			}
-			int valueIdx = possibleValueExprToIndex.values().iterator().next();
-			possibleValueExprToIndex.clear();
-			remainingQueryValueIdxs.remove(remainingQueryValueIdxs.indexOf(valueIdx));
-			
-			values[valueIdx] = marginal.rationalValue().doubleValue();
-		}
-	}
-	
-	private static int identifyValueIdx(Expression varExpr, Expression condExpr,  Map<Expression, Integer> possibleValueExprToIndex) {
-		int result = -1;
-		
-		if (!Equality.isEquality(condExpr)) {
-			throw new IllegalStateException("Currently unable to handle non equalities :"+condExpr);
-		}
-	
-		for (int i = 0; i < 2; i++) {
-			Integer v = possibleValueExprToIndex.get(condExpr.get(i));
-			if (v != null) {
-				result = v;
-				break;
-			}
-		}
-		
-		if (result == -1) {
-			throw new IllegalStateException("Unable to identify value idex for "+varExpr+" "+condExpr+" "+possibleValueExprToIndex);
-		}
-				
-		return result;
-	}
 }
@@ -40,6 +40,7 @@ package com.sri.ai.praise.model.v1.imports.uai;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,6 +52,11 @@ import com.sri.ai.praise.lang.grounded.markov.MarkovNetwork;
 /**
  * In memory representation of an Uncertainty in Artificial Intelligence (UAI) 
  * <a href="http://www.hlt.utdallas.edu/~vgogate/uai14-competition/modelformat.html">Inference Competition Model</a>.
+ * <p>
+ * A model read with {@link UAIModelReader#readLazily(java.io.File)} only holds its preamble (variables and table scopes) up front;
+ * function tables are loaded the first time they are requested, and identical tables are only determined
+ * the first time unique table information is requested. Access to the tables and unique table information is synchronized,
+ * so a model can be read from several threads (e.g. when compiling its tables in parallel).
  * 
  * @author oreilly
  */
@@ -60,11 +66,14 @@ public class UAIModel implements MarkovNetwork {
 	private Map<Integer, Integer> varIdxToCardinality                        = new LinkedHashMap<>();
 	private List<List<Integer>> tableInstanceVariableIndexes                 = new ArrayList<>();
 	private Map<Integer, FunctionTable> tableInstanceIdxToTable              = new LinkedHashMap<>();
+	private UAIFunctionTableLoader tableLoader                               = null; // only used by lazily read models
 	//
 	private Map<Integer, Integer> evidence                                   = new LinkedHashMap<>();
 	//
-	private Map<Integer, FunctionTable> uniqueTableIdxToUniqueTable          = new LinkedHashMap<>();
-	private Map<FunctionTable, List<Integer>> uniqueTableToTableInstanceIdxs = new LinkedHashMap<>();
+	private List<FunctionTable> uniqueTableIdxToUniqueTable                  = new ArrayList<>();
+	private List<List<Integer>> uniqueTableIdxToTableInstanceIdxs            = new ArrayList<>();
+	private Map<Long, List<Integer>> contentHashToUniqueTableIdxs            = new HashMap<>(); // dedup index, usually one unique table per hash
+	private boolean uniqueMappingsComputed                                   = false;
 	//
 	private Map<Integer, List<Double>> marSolution                           = new LinkedHashMap<>();
 	
@@ -80,6 +89,54 @@ public class UAIModel implements MarkovNetwork {
 		computeUniqueMappings();	
 	}
 	
+	/**
+	 * Constructor for models whose unique tables are already known (e.g. read from a binary model file),
+	 * so that tables are not compared against each other again.
+	 * @param uniqueTables
+	 *        distinct function tables.
+	 * @param tableUniqueTableIdxs
+	 *        the index in uniqueTables of the function table of each table instance.
+	 */
+	UAIModel(UAIModelType type, 
+			Map<Integer, Integer> varIdxToCardinality,
+			List<List<Integer>> tableInstanceVariableIndexes,
+			List<FunctionTable> uniqueTables,
+			int[] tableUniqueTableIdxs) {
+		this.type = type;
+		this.varIdxToCardinality.putAll(varIdxToCardinality);
+		this.tableInstanceVariableIndexes.addAll(tableInstanceVariableIndexes);
+		
+		uniqueMappingsComputed = true;
+		// unique tables are numbered in order of first use, as when computed from the table instances
+		int[] givenToUniqueTableIdx = new int[uniqueTables.size()];
+		Arrays.fill(givenToUniqueTableIdx, -1);
+		for (int tableIdx = 0; tableIdx < tableUniqueTableIdxs.length; tableIdx++) {
+			int           givenIdx = tableUniqueTableIdxs[tableIdx];
+			FunctionTable table    = uniqueTables.get(givenIdx);
+			if (givenToUniqueTableIdx[givenIdx] == -1) {
+				givenToUniqueTableIdx[givenIdx] = uniqueTableIdxToUniqueTable.size();
+				uniqueTableIdxToUniqueTable.add(table);
+				uniqueTableIdxToTableInstanceIdxs.add(new ArrayList<>());
+				contentHashToUniqueTableIdxs.computeIfAbsent(table.contentHash(), hash -> new ArrayList<>(1)).add(givenToUniqueTableIdx[givenIdx]);
+			}
+			uniqueTableIdxToTableInstanceIdxs.get(givenToUniqueTableIdx[givenIdx]).add(tableIdx);
+			tableInstanceIdxToTable.put(tableIdx, table);
+		}
+	}
+	
+	/**
+	 * Constructor for models whose function tables are loaded on demand.
+	 */
+	UAIModel(UAIModelType type, 
+			Map<Integer, Integer> varIdxToCardinality,
+			List<List<Integer>> tableInstanceVariableIndexes,
+			UAIFunctionTableLoader tableLoader) {
+		this.type = type;
+		this.varIdxToCardinality.putAll(varIdxToCardinality);
+		this.tableInstanceVariableIndexes.addAll(tableInstanceVariableIndexes);
+		this.tableLoader = tableLoader;
+	}
+	
 	public UAIModelType getType() {
 		return type;
 	}
@@ -97,12 +154,14 @@ public class UAIModel implements MarkovNetwork {
 	}
 	
 	@Override
-	public int numberUniqueFunctionTables() {
+	public synchronized int numberUniqueFunctionTables() {
+		computeUniqueMappingsIfNeeded();
 		return uniqueTableIdxToUniqueTable.size();
 	}
 	
 	@Override
-	public FunctionTable getUniqueFunctionTable(int uniqueFunctionTableIdx) {
+	public synchronized FunctionTable getUniqueFunctionTable(int uniqueFunctionTableIdx) {
+		computeUniqueMappingsIfNeeded();
 		return uniqueTableIdxToUniqueTable.get(uniqueFunctionTableIdx);
 	}
 	
@@ -112,8 +171,13 @@ public class UAIModel implements MarkovNetwork {
 	}
 	
 	@Override
-	public FunctionTable getTable(int tableIdx) {
-		return tableInstanceIdxToTable.get(tableIdx);
+	public synchronized FunctionTable getTable(int tableIdx) {
+		FunctionTable result = tableInstanceIdxToTable.get(tableIdx);
+		if (result == null && tableLoader != null && tableIdx >= 0 && tableIdx < tableLoader.numberTables()) {
+			result = tableLoader.load(tableIdx);
+			tableInstanceIdxToTable.put(tableIdx, result);
+		}
+		return result;
 	}
 	
 	@Override
@@ -122,8 +186,32 @@ public class UAIModel implements MarkovNetwork {
 	}
 	
 	@Override
-	public List<Integer> getTableIndexes(int uniqueFunctionTableIdx) {
-		return uniqueTableToTableInstanceIdxs.get(getUniqueFunctionTable(uniqueFunctionTableIdx));
+	public synchronized List<Integer> getTableIndexes(int uniqueFunctionTableIdx) {
+		computeUniqueMappingsIfNeeded();
+		return uniqueTableIdxToTableInstanceIdxs.get(uniqueFunctionTableIdx);
+	}
+	
+	@Override
+	public int largestNumberOfFunctionTableEntries() {
+		// computed from the table scopes, so tables need not be loaded
+		int result = 0;
+		for (int i = 0; i < numberTables(); i++) {
+			int numEntries = numberEntriesForTable(i);
+			if (numEntries > result) {
+				result = numEntries;
+			}
+		}
+		return result;
+	}
+	
+	@Override
+	public int totalNumberEntriesForAllFunctionTables() {
+		// computed from the table scopes, so tables need not be loaded
+		int result = 0;
+		for (int i = 0; i < numberTables(); i++) {
+			result += numberEntriesForTable(i);
+		}
+		return result;
 	}
 	// END-GraphicalNetwork
 	//
@@ -147,7 +235,7 @@ public class UAIModel implements MarkovNetwork {
 		evidence.put(varIdx, valueIdx);
 	}
 	
-	public void mergeEvidenceIntoModel() {
+	public synchronized void mergeEvidenceIntoModel() {
 		if (evidence.size() > 0) {
 			// For each evidence assignment create function table with an entry = 1
 			// for the assignment value and 0 for all other values.
@@ -169,11 +257,30 @@ public class UAIModel implements MarkovNetwork {
 				//
 				// Merge in with the other factor information
 				tableInstanceVariableIndexes.add(Arrays.asList(evidenceVarIndex));
-				tableInstanceIdxToTable.put(tableInstanceVariableIndexes.size()-1, evidenceFactor);
+				int evidenceTableIdx = tableInstanceVariableIndexes.size()-1;
+				tableInstanceIdxToTable.put(evidenceTableIdx, evidenceFactor);
+				
+				// Keep the unique mapping information up to date (if not computed yet, it will include this table when it is).
+				if (uniqueMappingsComputed) {
+					addToUniqueMappings(evidenceTableIdx, evidenceFactor);
+				}
 			}
-			
-			// Ensure the unique mapping information is re-created.
-			computeUniqueMappings();
+		}
+	}
+	
+	/**
+	 * For lazily read models, drops the tables loaded from the model file (which are loaded again when next needed)
+	 * and the unique table mappings, so that a model that has been solved only takes the memory of its preamble.
+	 * Tables added by {@link #mergeEvidenceIntoModel()} are kept.
+	 */
+	synchronized void unloadTables() {
+		if (tableLoader != null) {
+			tableInstanceIdxToTable.keySet().removeIf(tableIdx -> tableIdx < tableLoader.numberTables());
+			uniqueTableIdxToUniqueTable.clear();
+			uniqueTableIdxToTableInstanceIdxs.clear();
+			contentHashToUniqueTableIdxs.clear();
+			uniqueMappingsComputed = false;
+			tableLoader.close();
 		}
 	}
 	
@@ -197,21 +304,86 @@ public class UAIModel implements MarkovNetwork {
 	}
 	
 	@Override
-	public String toString() {
-		return "UAI model #vars="+numberVariables()+", #tables="+numberTables()+", #unique function tables="+numberUniqueFunctionTables()+", ratio="+ratioUniqueTablesToTables();
+	public synchronized String toString() {
+		String result = "UAI model #vars="+numberVariables()+", #tables="+numberTables();
+		// the unique tables of lazily read models are only known once all their tables are loaded, which printing should not trigger
+		if (uniqueMappingsComputed) {
+			result += ", #unique function tables="+numberUniqueFunctionTables()+", ratio="+ratioUniqueTablesToTables();
+		}
+		return result;
+	}
+	
+	private int numberEntriesForTable(int tableIdx) {
+		int result = 1;
+		for (Integer varIdx : tableInstanceVariableIndexes.get(tableIdx)) {
+			result *= varIdxToCardinality.get(varIdx);
+		}
+		return result;
+	}
+	
+	private void computeUniqueMappingsIfNeeded() {
+		if (!uniqueMappingsComputed) {
+			loadAllTables();
+			computeUniqueMappings();
+		}
+	}
+	
+	/**
+	 * Loads all the tables of a lazily read model not loaded yet, in a single pass over the model file
+	 * (which is much faster than loading them one at a time with {@link #getTable(int)}).
+	 */
+	synchronized void loadAllTables() {
+		if (tableLoader != null) {
+			List<Integer> notLoaded = new ArrayList<>();
+			for (int i = 0; i < tableLoader.numberTables(); i++) {
+				if (!tableInstanceIdxToTable.containsKey(i)) {
+					notLoaded.add(i);
+				}
+			}
+			tableLoader.load(notLoaded, tableInstanceIdxToTable::put);
+			// no table is left to be loaded from the file
+			tableLoader.close();
+			// keep the table instance order
+			Map<Integer, FunctionTable> ordered = new LinkedHashMap<>();
+			for (int i = 0; i < numberTables(); i++) {
+				ordered.put(i, tableInstanceIdxToTable.get(i));
+			}
+			tableInstanceIdxToTable = ordered;
+		}
 	}
 	
 	private void computeUniqueMappings() {
+		uniqueMappingsComputed = true;
 		uniqueTableIdxToUniqueTable.clear();
-		uniqueTableToTableInstanceIdxs.clear();
+		uniqueTableIdxToTableInstanceIdxs.clear();
+		contentHashToUniqueTableIdxs.clear();
 		for (Map.Entry<Integer, FunctionTable> entry : this.tableInstanceIdxToTable.entrySet()) {
-			List<Integer> tableInstanceIndexesForUniqueTable = this.uniqueTableToTableInstanceIdxs.get(entry.getValue());
-			if (tableInstanceIndexesForUniqueTable == null) {
-				tableInstanceIndexesForUniqueTable = new ArrayList<>();
-				this.uniqueTableToTableInstanceIdxs.put(entry.getValue(), tableInstanceIndexesForUniqueTable);
-				this.uniqueTableIdxToUniqueTable.put(this.uniqueTableIdxToUniqueTable.size(), entry.getValue());
+			addToUniqueMappings(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	private void addToUniqueMappings(Integer tableIdx, FunctionTable table) {
+		// Tables are indexed by their 64-bit content hash, so entries are only compared for tables with the same hash
+		List<Integer> uniqueTableIdxsWithSameHash = contentHashToUniqueTableIdxs.get(table.contentHash());
+		Integer uniqueTableIdx = null;
+		if (uniqueTableIdxsWithSameHash == null) {
+			uniqueTableIdxsWithSameHash = new ArrayList<>(1);
+			contentHashToUniqueTableIdxs.put(table.contentHash(), uniqueTableIdxsWithSameHash);
+		}
+		else {
+			for (Integer candidateIdx : uniqueTableIdxsWithSameHash) {
+				if (uniqueTableIdxToUniqueTable.get(candidateIdx).equals(table)) {
+					uniqueTableIdx = candidateIdx;
+					break;
+				}
 			}
-			tableInstanceIndexesForUniqueTable.add(entry.getKey());
 		}
+		if (uniqueTableIdx == null) {
+			uniqueTableIdx = uniqueTableIdxToUniqueTable.size();
+			uniqueTableIdxToUniqueTable.add(table);
+			uniqueTableIdxToTableInstanceIdxs.add(new ArrayList<>());
+			uniqueTableIdxsWithSameHash.add(uniqueTableIdx);
+		}
+		uniqueTableIdxToTableInstanceIdxs.get(uniqueTableIdx).add(tableIdx);
 	}
 }
\ No newline at end of file
@@ -37,9 +37,7 @@
  */
 package com.sri.ai.praise.model.v1.imports.uai;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
@@ -50,12 +48,10 @@ import java.util.Map;
 import com.google.common.annotations.Beta;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
 
-import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.readLine;
-import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.split;
-
 /**
  * Utility file for reading in Uncertainty in Artificial Intelligence (UAI) 
  * <a href="http://www.hlt.utdallas.edu/~vgogate/uai14-competition/modelformat.html">Inference Competition Model Format files</a>.
+ * Files are read through a memory-mapped {@link UAITokenizer}, and table entries are parsed straight into primitive arrays.
  * 
  * @author oreilly
  */
@@ -63,32 +59,63 @@ import static com.sri.ai.praise.model.v1.imports.uai.UAIUtil.split;
 public class UAIModelReader {
 	
 	public static UAIModel read(File modelFile) throws IOException {
-		return read(new FileReader(modelFile));
+		try (UAITokenizer tokenizer = UAITokenizer.tokenizer(modelFile)) {
+			return read(tokenizer);
+		}
 	}
 	
 	public static UAIModel read(Reader modelReader) throws IOException {
-		UAIModel result = null;
-		
-		try (BufferedReader br = new BufferedReader(modelReader)) {
-			Preamble     preamble                       = readPreamble(br);		
-			Map<Integer, FunctionTable> tableIdxToTable = readFunctionTables(preamble, br);
-		
-			result = new UAIModel(preamble.type, preamble.variableToCardinality, preamble.tableVariableIdxs, tableIdxToTable);
+		try (UAITokenizer tokenizer = UAITokenizer.tokenizer(modelReader)) {
+			return read(tokenizer);
+		}
+	}
+	
+	/**
+	 * Reads only the preamble (variables and table scopes) of a model file, recording where each table body starts
+	 * so that tables are loaded from the file only when first needed by the returned model.
+	 * @param modelFile a UAI model file
+	 * @return a model whose function tables are loaded on demand.
+	 * @throws IOException
+	 */
+	public static UAIModel readLazily(File modelFile) throws IOException {
+		try (UAITokenizer tokenizer = UAITokenizer.tokenizer(modelFile)) {
+			Preamble preamble = readPreamble(tokenizer);
+			
+			long[]              tableOffsets       = new long[preamble.numTables()];
+			List<List<Integer>> tableCardinalities = new ArrayList<>(preamble.numTables());
+			for (int t = 0; t < preamble.numTables(); t++) {
+				tableCardinalities.add(preamble.cardinalitiesForTable(t));
+				tableOffsets[t] = tokenizer.position();
+				int numberEntries = tokenizer.nextInt();
+				tokenizer.skipTokens(numberEntries);
+			}
+			
+			UAIFunctionTableLoader tableLoader = new UAIFunctionTableLoader(modelFile, tableOffsets, tableCardinalities);
+			UAIModel result = new UAIModel(preamble.type, preamble.variableToCardinality, preamble.tableVariableIdxs, tableLoader);
+			
+			return result;
 		}
-		
-		return result;
 	}
 	
 	//
 	// PRIVATE
 	//
 	
-	private static Preamble readPreamble(BufferedReader br) throws IOException {
+	private static UAIModel read(UAITokenizer tokenizer) throws IOException {
+		Preamble                    preamble        = readPreamble(tokenizer);		
+		Map<Integer, FunctionTable> tableIdxToTable = readFunctionTables(preamble, tokenizer);
+	
+		UAIModel result = new UAIModel(preamble.type, preamble.variableToCardinality, preamble.tableVariableIdxs, tableIdxToTable);
+		
+		return result;
+	}
+	
+	static Preamble readPreamble(UAITokenizer tokenizer) throws IOException {
 		Preamble result = new Preamble();
 		
 		//
 		// The preamble starts with one line denoting the type of network
-		String typeOfNetwork = readLine(br);
+		String typeOfNetwork = tokenizer.nextWord();
 		if (!UAIModelType.MARKOV.name().equals(typeOfNetwork)) {
 			// NOTE: 2014 competitions files only contain markov networks.
 			throw new IllegalArgumentException("Type of network ["+typeOfNetwork+"] is not supported");
@@ -97,20 +124,18 @@ public class UAIModelReader {
 		
 		//
 		// The second line contains the number of variables 
-		// (Note: can derive from cardinalities, next line, so will just skip this line as the information is redundant).
-		readLine(br); 
+		int numberVariables = tokenizer.nextInt(); 
 		
 		//
 		// The next line specifies the cardinalities of each variable, one at a time, 
 		// separated by a whitespace (note that this implies an order on the variables which will be used throughout the file)
-		String[] cardinalities = split(readLine(br)); 
-		for (int i = 0; i < cardinalities.length; i++) {
-			result.variableToCardinality.put(i, Integer.parseInt(cardinalities[i]));
+		for (int i = 0; i < numberVariables; i++) {
+			result.variableToCardinality.put(i, tokenizer.nextInt());
 		}
 		
 		//
 		// The fourth line contains only one integer, denoting the number of cliques in the problem.
-		int numberTables = Integer.parseInt(readLine(br));
+		int numberTables = tokenizer.nextInt();
 		
 		//
 		// Then, one clique per line, the scope of each clique is given as follows: 
@@ -118,15 +143,14 @@ public class UAIModelReader {
 		// followed by the actual indexes of the variables. The order of this list is not restricted. 
 		// Note that the ordering of variables within a factor will follow the order provided here.
 		for (int i = 0; i < numberTables; i++) {
-			String   tableData = readLine(br);
-			String[] tableInfo = split(tableData);
-			// Ensure the table is specified correctly
-			if (Integer.parseInt(tableInfo[0]) != (tableInfo.length-1)) {
-				throw new IllegalArgumentException("Badly defined table: "+tableData);
-			}
-			List<Integer> tableVarIdxs = new ArrayList<>();
-			for (int t = 1; t < tableInfo.length; t++) {
-				tableVarIdxs.add(Integer.parseInt(tableInfo[t]));
+			int numberTableVariables = tokenizer.nextInt();
+			List<Integer> tableVarIdxs = new ArrayList<>(numberTableVariables);
+			for (int t = 0; t < numberTableVariables; t++) {
+				int varIdx = tokenizer.nextInt();
+				if (varIdx < 0 || varIdx >= numberVariables) {
+					throw new IllegalArgumentException("Badly defined table "+i+", variable index "+varIdx+" is not in [0, "+numberVariables+")");
+				}
+				tableVarIdxs.add(varIdx);
 			}
 			result.tableVariableIdxs.add(tableVarIdxs);
 		}
@@ -134,43 +158,31 @@ public class UAIModelReader {
 		return result;
 	}
 	
-	private static Map<Integer, FunctionTable> readFunctionTables(Preamble preamble, BufferedReader br) throws IOException {
+	private static Map<Integer, FunctionTable> readFunctionTables(Preamble preamble, UAITokenizer tokenizer) throws IOException {
 		Map<Integer, FunctionTable> tableIdxToTable = new LinkedHashMap<>();
 		
 		// In this section each factor is specified by giving its full table (i.e, specifying value for each assignment). 
 		// The order of the factor is identical to the one in which they were introduced in the preamble, 
 		// the first variable have the role of the 'most significant’ digit. 
 		for (int t = 0; t < preamble.numTables(); t++) {		
-			FunctionTable functionTable = createFunctionTable(preamble.cardinalitiesForTable(t), br);
+			FunctionTable functionTable = createFunctionTable(preamble.cardinalitiesForTable(t), tokenizer);
 			tableIdxToTable.put(t, functionTable);
 		}
 		
 		return tableIdxToTable;
 	}
 	
-	private static FunctionTable createFunctionTable(List<Integer> variableCardinalities, BufferedReader br) throws IOException {
+	static FunctionTable createFunctionTable(List<Integer> variableCardinalities, UAITokenizer tokenizer) throws IOException {
 		// For each factor table, first the number of entries is given (this should be equal to the product 
 		// of the domain sizes of the variables in the scope). Then, one by one, separated by whitespace, 
 		// the values for each assignment to the variables in the function's scope are enumerated.
-		String[] entryLineEntries = split(readLine(br));
-		int numberEntries = Integer.parseInt(entryLineEntries[0]); 
-		
-		List<Double> entries = new ArrayList<Double>();
-		// Handle table entries on the same line as the #entries information.
-		if (entryLineEntries.length > 1) {
-			for (int i = 1; i < entryLineEntries.length; i++) {
-				entries.add(Double.parseDouble(entryLineEntries[i]));
-			}
-		}
-
-		while (entries.size() < numberEntries) { 
-			String[] entryValues = split(readLine(br));
-			for (String entry : entryValues) {
-				entries.add(Double.parseDouble(entry));
-			}
-		}
+		int numberEntries = tokenizer.nextInt(); 
+		
+		double[] entries = new double[numberEntries];
+		tokenizer.nextDoubles(entries);
 		
 		FunctionTable result = new FunctionTable(variableCardinalities, entries);
+		result.contentHash(); // computed now, while the entries just parsed are still in cache, for later deduplication
 		
 		return result;
 	}
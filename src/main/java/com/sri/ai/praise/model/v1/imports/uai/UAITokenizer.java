@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A whitespace separated tokenizer for UAI files that parses integers and doubles
+ * directly from the underlying characters, without creating intermediate strings
+ * (except for the rare numbers that cannot be converted exactly by the fast path below,
+ * which are handed to {@link Double#parseDouble(String)}).
+ * Files are read through memory-mapped regions, so very large models do not need to be copied into the heap.
+ *
+ * @author oreilly
+ */
+@Beta
+abstract class UAITokenizer implements AutoCloseable {
+
+	private static final double[] POWERS_OF_TEN = {
+			1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final long   MAX_EXACT_MANTISSA  = 1L << 53;
+	private static final int    MAX_MANTISSA_DIGITS = 18;
+
+	private StringBuilder token = new StringBuilder();
+
+	public static UAITokenizer tokenizer(File file) throws IOException {
+		return new MappedFileTokenizer(file, MappedFileTokenizer.MAX_REGION_SIZE);
+	}
+
+	/**
+	 * Same as {@link #tokenizer(File)} but mapping the file in regions of the given size (smaller regions are only useful for testing).
+	 */
+	static UAITokenizer tokenizer(File file, long regionSize) throws IOException {
+		return new MappedFileTokenizer(file, regionSize);
+	}
+
+	public static UAITokenizer tokenizer(Reader reader) {
+		return new ReaderTokenizer(reader);
+	}
+
+	/**
+	 *
+	 * @return the offset of the next character to be read.
+	 */
+	public abstract long position();
+
+	/**
+	 * Moves to the given offset (only supported by tokenizers over files).
+	 * @param position the offset of the next character to be read.
+	 * @throws IOException
+	 */
+	public void position(long position) throws IOException {
+		throw new UnsupportedOperationException("Tokenizer does not support repositioning");
+	}
+
+	@Override
+	public abstract void close() throws IOException;
+
+	public boolean hasMoreTokens() throws IOException {
+		skipWhitespace();
+		return peek() != -1;
+	}
+
+	public String nextWord() throws IOException {
+		skipWhitespace();
+		return readToken();
+	}
+
+	public int nextInt() throws IOException {
+		skipWhitespace();
+		long start    = position();
+		boolean negative = false;
+		int c = peek();
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			advance();
+		}
+		long    result   = 0;
+		boolean anyDigit = false;
+		while (isDigit(c = peek())) {
+			result = result * 10 + (c - '0');
+			if (result > (negative ? Integer.MAX_VALUE + 1L : Integer.MAX_VALUE)) {
+				throw new IllegalArgumentException("Integer too large at offset "+start);
+			}
+			anyDigit = true;
+			advance();
+		}
+		if (!anyDigit || !isWhitespaceOrEnd(c)) {
+			throw new IllegalArgumentException("Expected an integer at offset "+start+" but found ["+readToken()+"]");
+		}
+		return (int) (negative ? -result : result);
+	}
+
+	public double nextDouble() throws IOException {
+		skipWhitespace();
+		long    start       = position();
+		boolean negative    = false;
+		long    mantissa    = 0;
+		int     digits      = 0;
+		int     exponent    = 0;
+		boolean anyDigit    = false;
+		boolean exact       = true;
+
+		int c = peek();
+		if (c == '-' || c == '+') {
+			negative = c == '-';
+			advance();
+		}
+		while (isDigit(c = peek())) {
+			anyDigit = true;
+			if (digits < MAX_MANTISSA_DIGITS) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa != 0) {
+					digits++;
+				}
+			}
+			else {
+				exact = false;
+			}
+			advance();
+		}
+		if (c == '.') {
+			advance();
+			while (isDigit(c = peek())) {
+				anyDigit = true;
+				if (digits < MAX_MANTISSA_DIGITS) {
+					mantissa = mantissa * 10 + (c - '0');
+					if (mantissa != 0) {
+						digits++;
+					}
+					exponent--;
+				}
+				else {
+					exact = false;
+				}
+				advance();
+			}
+		}
+		if (anyDigit && (c == 'e' || c == 'E')) {
+			advance();
+			boolean negativeExponent = false;
+			c = peek();
+			if (c == '-' || c == '+') {
+				negativeExponent = c == '-';
+				advance();
+			}
+			int     explicitExponent = 0;
+			boolean anyExponentDigit = false;
+			while (isDigit(c = peek())) {
+				anyExponentDigit = true;
+				if (explicitExponent < 10000) {
+					explicitExponent = explicitExponent * 10 + (c - '0');
+				}
+				advance();
+			}
+			if (!anyExponentDigit) {
+				anyDigit = false; // malformed, let the fall back report it
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+
+		double result;
+		if (!anyDigit || !isWhitespaceOrEnd(c)) {
+			// something unusual (e.g. 'inf', 'NaN' or malformed input) so let the JDK deal with it
+			position(start);
+			result = Double.parseDouble(readToken());
+		}
+		else if (mantissa == 0) {
+			result = negative ? -0.0 : 0.0;
+		}
+		else if (exact && mantissa < MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+			// both the mantissa and the power of ten are exact doubles, so a single operation gives the correctly rounded result
+			result = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+			if (negative) {
+				result = -result;
+			}
+		}
+		else {
+			position(start);
+			result = Double.parseDouble(readToken());
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the next <code>entries.length</code> doubles into the given array.
+	 * @param entries the array to be filled.
+	 * @throws IOException
+	 */
+	public void nextDoubles(double[] entries) throws IOException {
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = nextDouble();
+		}
+	}
+
+	/**
+	 * Skips the given number of tokens, without parsing them.
+	 * @param numberOfTokens the number of tokens to be skipped.
+	 * @throws IOException
+	 */
+	public void skipTokens(long numberOfTokens) throws IOException {
+		for (long i = 0; i < numberOfTokens; i++) {
+			skipWhitespace();
+			if (peek() == -1) {
+				throw new IllegalArgumentException("Unexpected end of input while skipping tokens");
+			}
+			while (!isWhitespaceOrEnd(peek())) {
+				advance();
+			}
+		}
+	}
+
+	//
+	// PROTECTED
+	//
+
+	/**
+	 *
+	 * @return the next character, without consuming it, or -1 if at the end of the input.
+	 * @throws IOException
+	 */
+	protected abstract int peek() throws IOException;
+
+	/**
+	 * Consumes the current character.
+	 */
+	protected abstract void advance();
+
+	//
+	// PRIVATE
+	//
+	private void skipWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && c <= ' ') {
+			advance();
+		}
+	}
+
+	private String readToken() throws IOException {
+		token.setLength(0);
+		int c;
+		while (!isWhitespaceOrEnd(c = peek())) {
+			token.append((char) c);
+			advance();
+		}
+		if (token.length() == 0) {
+			throw new IllegalArgumentException("Unexpected end of input at offset "+position());
+		}
+		return token.toString();
+	}
+
+	private static boolean isDigit(int c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWhitespaceOrEnd(int c) {
+		return c <= ' '; // includes -1, i.e. the end of the input
+	}
+
+	private static class MappedFileTokenizer extends UAITokenizer {
+		private static final long MAX_REGION_SIZE = 1L << 30;
+
+		private FileChannel      channel;
+		private long             regionSize;
+		private long             size;
+		private MappedByteBuffer region;
+		private long             regionStart;
+		private long             regionEnd;
+		private long             position;
+
+		MappedFileTokenizer(File file, long regionSize) throws IOException {
+			this.channel    = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			this.regionSize = regionSize;
+			this.size       = channel.size();
+			map(0);
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public void position(long position) throws IOException {
+			if (position < regionStart || position > regionEnd) {
+				map(position);
+			}
+			this.position = position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			region = null;
+			channel.close();
+		}
+
+		@Override
+		protected int peek() throws IOException {
+			if (position >= regionEnd) {
+				if (position >= size) {
+					return -1;
+				}
+				map(position);
+			}
+			return region.get((int) (position - regionStart)) & 0xFF;
+		}
+
+		@Override
+		protected void advance() {
+			position++;
+		}
+
+		private void map(long start) throws IOException {
+			regionStart = start;
+			regionEnd   = Math.min(size, start + regionSize);
+			region      = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+		}
+	}
+
+	private static class ReaderTokenizer extends UAITokenizer {
+		private Reader reader;
+		private char[] buffer = new char[8192];
+		private int    bufferPosition;
+		private int    bufferLimit;
+		private long   position;
+
+		ReaderTokenizer(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public void position(long position) throws IOException {
+			// only allowed to move back within the current buffer (used to re-read the current token)
+			long bufferStart = this.position - bufferPosition;
+			if (position < bufferStart || position > bufferStart + bufferLimit) {
+				super.position(position);
+			}
+			bufferPosition = (int) (position - bufferStart);
+			this.position  = position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+
+		@Override
+		protected int peek() throws IOException {
+			if (bufferPosition == bufferLimit) {
+				// keep the characters of the current token so we can move back to its start if needed
+				int keep = 0;
+				while (keep < bufferLimit && buffer[bufferLimit - keep - 1] > ' ') {
+					keep++;
+				}
+				if (keep == buffer.length) {
+					char[] larger = new char[buffer.length * 2];
+					System.arraycopy(buffer, 0, larger, 0, buffer.length);
+					buffer = larger;
+				}
+				else {
+					System.arraycopy(buffer, bufferLimit - keep, buffer, 0, keep);
+				}
+				bufferPosition = keep;
+				bufferLimit    = keep;
+				int read = reader.read(buffer, keep, buffer.length - keep);
+				if (read == -1) {
+					return -1;
+				}
+				bufferLimit += read;
+			}
+			return buffer[bufferPosition];
+		}
+
+		@Override
+		protected void advance() {
+			bufferPosition++;
+			position++;
+		}
+	}
+}
@@ -37,27 +37,30 @@
  */
 package com.sri.ai.praise.model.v1.imports.uai;
 
-import static com.sri.ai.util.Util.list;
-
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
 
 import com.google.common.annotations.Beta;
 import com.sri.ai.expresso.api.Expression;
 import com.sri.ai.expresso.helper.Expressions;
 import com.sri.ai.grinder.api.Context;
-import com.sri.ai.grinder.api.MultiQuantifierEliminator;
-import com.sri.ai.grinder.application.Compilation;
 import com.sri.ai.grinder.core.TrueContext;
+import com.sri.ai.grinder.library.Equality;
 import com.sri.ai.grinder.library.SyntacticSubstitute;
-import com.sri.ai.grinder.theory.equality.EqualityTheory;
+import com.sri.ai.grinder.library.boole.Or;
+import com.sri.ai.grinder.library.controlflow.IfThenElse;
 import com.sri.ai.praise.lang.grounded.common.FunctionTable;
-import com.sri.ai.util.collect.CartesianProductEnumeration;
+import com.sri.ai.praise.lang.grounded.common.GraphicalNetwork;
 
 /**
  * UAI utilities specific to UAI file format processing.
@@ -66,6 +69,23 @@ import com.sri.ai.util.collect.CartesianProductEnumeration;
  */
 @Beta
 public class UAIUtil {
+	
+	/**
+	 * System property giving the number of threads used to compile the unique function tables of a model.
+	 */
+	public static final String TABLE_COMPILATION_THREADS_PROPERTY = "uai.table.compilation.threads";
+	
+	/**
+	 * Number of threads used to compile unique function tables (defaults to the number of available processors).
+	 */
+	public static final int TABLE_COMPILATION_THREADS = Math.max(1, Integer.getInteger(TABLE_COMPILATION_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+	
+	/**
+	 * Identifies {@link #constructGenericTableExpressionUsingEqualities(FunctionTable)} and its version in {@link GenericTableExpressionCache}
+	 * (to be changed whenever the expressions it produces change).
+	 */
+	public static final String TABLE_COMPILATION_USING_EQUALITIES = "equalities-v1";
+	
 	public static String readLine(BufferedReader br) throws IOException {
 		String result = "";
 		// This ensures empty lines are removed
@@ -85,78 +105,69 @@ public class UAIUtil {
 	/**
 	 * Returns an {@link Expression} equivalent to a given {@link FunctionTable} but in the form of a decision tree
 	 * (so hopefully more compact) using equalities.
+	 * <p>
+	 * The tree is built directly from the table's entries: it splits on the table's variables in order and 
+	 * merges sub-tables that turn out to be equal, so no intermediate if-then-else string is created or parsed
+	 * and the memory needed is linear in the size of the table.
 	 * @param functionTable
-	 * @param solverListener if not null, invoked on solver used for compilation, before and after compilation is performed; returned solver from "before" invocation is used (it may be the same one used as argument, of course).
 	 * @return
 	 */
 	public static Expression constructGenericTableExpressionUsingEqualities(FunctionTable functionTable) {
-		return constructGenericTableExpressionUsingEqualities(functionTable, null);
+		Map<Double, Expression> valueSymbols = new HashMap<>();
+		Expression result = constructDecisionTree(functionTable, 0, 0, valueSymbols);
+		return result;
+	}
+
+	/**
+	 * Compiles the unique function tables of a model in parallel (tables are independent of each other), 
+	 * handing each compiled expression to a consumer on the calling thread in unique table index order, 
+	 * so that any output produced from them is the same as when compiling sequentially.
+	 * At most a bounded number of tables is being compiled or waiting to be consumed at any time, 
+	 * which keeps memory use in check for models with very many unique tables.
+	 * @param model
+	 *        the model whose unique function tables are to be compiled.
+	 * @param compiler
+	 *        the function compiling a table (invoked concurrently, so must be thread safe).
+	 * @param consumer
+	 *        receives the unique table index and its compiled expression, returning false if no more tables are to be compiled.
+	 * @return true if all the tables were compiled and consumed, false if the consumer stopped the compilation.
+	 */
+	public static boolean compileUniqueFunctionTablesInParallel(GraphicalNetwork model, Function<FunctionTable, Expression> compiler, BiPredicate<Integer, Expression> consumer) {
+		return compileUniqueFunctionTablesInParallel(model, TABLE_COMPILATION_THREADS, compiler, consumer);
 	}
 	
 	/**
-	 * Returns an {@link Expression} equivalent to a given {@link FunctionTable} but in the form of a decision tree
-	 * (so hopefully more compact) using equalities.
-	 * @param functionTable
-	 * @param solverListener if not null, invoked on solver used for compilation, before and after compilation is performed; returned solver from "before" invocation is used (it may be the same one used as argument, of course).
-	 * @return
+	 * Same as {@link #compileUniqueFunctionTablesInParallel(GraphicalNetwork, Function, BiPredicate)} but using the given number of threads
+	 * (e.g. when several models are compiled at the same time).
 	 */
-	public static Expression constructGenericTableExpressionUsingEqualities(FunctionTable functionTable, Function<MultiQuantifierEliminator, MultiQuantifierEliminator> solverListener) {
-		StringBuilder table = new StringBuilder();
-		CartesianProductEnumeration<Integer> cartesianProduct = new CartesianProductEnumeration<>(cardinalityValues(functionTable));
-		int counter = 0;
-		while (cartesianProduct.hasMoreElements()) {
-			counter++;
-			List<Integer> values = cartesianProduct.nextElement();
-			Double entryValue = functionTable.entryFor(values);
-			if (counter == cartesianProduct.size().intValue()) {
-				// i.e. final value
-				table.append(entryValue);
+	public static boolean compileUniqueFunctionTablesInParallel(GraphicalNetwork model, int numberThreads, Function<FunctionTable, Expression> compiler, BiPredicate<Integer, Expression> consumer) {
+		boolean result = true;
+		int numberUniqueTables = model.numberUniqueFunctionTables();
+		if (numberThreads == 1 || numberUniqueTables < 2) {
+			for (int i = 0; i < numberUniqueTables && result; i++) {
+				result = consumer.test(i, compiler.apply(model.getUniqueFunctionTable(i)));
 			}
-			else {
-				table.append("if ");
-				for (int i = 0; i < values.size(); i++) {
-					if (i > 0) {
-						table.append(" and ");
-					}
-					String value = genericConstantValueForVariable(values.get(i), i, functionTable.cardinality(i));
-					if (value.equals("true")) {
-						table.append(genericVariableName(i));
-					}
-					else if (value.equals("false")) {
-						table.append("not "+genericVariableName(i));
-					}
-					else {
-						table.append(genericVariableName(i));
-						table.append(" = ");
-						table.append(value);
+		}
+		else {
+			ForkJoinPool              pool        = new ForkJoinPool(numberThreads);
+			int                       maxInFlight = 2 * numberThreads;
+			List<Future<Expression>>  inFlight    = new ArrayList<>(maxInFlight);
+			try {
+				int nextToSubmit = 0;
+				for (int i = 0; i < numberUniqueTables && result; i++) {
+					while (nextToSubmit < numberUniqueTables && nextToSubmit - i < maxInFlight) {
+						FunctionTable table = model.getUniqueFunctionTable(nextToSubmit++);
+						inFlight.add(pool.submit(() -> compiler.apply(table)));
 					}
+					Future<Expression> next = inFlight.remove(0);
+					result = consumer.test(i, waitFor(next));
 				}
-				table.append(" then ");
-				table.append(entryValue);
-				table.append(" else ");
 			}
-		}
-
-		Expression  inputExpression  = Expressions.parse(table.toString());
-		Function<Integer, Integer> cardinalityOfIthVariable = i -> functionTable.cardinality(i);
-
-		Map<String, String> mapFromCategoricalTypeNameToSizeString   = new LinkedHashMap<>();
-		Map<String, String> mapFromVariableNameToTypeName = new LinkedHashMap<>();
-		Map<String, String> mapFromUniquelyNamedConstantToTypeName = new LinkedHashMap<>();
-		for (int i = 0; i < functionTable.numberVariables(); i++) {
-			String typeName = genericTypeNameForVariable(i, cardinalityOfIthVariable.apply(i));
-			mapFromCategoricalTypeNameToSizeString.put(typeName, "" + cardinalityOfIthVariable.apply(i));
-			mapFromVariableNameToTypeName.put(genericVariableName(i), typeName);
-			for (int j = 0; j != functionTable.cardinality(i); j++) {
-				String jThConstant = genericConstantValueForVariable(j, i, functionTable.cardinality(i));
-				mapFromUniquelyNamedConstantToTypeName.put(jThConstant, typeName);
+			finally {
+				inFlight.forEach(future -> future.cancel(true));
+				pool.shutdownNow();
 			}
 		}
-		
-		com.sri.ai.grinder.api.Theory theory = new EqualityTheory(true, true);
-
-		Expression result = Compilation.compile(inputExpression, theory, mapFromVariableNameToTypeName, mapFromUniquelyNamedConstantToTypeName, mapFromCategoricalTypeNameToSizeString, list(), solverListener);
-		
 		return result;
 	}
 
@@ -235,4 +246,135 @@ public class UAIUtil {
 		
 		return result;
 	}
+	
+	/**
+	 * Appends a decimal representation of a double that parses back to exactly the same double, 
+	 * avoiding the cost of {@link Double#toString(double)} for the values typically found in function tables 
+	 * (i.e. those with a short exact decimal representation, such as 0.95), which fall back to it otherwise.
+	 * @param appendable
+	 *        where to append the value.
+	 * @param value
+	 *        the value to be appended.
+	 * @return the given appendable.
+	 */
+	public static StringBuilder appendDouble(StringBuilder appendable, double value) {
+		double magnitude = Math.abs(value);
+		// outside this range Double.toString uses scientific notation, so we let it deal with it (as well as with -0.0, NaN and infinities)
+		if (magnitude >= 1e-3 && magnitude < 1e7) {
+			for (int decimalPlaces = 0; decimalPlaces < POWERS_OF_TEN.length; decimalPlaces++) {
+				double scaled = magnitude * POWERS_OF_TEN[decimalPlaces];
+				if (scaled >= MAX_EXACT_LONG_IN_DOUBLE) {
+					break;
+				}
+				long mantissa = Math.round(scaled);
+				// both the mantissa and the power of ten are exact, so the division is correctly rounded, as is parsing the decimal
+				if (mantissa / POWERS_OF_TEN[decimalPlaces] == magnitude) {
+					if (value < 0) {
+						appendable.append('-');
+					}
+					appendDecimal(appendable, mantissa, decimalPlaces);
+					return appendable;
+				}
+			}
+		}
+		return appendable.append(value);
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static final double[] POWERS_OF_TEN = {
+			1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17};
+	private static final double MAX_EXACT_LONG_IN_DOUBLE = 1L << 53;
+	
+	private static void appendDecimal(StringBuilder appendable, long mantissa, int decimalPlaces) {
+		// i.e. mantissa * 10^-decimalPlaces, with at least one digit before and after the decimal point (as Double.toString)
+		String digits       = Long.toString(mantissa);
+		int    integerWidth = digits.length() - decimalPlaces;
+		if (decimalPlaces == 0) {
+			appendable.append(digits).append(".0");
+		}
+		else if (integerWidth <= 0) {
+			appendable.append("0.");
+			for (int i = integerWidth; i < 0; i++) {
+				appendable.append('0');
+			}
+			appendable.append(digits);
+		}
+		else {
+			appendable.append(digits, 0, integerWidth).append('.').append(digits, integerWidth, digits.length());
+		}
+	}
+	
+	private static Expression constructDecisionTree(FunctionTable functionTable, int varIdx, int offset, Map<Double, Expression> valueSymbols) {
+		Expression result;
+		if (varIdx == functionTable.numberVariables()) {
+			// leaves are parsed from the shortest decimal representation of the entries (as they were when tables were compiled from their text),
+			// so that e.g. 0.3 becomes the rational 3/10 rather than the exact value of the nearest double
+			result = valueSymbols.computeIfAbsent(functionTable.entryAtLinear(offset), value -> Expressions.parse(Double.toString(value)));
+		}
+		else {
+			int cardinality = functionTable.cardinality(varIdx);
+			int stride      = functionTable.stride(varIdx);
+			List<Expression> subTrees = new ArrayList<>(cardinality);
+			for (int value = 0; value < cardinality; value++) {
+				subTrees.add(constructDecisionTree(functionTable, varIdx + 1, offset + value * stride, valueSymbols));
+			}
+			
+			// Group the values of the variable by sub-tree, so that equal sub-tables are only represented once
+			Map<Expression, List<Integer>> subTreeToValues = new LinkedHashMap<>();
+			for (int value = 0; value < cardinality; value++) {
+				subTreeToValues.computeIfAbsent(subTrees.get(value), subTree -> new ArrayList<>()).add(value);
+			}
+			
+			if (subTreeToValues.size() == 1) {
+				// the variable is irrelevant for this portion of the table
+				result = subTrees.get(0);
+			}
+			else if (cardinality == 2) {
+				result = IfThenElse.make(Expressions.makeSymbol(genericVariableName(varIdx)), subTrees.get(1), subTrees.get(0));
+			}
+			else {
+				// The sub-tree shared by the most values is the final else branch, so it requires no test
+				Expression defaultSubTree = null;
+				for (Map.Entry<Expression, List<Integer>> entry : subTreeToValues.entrySet()) {
+					if (defaultSubTree == null || entry.getValue().size() > subTreeToValues.get(defaultSubTree).size()) {
+						defaultSubTree = entry.getKey();
+					}
+				}
+				Expression variable = Expressions.makeSymbol(genericVariableName(varIdx));
+				List<Map.Entry<Expression, List<Integer>>> tested = new ArrayList<>(subTreeToValues.entrySet());
+				result = defaultSubTree;
+				for (int i = tested.size() - 1; i >= 0; i--) {
+					Map.Entry<Expression, List<Integer>> entry = tested.get(i);
+					if (entry.getKey() != defaultSubTree) {
+						List<Expression> equalities = new ArrayList<>(entry.getValue().size());
+						for (int value : entry.getValue()) {
+							equalities.add(Equality.make(variable, Expressions.makeSymbol(genericConstantValueForVariable(value, varIdx, cardinality))));
+						}
+						Expression condition = equalities.size() == 1 ? equalities.get(0) : Or.make(equalities);
+						result = IfThenElse.make(condition, entry.getKey(), result);
+					}
+				}
+			}
+		}
+		return result;
+	}
+	
+	private static Expression waitFor(Future<Expression> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for table compilation", ie);
+		}
+		catch (ExecutionException ee) {
+			if (ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ee.getCause();
+			}
+			throw new RuntimeException(ee.getCause());
+		}
+	}
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.probabilisticsolver.core.ve;
+
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import com.sri.ai.expresso.helper.Expressions;
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.inference.QueryCanceledException;
+import com.sri.ai.praise.lang.ModelLanguage;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlan;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlanner;
+import com.sri.ai.praise.lang.grounded.markov.NumericVariableElimination;
+import com.sri.ai.praise.lang.translate.Translator;
+import com.sri.ai.praise.lang.translate.TranslatorFactory;
+import com.sri.ai.praise.model.v1.imports.uai.UAIEvidenceReader;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModelReader;
+import com.sri.ai.praise.probabilisticsolver.core.AbstractSolver;
+import com.sri.ai.praise.probabilisticsolver.core.SolverResult;
+
+/**
+ * In-process solver that grounds the model to UAI, in the same way as {@link com.sri.ai.praise.probabilisticsolver.core.vec.VECSolver},
+ * and computes the probability of the evidence query with {@link NumericVariableElimination}, so no external executable is needed.
+ * Models whose predicted largest table (see {@link EliminationPlanner}) does not fit in the configured memory limit are not attempted,
+ * and an elimination still running once the configured time limit has elapsed is canceled (both being reported as unsolved).
+ * 
+ * @author oreilly
+ *
+ */
+public class VariableEliminationSolver extends AbstractSolver {
+	
+	private static final long _bytesPerTableEntry = Double.BYTES;
+	
+	@Override
+	public String getName() {
+		return "VE";
+	}
+
+	@Override
+	public SolverResult solve(String solveRequestId, ModelLanguage modelLanguage, String model, String evidenceQuery) 
+		throws Exception {
+		
+		if (modelLanguage != ModelLanguage.HOGMv1) {
+			throw new UnsupportedOperationException(modelLanguage.name() + " is currently not supported by this solver.");
+		}
+		
+		Translator inputToUAITranslator = TranslatorFactory.newTranslator(modelLanguage, ModelLanguage.UAI);
+		
+		// NOTE: This trick is dependent on the input model being HOGMv1
+		String hogmv1Model = model + "\nrandom UAIQuery : Boolean;\nif "+evidenceQuery+" then UAIQuery else not UAIQuery;\n";
+	
+		VECallResult partitionResult = callVEPR("Partition Function "+solveRequestId, inputToUAITranslator, new Reader[] {new StringReader(hogmv1Model)});
+		VECallResult evidenceResult  = callVEPR("Evidence "+solveRequestId, inputToUAITranslator, new Reader[] {new StringReader(hogmv1Model), new StringReader("UAIQuery")});
+		
+		Double probabilityResult = Math.pow(10, evidenceResult.resultLog10 - partitionResult.resultLog10);
+		SolverResult result = new SolverResult(
+					Math.max(partitionResult.translationTookMS, evidenceResult.translationTookMS),
+					Math.max(partitionResult.inferenceTookMS, evidenceResult.inferenceTookMS),
+					probabilityResult.isNaN() ? null : Expressions.makeSymbol(probabilityResult)
+				);
+		
+		return result;
+	}
+	
+	@Override
+	public ModelLanguage getExpectedModelLanguage() {
+		return ModelLanguage.UAI;
+	}
+	
+	//
+	// PRIVATE
+	private VECallResult callVEPR(String identifier, Translator inputToUAITranslator, Reader[] input) throws Exception {
+		long translationStart = System.currentTimeMillis();
+		
+		StringWriter swUAIModel    = new StringWriter();
+		StringWriter swUAIEvidence = new StringWriter();
+		PrintWriter  pwUAIModel    = new PrintWriter(swUAIModel);
+		PrintWriter  pwUAIEvidence = new PrintWriter(swUAIEvidence);
+		inputToUAITranslator.translate(identifier, input, new PrintWriter[] {pwUAIModel, pwUAIEvidence}, getConfiguration().getTranslatorOptions());
+		pwUAIModel.flush();
+		pwUAIEvidence.flush();
+		
+		UAIModel uaiModel = UAIModelReader.read(new StringReader(swUAIModel.toString()));
+		if (swUAIEvidence.toString().trim().length() > 0) {
+			UAIEvidenceReader.read(new StringReader(swUAIEvidence.toString()), uaiModel);
+		}
+		
+		long translationEnd = System.currentTimeMillis();
+		
+		VECallResult result = new VECallResult();
+		result.translationTookMS = translationEnd - translationStart;
+		
+		long            inferenceStart = System.currentTimeMillis();
+		EliminationPlan plan           = EliminationPlanner.bestPlan(uaiModel, uaiModel.getEvidence().keySet());
+		if (plan.getPeakTableSize() > (getConfiguration().getTotalMemoryLimitInMegabytesPerSolveAttempt() * 1024L * 1024L) / _bytesPerTableEntry) {
+			// would run out of memory, so report as unsolved (as an external solver would) instead of attempting it
+			result.resultLog10 = Double.NaN;
+		}
+		else {
+			try (CancellationToken cancellationToken = CancellationToken.withTimeout(getConfiguration().getTotalCPURuntimeLimitSecondsPerSolveAttempt(), TimeUnit.SECONDS)) {
+				result.resultLog10 = new NumericVariableElimination(uaiModel, uaiModel.getEvidence(), plan, cancellationToken).log10PartitionFunction();
+			}
+			catch (QueryCanceledException queryCanceledException) {
+				// timed out, so report as unsolved (as an external solver would)
+				result.resultLog10 = Double.NaN;
+			}
+		}
+		result.inferenceTookMS = System.currentTimeMillis() - inferenceStart;
+		
+		return result;
+	}
+	
+	class VECallResult {
+		public long translationTookMS;
+		public long inferenceTookMS;
+		public double resultLog10;
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.lang.grounded.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+
+import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.praise.inference.ExpressionFactorsAndTypes;
+import com.sri.ai.praise.inference.FactorsAndTypes;
+import com.sri.ai.praise.model.v1.hogm.antlr.HOGMParserWrapper;
+import com.sri.ai.praise.model.v1.hogm.antlr.ParsedHOGModel;
+import com.sri.ai.util.base.Pair;
+
+// in the same package as HOGModelGrounding, as its shared tables are not public
+public class HOGModelGroundingSharedTablesTest {
+
+	@Test
+	public void testInstancesWithSamePatternShareOneTable() {
+		Map<Pair<Integer, Expression>, HOGModelGrounding.FactorBuffer> sharedTables = ground(
+				"for all X in People : if smokes(X) then if cancer(X) then 0.9 else 0.1 else if cancer(X) then 0.2 else 0.8;");
+		assertEquals(1, sharedTables.size());
+	}
+	
+	@Test
+	public void testInstancesWithDifferentPatternsDoNotShareTables() {
+		// the instance for ann is not about the same factor as the others
+		Map<Pair<Integer, Expression>, HOGModelGrounding.FactorBuffer> sharedTables = ground(
+				"for all X in People : if X = ann then if cancer(X) then 0.3 else 0.7 else if cancer(X) then 0.2 else 0.8;");
+		assertEquals(4, sharedTables.size());
+	}
+	
+	@Test
+	public void testEachLiftedFactorHasItsOwnTables() {
+		Map<Pair<Integer, Expression>, HOGModelGrounding.FactorBuffer> sharedTables = ground(
+				"for all X in People : if smokes(X) then 0.6 else 0.4;",
+				"for all X in People : if smokes(X) then 0.6 else 0.4;");
+		assertEquals(2, sharedTables.size());
+	}
+	
+	private static Map<Pair<Integer, Expression>, HOGModelGrounding.FactorBuffer> ground(String... factors) {
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add("sort People : 4, ann, bob;");
+		sj.add("random smokes : People -> Boolean;");
+		sj.add("random cancer : People -> Boolean;");
+		for (String factor : factors) {
+			sj.add(factor);
+		}
+		
+		HOGMParserWrapper parser          = new HOGMParserWrapper();
+		ParsedHOGModel    parsedModel     = parser.parseModel(sj.toString());
+		FactorsAndTypes   factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+		
+		Map<Pair<Integer, Expression>, HOGModelGrounding.FactorBuffer> result = new ConcurrentHashMap<>();
+		HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new HOGModelGrounding.BulkListener() {
+			@Override
+			public void numberGroundVariables(int number) {
+			}
+			@Override
+			public void groundVariableCardinality(int variableIndex, int cardinality) {
+			}
+			@Override
+			public void numberFactors(int number) {
+			}
+			@Override
+			public void factorParticipants(int factorIndex, int[] variableIndexes) {
+			}
+			@Override
+			public void factorValues(int factorIndex, double[] values) {
+			}
+			@Override
+			public void evidence(int variableIndex, int valueIndex) {
+			}
+			@Override
+			public void groundingComplete() {
+			}
+		}, result);
+		return result;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+// in the same package as the model, to use its package private methods
+public class UAIModelLazyReadingTest {
+	
+	// a loop 0-1-2-3-0 with a tail 3-4, in which the last two pairwise tables are the same
+	private static final String MODEL = 
+			"MARKOV\n5\n2 3 2 2 2\n6\n1 0\n2 0 1\n2 1 2\n2 2 3\n2 0 3\n2 3 4\n" +
+			"2\n0.3 0.7\n" +
+			"6\n1 2 3 4 5 6\n" +
+			"6\n0.5 1 2 1 0.1 3\n" +
+			"4\n4 1 1 4\n" +
+			"4\n0.9 0.1 0.2 0.8\n" +
+			"4\n0.9 0.1 0.2 0.8\n";
+
+	@Test
+	public void testTablesLoadedOneAtATimeAreSameAsEagerlyRead() throws IOException {
+		UAIModel eager = UAIModelReader.read(new StringReader(MODEL));
+		File     file  = write(MODEL);
+		try {
+			UAIModel lazy = UAIModelReader.readLazily(file);
+			for (int tableIdx : new int[] {3, 0, 5, 1, 4, 2, 3}) {
+				assertEquals(eager.getTable(tableIdx), lazy.getTable(tableIdx));
+			}
+			assertEquals(eager.numberUniqueFunctionTables(), lazy.numberUniqueFunctionTables());
+			for (int i = 0; i < eager.numberUniqueFunctionTables(); i++) {
+				assertEquals(eager.getUniqueFunctionTable(i), lazy.getUniqueFunctionTable(i));
+				assertEquals(eager.getTableIndexes(i), lazy.getTableIndexes(i));
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testUnloadedTablesAreLoadedAgain() throws IOException {
+		UAIModel eager = UAIModelReader.read(new StringReader(MODEL));
+		File     file  = write(MODEL);
+		try {
+			UAIModel lazy = UAIModelReader.readLazily(file);
+			for (UAIModel model : new UAIModel[] {eager, lazy}) {
+				model.addEvidence(1, 2);
+				model.mergeEvidenceIntoModel();
+			}
+			int numberUniqueFunctionTables = lazy.numberUniqueFunctionTables();
+			assertEquals(eager.numberUniqueFunctionTables(), numberUniqueFunctionTables);
+			
+			lazy.unloadTables();
+			assertEquals(eager.numberTables(), lazy.numberTables());
+			assertEquals(eager.getTable(3), lazy.getTable(3));
+			lazy.unloadTables();
+			lazy.unloadTables();
+			// the evidence table is kept
+			assertEquals(eager.getTable(6), lazy.getTable(6));
+			assertEquals(numberUniqueFunctionTables, lazy.numberUniqueFunctionTables());
+			for (int i = 0; i < numberUniqueFunctionTables; i++) {
+				assertEquals(eager.getUniqueFunctionTable(i), lazy.getUniqueFunctionTable(i));
+				assertEquals(eager.getTableIndexes(i), lazy.getTableIndexes(i));
+			}
+			
+			// unloading has no effect on eagerly read models
+			eager.unloadTables();
+			assertEquals(numberUniqueFunctionTables, eager.numberUniqueFunctionTables());
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testLoadAllTables() throws IOException {
+		UAIModel eager = UAIModelReader.read(new StringReader(MODEL));
+		File     file  = write(MODEL);
+		try {
+			UAIModel lazy = UAIModelReader.readLazily(file);
+			lazy.getTable(2);
+			lazy.loadAllTables();
+			// the tables no longer come from the file
+			file.delete();
+			for (int tableIdx = 0; tableIdx < eager.numberTables(); tableIdx++) {
+				assertEquals(eager.getTable(tableIdx), lazy.getTable(tableIdx));
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	@Test
+	public void testToStringDoesNotLoadTables() throws IOException {
+		File file = write(MODEL);
+		try {
+			UAIModel lazy = UAIModelReader.readLazily(file);
+			assertEquals("UAI model #vars=5, #tables=6", lazy.toString());
+			lazy.getTable(0);
+			assertEquals("UAI model #vars=5, #tables=6", lazy.toString());
+			assertEquals(5, lazy.numberUniqueFunctionTables());
+			assertEquals("UAI model #vars=5, #tables=6, #unique function tables=5, ratio=0.8333333333333334", lazy.toString());
+		}
+		finally {
+			file.delete();
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static File write(String uai) throws IOException {
+		File result = File.createTempFile("uaimodel", ".uai");
+		Files.write(result.toPath(), uai.getBytes(StandardCharsets.US_ASCII));
+		return result;
+	}
+}
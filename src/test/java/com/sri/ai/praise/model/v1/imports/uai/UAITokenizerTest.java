@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.praise.model.v1.imports.uai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+// in the same package as the tokenizer, as it is not public
+public class UAITokenizerTest {
+
+	private static final List<String> DOUBLES = Arrays.asList(
+			"0", "-0", "+0.0", "1", "-1", "+1.5", "0.1", "0.3", "3.", ".5", "-.25", "123.456e-5", "1E5", "1e+5", "7e0",
+			// around the fast path boundaries: 2^53 for the mantissa and 10^22 for the power of ten
+			"9007199254740991", "9007199254740992", "9007199254740993", "900719925474099.3", "9007199254740993e-16",
+			"1e22", "1e23", "1e-22", "1e-23", "123e20", "123e-20", "4.5e21", "4.5e-24",
+			// long mantissas
+			"123456789012345678", "1234567890123456789", "123456789012345678901234567890", "0.123456789012345678901234567890",
+			"0.000000000000000000000000001234", "1.00000000000000011102230246251565404236316680908203125",
+			"100000000000000000000000000000000000000000000000000e-50",
+			// extreme exponents
+			"4.9e-324", "2.4703282292062327e-324", "2.2250738585072014E-308", "2.2250738585072011e-308", "1.7976931348623157e308",
+			"1.7976931348623159e308", "1e400", "-1e400", "1e-400", "0e99999", "NaN", "Infinity", "-Infinity");
+
+	@Test
+	public void testDoublesFromReader() throws IOException {
+		assertDoubles(DOUBLES, UAITokenizer.tokenizer(new StringReader(String.join(" ", DOUBLES))));
+	}
+
+	@Test
+	public void testRandomDoublesFromReader() throws IOException {
+		Random random = new Random(1);
+		List<String> doubles = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			double value = Double.longBitsToDouble(random.nextLong());
+			if (Double.isNaN(value)) {
+				continue;
+			}
+			doubles.add(Double.toString(value));
+			doubles.add(String.format("%.17g", value));
+			doubles.add(String.format("%.3e", random.nextDouble() * Math.pow(10, random.nextInt(60) - 30)));
+			doubles.add(Double.toString(random.nextDouble()));
+			doubles.add(Double.toString(random.nextInt(1000) / 1000.0));
+		}
+		assertDoubles(doubles, UAITokenizer.tokenizer(new StringReader(String.join("\n", doubles))));
+	}
+
+	@Test
+	public void testIntegers() throws IOException {
+		try (UAITokenizer tokenizer = UAITokenizer.tokenizer(new StringReader(" 0 -7\t+7\n2147483647 -2147483648 12"))) {
+			assertEquals(0, tokenizer.nextInt());
+			assertEquals(-7, tokenizer.nextInt());
+			assertEquals(7, tokenizer.nextInt());
+			assertEquals(Integer.MAX_VALUE, tokenizer.nextInt());
+			assertEquals(Integer.MIN_VALUE, tokenizer.nextInt());
+			assertEquals(12, tokenizer.nextInt());
+			assertFalse(tokenizer.hasMoreTokens());
+		}
+		for (String notAnInt : new String[] {"2147483648", "-2147483649", "99999999999", "1.5", "x", "-"}) {
+			try (UAITokenizer tokenizer = UAITokenizer.tokenizer(new StringReader(notAnInt))) {
+				tokenizer.nextInt();
+				fail("Expected an exception for "+notAnInt);
+			}
+			catch (IllegalArgumentException illegalArgumentException) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testTokensStraddlingReaderRefills() throws IOException {
+		// the reader tokenizer refills a buffer of 8192 characters, so place tokens (including ones that need the slow path,
+		// which re-reads them from their start) across that boundary, and make one token longer than the buffer
+		for (int padding = 8170; padding < 8200; padding++) {
+			StringBuilder input = new StringBuilder();
+			for (int i = 0; i < padding; i++) {
+				input.append(' ');
+			}
+			input.append("0.12345678901234567890123 1e23 -12345 1.5e-7 9007199254740993");
+			List<String> doubles = Arrays.asList("0.12345678901234567890123", "1e23", "-12345", "1.5e-7", "9007199254740993");
+			assertDoubles(doubles, UAITokenizer.tokenizer(new StringReader(input.toString())));
+		}
+		StringBuilder longToken = new StringBuilder("0.");
+		for (int i = 0; i < 20000; i++) {
+			longToken.append((char) ('0' + i % 10));
+		}
+		assertDoubles(Arrays.asList(longToken.toString(), "2.5"), UAITokenizer.tokenizer(new StringReader(longToken+" 2.5")));
+	}
+
+	@Test
+	public void testTokensStraddlingMappedRegions() throws IOException {
+		List<String> tokens = new ArrayList<>(DOUBLES);
+		tokens.addAll(Arrays.asList("3", "-17", "2147483647"));
+		File file = File.createTempFile("uaitokenizer", ".uai");
+		try {
+			Files.write(file.toPath(), String.join(" \n", tokens).getBytes(StandardCharsets.US_ASCII));
+			for (long regionSize : new long[] {1, 2, 7, 16, 1000, 1L << 30}) {
+				try (UAITokenizer tokenizer = UAITokenizer.tokenizer(file, regionSize)) {
+					for (String token : DOUBLES) {
+						assertSameDouble(token, tokenizer.nextDouble());
+					}
+					assertEquals(3, tokenizer.nextInt());
+					assertEquals(-17, tokenizer.nextInt());
+					assertEquals(Integer.MAX_VALUE, tokenizer.nextInt());
+					assertFalse(tokenizer.hasMoreTokens());
+				}
+				try (UAITokenizer tokenizer = UAITokenizer.tokenizer(file, regionSize)) {
+					tokenizer.skipTokens(DOUBLES.size());
+					assertEquals(3, tokenizer.nextInt());
+					tokenizer.position(0);
+					assertEquals(DOUBLES.get(0), tokenizer.nextWord());
+				}
+			}
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	//
+	// PRIVATE
+	//
+	private static void assertDoubles(List<String> tokens, UAITokenizer tokenizer) throws IOException {
+		try {
+			for (String token : tokens) {
+				assertSameDouble(token, tokenizer.nextDouble());
+			}
+			assertFalse(tokenizer.hasMoreTokens());
+		}
+		finally {
+			tokenizer.close();
+		}
+	}
+
+	private static void assertSameDouble(String token, double actual) {
+		double expected = Double.parseDouble(token);
+		if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+			fail("For "+token+" expected "+expected+" but was "+actual);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.inference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.inference.QueryCanceledException;
+
+public class CancellationTokenTest {
+
+	@Test
+	public void testCancel() {
+		CancellationToken token = new CancellationToken();
+		AtomicInteger     runs  = new AtomicInteger();
+		token.onCancel(runs::incrementAndGet);
+		assertFalse(token.isCanceled());
+		token.throwIfCanceled();
+		
+		token.cancel();
+		token.cancel();
+		assertTrue(token.isCanceled());
+		assertEquals(1, runs.get());
+		try {
+			token.throwIfCanceled();
+			fail("Expected a QueryCanceledException");
+		}
+		catch (QueryCanceledException queryCanceledException) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testActionsRegisteredWithCanceledTokenRunImmediately() {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		AtomicInteger runs = new AtomicInteger();
+		token.onCancel(runs::incrementAndGet);
+		assertEquals(1, runs.get());
+	}
+	
+	@Test
+	public void testUnregisteredActionsDoNotRun() {
+		CancellationToken token = new CancellationToken();
+		AtomicInteger     runs  = new AtomicInteger();
+		Runnable unregister = token.onCancel(runs::incrementAndGet);
+		unregister.run();
+		token.cancel();
+		assertEquals(0, runs.get());
+	}
+	
+	@Test
+	public void testDeadline() throws InterruptedException {
+		try (CancellationToken token = CancellationToken.withTimeout(10, TimeUnit.MILLISECONDS)) {
+			AtomicInteger runs = new AtomicInteger();
+			token.onCancel(runs::incrementAndGet);
+			long giveUp = System.currentTimeMillis() + 10000;
+			while ( ! token.isCanceled() && System.currentTimeMillis() < giveUp) {
+				Thread.sleep(1);
+			}
+			assertTrue(token.isCanceled());
+			assertEquals(1, runs.get());
+		}
+	}
+	
+	@Test
+	public void testClosedTokenIsNotCanceledByItsDeadline() throws InterruptedException {
+		CancellationToken token = CancellationToken.withTimeout(10, TimeUnit.MILLISECONDS);
+		token.close();
+		Thread.sleep(200);
+		assertFalse(token.isCanceled());
+		
+		// but can still be canceled explicitly
+		token.cancel();
+		assertTrue(token.isCanceled());
+	}
+}
@@ -39,20 +39,34 @@ package com.sri.ai.test.praise.inference;
 
 import static com.sri.ai.expresso.helper.Expressions.parse;
 import static com.sri.ai.util.Util.getFirst;
+import static com.sri.ai.util.Util.list;
 import static com.sri.ai.util.Util.println;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 import java.util.List;
 
 import org.junit.Test;
 
 import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.grinder.api.Theory;
+import com.sri.ai.grinder.theory.compound.CompoundTheory;
+import com.sri.ai.grinder.theory.equality.EqualityTheory;
+import com.sri.ai.grinder.theory.propositional.PropositionalTheory;
 import com.sri.ai.praise.inference.HOGMQueryResult;
 import com.sri.ai.praise.inference.HOGMQueryRunner;
 
 public class HOGMQueryRunnerTest {
 	
+	private static final String ALARM_MODEL = 
+			"random earthquake : Boolean;\n" + 
+			"random burglary : Boolean;\n" + 
+			"random alarm : Boolean;\n" + 
+			"if earthquake then 0.01 else 0.99;\n" + 
+			"if burglary then 0.1 else 0.9;\n" + 
+			"if earthquake or burglary then if alarm then 0.9 else 0.1 else if alarm then 0.05 else 0.95;\n";
+	
 	@Test
 	public void linearRealArithmeticOnPosition() {
 		String model = 
@@ -90,4 +104,47 @@ public class HOGMQueryRunnerTest {
 		assertFalse(result.hasErrors());
 		assertEquals(parse("if event then 1 else 0"), result.getResult());
 	}
+	
+	@Test
+	public void cancelingDoesNotAffectLaterBatches() {
+		HOGMQueryRunner runner = new HOGMQueryRunner(ALARM_MODEL, "earthquake");
+		runner.cancelQuery();
+		
+		List<HOGMQueryResult> results = runner.processQueries(list("burglary", "alarm"));
+		assertEquals(2, results.size());
+		for (HOGMQueryResult result : results) {
+			assertFalse(result.hasErrors());
+			assertEquals(getFirst(new HOGMQueryRunner(ALARM_MODEL, result.getQueryString()).getResults()).getResult(), result.getResult());
+		}
+	}
+	
+	@Test
+	public void batchesOfQueriesOnOneRunnerAreSameAsOnFreshRunners() {
+		HOGMQueryRunner runner = new HOGMQueryRunner(ALARM_MODEL, "earthquake");
+		
+		List<HOGMQueryResult> firstBatch  = runner.processQueries(list("burglary"));
+		List<HOGMQueryResult> secondBatch = runner.processQueries(list("alarm", "earthquake"));
+		assertEquals(1, firstBatch.size());
+		assertEquals(2, secondBatch.size());
+		assertEquals(4, runner.getResults().size());
+		
+		for (HOGMQueryResult result : runner.getResults()) {
+			assertFalse(result.hasErrors());
+			assertEquals(getFirst(new HOGMQueryRunner(ALARM_MODEL, result.getQueryString()).getResults()).getResult(), result.getResult());
+		}
+	}
+	
+	@Test
+	public void settingTheoryRecreatesInferencer() {
+		HOGMQueryRunner runner = new HOGMQueryRunner(ALARM_MODEL, "earthquake");
+		
+		Theory theory = new CompoundTheory(new PropositionalTheory(), new EqualityTheory(true, true));
+		runner.setOptionalTheory(theory);
+		List<HOGMQueryResult> results = runner.processQueries(list("alarm"));
+		
+		assertSame(theory, runner.getQueryContext().getTheory());
+		assertEquals(1, results.size());
+		assertFalse(getFirst(results).hasErrors());
+		assertEquals(getFirst(new HOGMQueryRunner(ALARM_MODEL, "alarm").getResults()).getResult(), getFirst(results).getResult());
+	}
 }
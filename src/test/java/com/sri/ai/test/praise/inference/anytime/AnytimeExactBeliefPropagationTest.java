@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.inference.anytime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.LOOP_WITH_TAIL;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.bruteForceMarginal;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.read;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.inference.anytime.AnytimeExactBeliefPropagation;
+import com.sri.ai.praise.inference.anytime.Bound;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+
+public class AnytimeExactBeliefPropagationTest {
+	
+	@Test
+	public void testBoundsConvergeToExactMarginal() throws IOException {
+		UAIModel model = read(LOOP_WITH_TAIL);
+		
+		List<Map<Integer, Integer>> evidences = Arrays.asList(Collections.emptyMap(), Collections.singletonMap(3, 1));
+		for (Map<Integer, Integer> evidence : evidences) {
+			for (int query = 0; query < model.numberVariables(); query++) {
+				if (evidence.containsKey(query)) {
+					continue;
+				}
+				double[] exact = bruteForceMarginal(model, evidence, query);
+				
+				AnytimeExactBeliefPropagation anytime = new AnytimeExactBeliefPropagation(model, evidence, query);
+				double previousWidth = anytime.getBound().width();
+				assertEquals(1.0, previousWidth, 0);
+				while (anytime.hasNext()) {
+					Bound bound = anytime.next();
+					for (int i = 0; i < exact.length; i++) {
+						assertTrue(bound.lower(i) <= exact[i] + 1e-12 && exact[i] <= bound.upper(i) + 1e-12);
+					}
+					assertTrue(bound.width() <= previousWidth);
+					previousWidth = bound.width();
+				}
+				
+				Bound bound = anytime.getBound();
+				assertTrue(bound.isExact());
+				for (int i = 0; i < exact.length; i++) {
+					assertEquals(exact[i], bound.lower(i), 1e-12);
+					assertEquals(exact[i], bound.upper(i), 1e-12);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testStopsWhenTightEnoughOrCanceled() throws IOException {
+		UAIModel model = read(LOOP_WITH_TAIL);
+		
+		AnytimeExactBeliefPropagation anytime = new AnytimeExactBeliefPropagation(model, Collections.emptyMap(), 4);
+		CancellationToken canceled = new CancellationToken();
+		canceled.cancel();
+		assertFalse(anytime.solve(0, canceled).isExact());
+		assertEquals(0, anytime.numberExploredTables());
+		
+		assertTrue(anytime.solve(0, new CancellationToken()).isExact());
+		assertEquals(model.numberTables(), anytime.numberExploredTables());
+	}
+	
+	@Test
+	public void testTablesLargerThanTheMaximumAreNotBuilt() throws IOException {
+		UAIModel model = read(LOOP_WITH_TAIL);
+		double[] exact = bruteForceMarginal(model, Collections.emptyMap(), 4);
+		
+		// eliminating the loop needs tables of 12 entries (0, 1 and 3, or 1, 2 and 3)
+		AnytimeExactBeliefPropagation anytime = new AnytimeExactBeliefPropagation(model, Collections.emptyMap(), 4, 6);
+		Bound bound = anytime.solve(0, new CancellationToken());
+		assertFalse(anytime.hasNext());
+		assertFalse(bound.isExact());
+		assertEquals(model.numberTables(), anytime.numberExploredTables());
+		for (int i = 0; i < exact.length; i++) {
+			assertTrue(bound.lower(i) <= exact[i] + 1e-12 && exact[i] <= bound.upper(i) + 1e-12);
+		}
+		
+		anytime = new AnytimeExactBeliefPropagation(model, Collections.emptyMap(), 4, 12);
+		assertTrue(anytime.solve(0, new CancellationToken()).isExact());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.read;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.lang.grounded.common.EliminationHeuristic;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlan;
+import com.sri.ai.praise.lang.grounded.common.EliminationPlanner;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+
+public class EliminationPlannerTest {
+
+	@Test
+	public void testChain() throws IOException {
+		// 0 - 1 - 2 - 3 - 4 - 5, with ternary variables
+		StringBuilder uai = new StringBuilder("MARKOV\n6\n3 3 3 3 3 3\n5\n");
+		for (int i = 0; i < 5; i++) {
+			uai.append("2 "+i+" "+(i + 1)+"\n");
+		}
+		for (int i = 0; i < 5; i++) {
+			uai.append("9\n1 1 1 1 1 1 1 1 1\n");
+		}
+		UAIModel model = read(uai.toString());
+		
+		for (EliminationHeuristic heuristic : EliminationHeuristic.values()) {
+			EliminationPlan plan = EliminationPlanner.plan(model, heuristic);
+			assertEquals(heuristic, plan.getHeuristic());
+			assertIsOrderOf(plan, 0, 1, 2, 3, 4, 5);
+			assertEquals(1, plan.getInducedWidth());
+			assertEquals(9, plan.getPeakTableSize());
+			// every variable but the last one is eliminated with one neighbor
+			assertEquals(5 * 9 + 3, plan.getTotalTableSize());
+		}
+		
+		// evidence in the middle splits the chain
+		EliminationPlan plan = EliminationPlanner.plan(model, Collections.singleton(2), EliminationHeuristic.MIN_FILL);
+		assertIsOrderOf(plan, 0, 1, 3, 4, 5);
+		assertEquals(1, plan.getInducedWidth());
+		assertEquals(3 * 9 + 2 * 3, plan.getTotalTableSize());
+	}
+	
+	@Test
+	public void testGrid() throws IOException {
+		// a 3x3 grid of binary variables, whose treewidth is 3
+		int           n   = 3;
+		StringBuilder uai = new StringBuilder("MARKOV\n"+(n * n)+"\n");
+		for (int i = 0; i < n * n; i++) {
+			uai.append("2 ");
+		}
+		uai.append("\n"+(2 * n * (n - 1))+"\n");
+		for (int row = 0; row < n; row++) {
+			for (int column = 0; column < n; column++) {
+				if (column + 1 < n) {
+					uai.append("2 "+(row * n + column)+" "+(row * n + column + 1)+"\n");
+				}
+				if (row + 1 < n) {
+					uai.append("2 "+(row * n + column)+" "+((row + 1) * n + column)+"\n");
+				}
+			}
+		}
+		for (int i = 0; i < 2 * n * (n - 1); i++) {
+			uai.append("4\n1 2 3 4\n");
+		}
+		UAIModel model = read(uai.toString());
+		
+		for (EliminationHeuristic heuristic : EliminationHeuristic.values()) {
+			EliminationPlan plan = EliminationPlanner.plan(model, heuristic);
+			assertIsOrderOf(plan, 0, 1, 2, 3, 4, 5, 6, 7, 8);
+			assertEquals(n, plan.getInducedWidth());
+			assertEquals(1 << (n + 1), plan.getPeakTableSize());
+		}
+		
+		// conditioning on the center leaves a cycle of 8 variables, whose treewidth is 2
+		EliminationPlan plan = EliminationPlanner.bestPlan(model, Collections.singleton(4));
+		assertIsOrderOf(plan, 0, 1, 2, 3, 5, 6, 7, 8);
+		assertEquals(2, plan.getInducedWidth());
+		assertEquals(1 << 3, plan.getPeakTableSize());
+	}
+	
+	@Test
+	public void testCliqueWithEvidence() throws IOException {
+		// a clique of 5 variables with cardinalities 2 to 6, out of pairwise tables
+		StringBuilder uai = new StringBuilder("MARKOV\n5\n2 3 4 5 6\n10\n");
+		for (int i = 0; i < 5; i++) {
+			for (int j = i + 1; j < 5; j++) {
+				uai.append("2 "+i+" "+j+"\n");
+			}
+		}
+		for (int i = 0; i < 5; i++) {
+			for (int j = i + 1; j < 5; j++) {
+				uai.append((i + 2) * (j + 2)+"\n");
+				for (int k = 0; k < (i + 2) * (j + 2); k++) {
+					uai.append("1 ");
+				}
+				uai.append("\n");
+			}
+		}
+		UAIModel model = read(uai.toString());
+		
+		EliminationPlan plan = EliminationPlanner.plan(model, EliminationHeuristic.MIN_FILL);
+		assertIsOrderOf(plan, 0, 1, 2, 3, 4);
+		assertEquals(4, plan.getInducedWidth());
+		assertEquals(2 * 3 * 4 * 5 * 6, plan.getPeakTableSize());
+		
+		// evidence on two variables leaves a clique of 3
+		plan = EliminationPlanner.plan(model, new HashSet<>(Arrays.asList(1, 4)), EliminationHeuristic.MIN_FILL);
+		assertIsOrderOf(plan, 0, 2, 3);
+		assertEquals(2, plan.getInducedWidth());
+		assertEquals(2 * 4 * 5, plan.getPeakTableSize());
+		
+		// eliminating from a clique adds no fill, so ties are broken by variable index: 0 with 2 and 3, then 2 with 3, then 3
+		plan = EliminationPlanner.plan(model, new HashSet<>(Arrays.asList(1, 4)), EliminationHeuristic.WEIGHTED_MIN_FILL);
+		assertEquals(2 * 4 * 5 + 4 * 5 + 5, plan.getTotalTableSize());
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static void assertIsOrderOf(EliminationPlan plan, Integer... variableIndexes) {
+		Set<Integer> eliminated = new LinkedHashSet<>(plan.getOrder());
+		assertEquals(variableIndexes.length, plan.getOrder().size());
+		assertTrue(eliminated.equals(new HashSet<>(Arrays.asList(variableIndexes))));
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+
+public class FunctionTableTest {
+	
+	@Test
+	public void testIndexingOfMixedCardinalityTableIsSameAsNaiveEnumeration() {
+		// entries are multiples of 1/4, so that sums of them are exact
+		List<Double> entries = new ArrayList<>();
+		for (int i = 0; i < 2 * 3 * 4; i++) {
+			entries.add((i + 1) * 0.25);
+		}
+		FunctionTable table = new FunctionTable(Arrays.asList(2, 3, 4), entries);
+		
+		assertEquals(3, table.numberVariables());
+		assertEquals(24, table.numberEntries());
+		assertEquals(24, FunctionTable.numEntriesFor(Arrays.asList(2, 3, 4)));
+		assertEquals(12, table.stride(0));
+		assertEquals(4, table.stride(1));
+		assertEquals(1, table.stride(2));
+		
+		int naiveIndex = 0;
+		for (int a = 0; a < 2; a++) {
+			for (int b = 0; b < 3; b++) {
+				for (int c = 0; c < 4; c++) {
+					double expected = entries.get(naiveIndex);
+					assertEquals(naiveIndex, table.linearIndexOf(a, b, c));
+					assertEquals(expected, table.entryAt(a, b, c), 0);
+					assertEquals(expected, table.entryAtLinear(naiveIndex), 0);
+					assertEquals(expected, table.entryFor(Arrays.asList(a, b, c)), 0);
+					naiveIndex++;
+				}
+			}
+		}
+		
+		// every partial assignment (including the empty and the complete ones) sums the entries consistent with it
+		int[] cardinalities = {2, 3, 4};
+		for (int assigned = 0; assigned < 1 << 3; assigned++) {
+			for (int a = 0; a < 2; a++) {
+				for (int b = 0; b < 3; b++) {
+					for (int c = 0; c < 4; c++) {
+						int[]                 values        = {a, b, c};
+						Map<Integer, Integer> assignmentMap = new HashMap<>();
+						boolean               canonical     = true;
+						for (int v = 0; v < 3; v++) {
+							if ((assigned & (1 << v)) != 0) {
+								assignmentMap.put(v, values[v]);
+							}
+							else if (values[v] != 0) {
+								// only one assignment per value of the assigned variables
+								canonical = false;
+							}
+						}
+						if (canonical) {
+							double expected = 0;
+							for (int i = 0; i < cardinalities[0]; i++) {
+								for (int j = 0; j < cardinalities[1]; j++) {
+									for (int k = 0; k < cardinalities[2]; k++) {
+										int[] entryValues = {i, j, k};
+										boolean consistent = true;
+										for (Map.Entry<Integer, Integer> assignment : assignmentMap.entrySet()) {
+											consistent = consistent && entryValues[assignment.getKey()] == assignment.getValue();
+										}
+										if (consistent) {
+											expected += entries.get((i * 3 + j) * 4 + k);
+										}
+									}
+								}
+							}
+							assertEquals("assignment "+assignmentMap, expected, table.valueFor(assignmentMap), 0);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testTableWithoutVariables() {
+		assertEquals(1, FunctionTable.numEntriesFor(Collections.emptyList()));
+		
+		FunctionTable table = new FunctionTable(Collections.emptyList(), Arrays.asList(0.75));
+		assertEquals(0, table.numberVariables());
+		assertEquals(1, table.numberEntries());
+		assertEquals(0, table.linearIndexOf());
+		assertEquals(0.75, table.entryAt(), 0);
+		assertEquals(0.75, table.entryAtLinear(0), 0);
+		assertEquals(0.75, table.entryFor(Collections.emptyList()), 0);
+		assertEquals(0.75, table.valueFor(Collections.emptyMap()), 0);
+		
+		try {
+			new FunctionTable(Collections.emptyList(), new double[0]);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException illegalArgumentException) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.markov;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.read;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.lang.grounded.markov.FactorTable;
+import com.sri.ai.praise.lang.grounded.markov.FactorTableUtil;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+
+public class FactorTableUtilTest {
+	
+	// only the cardinalities of the variables are used
+	private static final String NETWORK = "MARKOV\n5\n2 3 2 4 1\n1\n1 0\n2\n1 1\n";
+	
+	private Random random = new Random(1);
+
+	@Test
+	public void testProductIsSameAsNaiveProduct() throws IOException {
+		UAIModel network = read(NETWORK);
+		
+		List<FactorTable> factors = Arrays.asList(
+				randomFactor(network, 2, 0),
+				randomFactor(network, 1, 3, 0),
+				randomFactor(network, 3),
+				randomFactor(network, 4, 1));
+		for (List<Integer> variableIndexes : Arrays.asList(Arrays.asList(0, 1, 2, 3, 4), Arrays.asList(3, 4, 1, 0, 2), Arrays.asList(2, 0, 3, 1, 4))) {
+			FactorTable product = FactorTableUtil.product(network, variableIndexes, factors);
+			assertEquals(variableIndexes, product.getVariableIndexes());
+			assertArrayEquals(naiveProduct(network, variableIndexes, factors), product.getTable().getEntriesArray(), 0);
+		}
+		
+		// a product on no variables
+		FactorTable scalar = new FactorTable(Collections.emptyList(), new FunctionTable(Collections.emptyList(), new double[] {0.5}));
+		FactorTable product = FactorTableUtil.product(network, Collections.emptyList(), Arrays.asList(scalar, scalar));
+		assertArrayEquals(new double[] {0.25}, product.getTable().getEntriesArray(), 0);
+	}
+	
+	@Test
+	public void testProductRejectsMissingVariables() throws IOException {
+		UAIModel network = read(NETWORK);
+		try {
+			FactorTableUtil.product(network, Arrays.asList(0, 1), Arrays.asList(randomFactor(network, 1, 3)));
+			fail("Expected an exception for a factor variable missing from the product");
+		}
+		catch (IllegalArgumentException illegalArgumentException) {
+			// expected
+		}
+	}
+	
+	@Test
+	public void testSumOutIsSameAsNaiveSumOut() throws IOException {
+		UAIModel    network = read(NETWORK);
+		FactorTable factor  = randomFactor(network, 2, 1, 3, 0);
+		for (int position = 0; position < factor.getVariableIndexes().size(); position++) {
+			int         variableIndex = factor.getVariableIndexes().get(position);
+			FactorTable summedOut     = FactorTableUtil.sumOut(network, factor, variableIndex);
+			
+			List<Integer> remaining = new ArrayList<>(factor.getVariableIndexes());
+			remaining.remove(position);
+			assertEquals(remaining, summedOut.getVariableIndexes());
+			assertArrayEquals(naiveSumOut(factor.getTable(), position), summedOut.getTable().getEntriesArray(), 0);
+		}
+	}
+	
+	@Test
+	public void testSumOutAndNormalizeIsSameAsNaiveLoop() throws IOException {
+		UAIModel    network = read(NETWORK);
+		FactorTable factor  = randomFactor(network, 1, 3, 0);
+		// an assignment to the variables other than the middle one whose entries sum to zero
+		double[] entries = factor.getTable().getEntriesArray().clone();
+		for (int v = 0; v < 4; v++) {
+			entries[factor.getTable().linearIndexOf(2, v, 1)] = 0;
+		}
+		FunctionTable table         = new FunctionTable(factor.getTable().getVariableCardinalities(), entries);
+		int[]         cardinalities = {3, 4, 2};
+		for (int position = 0; position < cardinalities.length; position++) {
+			double[] summedOut  = new double[table.numberEntries() / cardinalities[position]];
+			double[] normalized = new double[table.numberEntries()];
+			FactorTableUtil.sumOutAndNormalize(cardinalities, entries, position, Double.MIN_NORMAL, summedOut, normalized);
+			
+			double[] expectedSummedOut = naiveSumOut(table, position);
+			assertArrayEquals(expectedSummedOut, summedOut, 0);
+			
+			// normalized entries are laid out with the summed out variable last
+			int[] values = new int[cardinalities.length];
+			for (int i = 0; i < normalized.length; i++) {
+				int[] otherValues = new int[cardinalities.length - 1];
+				for (int j = 0, k = 0; j < cardinalities.length; j++) {
+					if (j != position) {
+						otherValues[k++] = values[j];
+					}
+				}
+				double sum      = expectedSummedOut[linearIndex(otherValues, remove(cardinalities, position))];
+				double expected = sum == 0 ? Double.MIN_NORMAL : table.entryAt(values) / sum;
+				assertEquals(expected, normalized[linearIndex(append(otherValues, values[position]), append(remove(cardinalities, position), cardinalities[position]))], 0);
+				next(values, cardinalities);
+			}
+		}
+		
+		// a table on the summed out variable alone (as for a CPT without parents) summing to zero
+		double[] summedOut  = new double[1];
+		double[] normalized = new double[3];
+		FactorTableUtil.sumOutAndNormalize(new int[] {3}, new double[3], 0, Double.MIN_NORMAL, summedOut, normalized);
+		assertArrayEquals(new double[] {0}, summedOut, 0);
+		assertArrayEquals(new double[] {Double.MIN_NORMAL, Double.MIN_NORMAL, Double.MIN_NORMAL}, normalized, 0);
+	}
+	
+	//
+	// PRIVATE
+	//
+	private FactorTable randomFactor(UAIModel network, Integer... variableIndexes) {
+		List<Integer> cardinalities = new ArrayList<>();
+		for (Integer varIdx : variableIndexes) {
+			cardinalities.add(network.cardinality(varIdx));
+		}
+		double[] entries = new double[FunctionTable.numEntriesFor(cardinalities)];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = random.nextDouble();
+		}
+		FactorTable result = new FactorTable(Arrays.asList(variableIndexes), new FunctionTable(cardinalities, entries));
+		return result;
+	}
+	
+	private static double[] naiveProduct(UAIModel network, List<Integer> variableIndexes, List<FactorTable> factors) {
+		int[] cardinalities = new int[variableIndexes.size()];
+		for (int j = 0; j < cardinalities.length; j++) {
+			cardinalities[j] = network.cardinality(variableIndexes.get(j));
+		}
+		int[]    values = new int[cardinalities.length];
+		double[] result = new double[numberEntries(cardinalities)];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = 1;
+			for (FactorTable factor : factors) {
+				int[] factorValues = new int[factor.getVariableIndexes().size()];
+				for (int k = 0; k < factorValues.length; k++) {
+					factorValues[k] = values[variableIndexes.indexOf(factor.getVariableIndexes().get(k))];
+				}
+				result[i] *= factor.getTable().entryAt(factorValues);
+			}
+			next(values, cardinalities);
+		}
+		return result;
+	}
+	
+	private static double[] naiveSumOut(FunctionTable table, int position) {
+		int[] cardinalities = new int[table.numberVariables()];
+		for (int j = 0; j < cardinalities.length; j++) {
+			cardinalities[j] = table.cardinality(j);
+		}
+		int[]    remainingCardinalities = remove(cardinalities, position);
+		int[]    values                 = new int[cardinalities.length];
+		double[] result                 = new double[numberEntries(remainingCardinalities)];
+		for (int i = 0; i < table.numberEntries(); i++) {
+			int[] otherValues = new int[cardinalities.length - 1];
+			for (int j = 0, k = 0; j < cardinalities.length; j++) {
+				if (j != position) {
+					otherValues[k++] = values[j];
+				}
+			}
+			result[linearIndex(otherValues, remainingCardinalities)] += table.entryAt(values);
+			next(values, cardinalities);
+		}
+		return result;
+	}
+	
+	private static void next(int[] values, int[] cardinalities) {
+		for (int j = values.length - 1; j >= 0; j--) {
+			if (++values[j] < cardinalities[j]) {
+				return;
+			}
+			values[j] = 0;
+		}
+	}
+	
+	private static int linearIndex(int[] values, int[] cardinalities) {
+		int result = 0;
+		for (int j = 0; j < values.length; j++) {
+			result = result * cardinalities[j] + values[j];
+		}
+		return result;
+	}
+	
+	private static int numberEntries(int[] cardinalities) {
+		int result = 1;
+		for (int cardinality : cardinalities) {
+			result *= cardinality;
+		}
+		return result;
+	}
+	
+	private static int[] remove(int[] array, int position) {
+		int[] result = new int[array.length - 1];
+		System.arraycopy(array, 0, result, 0, position);
+		System.arraycopy(array, position + 1, result, position, result.length - position);
+		return result;
+	}
+	
+	private static int[] append(int[] array, int value) {
+		int[] result = Arrays.copyOf(array, array.length + 1);
+		result[array.length] = value;
+		return result;
+	}
+}
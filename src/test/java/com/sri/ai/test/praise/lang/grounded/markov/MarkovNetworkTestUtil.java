@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.markov;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModelReader;
+
+/**
+ * Models and a brute force oracle shared by the tests of the solvers of Markov networks.
+ */
+public class MarkovNetworkTestUtil {
+	
+	// a loop 0-1-2-3-0 with a tail 3-4, variable 1 having 3 values
+	private static final String LOOP_WITH_TAIL_TABLES = 
+			"6\n1 0\n2 0 1\n2 1 2\n2 2 3\n2 0 3\n2 3 4\n" +
+			"2\n0.3 0.7\n" +
+			"6\n1 2 3 4 5 6\n" +
+			"6\n0.5 1 2 1 0.1 3\n" +
+			"4\n4 1 1 4\n" +
+			"4\n1 2 3 0.5\n" +
+			"4\n0.9 0.1 0.2 0.8\n";
+	
+	/**
+	 * A loop 0-1-2-3-0 with a tail 3-4, variable 1 having 3 values.
+	 */
+	public static final String LOOP_WITH_TAIL = "MARKOV\n5\n2 3 2 2 2\n" + LOOP_WITH_TAIL_TABLES;
+	
+	/**
+	 * Same as {@link #LOOP_WITH_TAIL}, with an isolated variable 5 in no table.
+	 */
+	public static final String LOOP_WITH_TAIL_AND_ISOLATED_VARIABLE = "MARKOV\n6\n2 3 2 2 2 2\n" + LOOP_WITH_TAIL_TABLES;
+	
+	public static UAIModel read(String uai) throws IOException {
+		return UAIModelReader.read(new StringReader(uai));
+	}
+	
+	/**
+	 * Computes the partition function of a model given evidence, and the unnormalized marginals of all its variables,
+	 * by enumerating all the assignments to its variables.
+	 * @param model
+	 * @param evidence
+	 *        a map from variable index to value index.
+	 * @param unnormalizedMarginals
+	 *        an array with room for the unnormalized marginal of each variable, which is set by this method.
+	 * @return the partition function.
+	 */
+	public static double bruteForce(UAIModel model, Map<Integer, Integer> evidence, double[][] unnormalizedMarginals) {
+		double result = 0;
+		for (int i = 0; i < unnormalizedMarginals.length; i++) {
+			unnormalizedMarginals[i] = new double[model.cardinality(i)];
+		}
+		int[]   values = new int[model.numberVariables()];
+		boolean done   = false;
+		while (!done) {
+			boolean consistent = true;
+			for (Map.Entry<Integer, Integer> entry : evidence.entrySet()) {
+				consistent = consistent && values[entry.getKey()] == entry.getValue();
+			}
+			if (consistent) {
+				double product = 1;
+				for (int t = 0; t < model.numberTables(); t++) {
+					Map<Integer, Integer> assignment = new LinkedHashMap<>();
+					for (Integer varIdx : model.getVariableIndexesForTable(t)) {
+						assignment.put(assignment.size(), values[varIdx]);
+					}
+					product *= model.getTable(t).valueFor(assignment);
+				}
+				result += product;
+				for (int i = 0; i < values.length; i++) {
+					unnormalizedMarginals[i][values[i]] += product;
+				}
+			}
+			done = true;
+			for (int i = values.length - 1; i >= 0; i--) {
+				if (++values[i] < model.cardinality(i)) {
+					done = false;
+					break;
+				}
+				values[i] = 0;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the marginal of the given variable given evidence, by brute force (see {@link #bruteForce(UAIModel, Map, double[][])}).
+	 */
+	public static double[] bruteForceMarginal(UAIModel model, Map<Integer, Integer> evidence, int query) {
+		double[][] unnormalizedMarginals = new double[model.numberVariables()][];
+		double     partitionFunction     = bruteForce(model, evidence, unnormalizedMarginals);
+		double[]   result                = unnormalizedMarginals[query];
+		for (int i = 0; i < result.length; i++) {
+			result[i] /= partitionFunction;
+		}
+		return result;
+	}
+}
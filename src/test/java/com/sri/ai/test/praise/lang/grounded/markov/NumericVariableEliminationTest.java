@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.LOOP_WITH_TAIL_AND_ISOLATED_VARIABLE;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.bruteForce;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.read;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.inference.CancellationToken;
+import com.sri.ai.praise.inference.QueryCanceledException;
+import com.sri.ai.praise.lang.grounded.markov.NumericVariableElimination;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+
+public class NumericVariableEliminationTest {
+	
+	@Test
+	public void testPartitionFunctionAndMarginals() throws IOException {
+		UAIModel model = read(LOOP_WITH_TAIL_AND_ISOLATED_VARIABLE);
+		
+		List<Map<Integer, Integer>> evidences = Arrays.asList(Collections.emptyMap(), Collections.singletonMap(3, 1), Collections.singletonMap(1, 2));
+		for (Map<Integer, Integer> evidence : evidences) {
+			double[][] unnormalizedMarginals = new double[model.numberVariables()][];
+			double     partitionFunction     = bruteForce(model, evidence, unnormalizedMarginals);
+			
+			NumericVariableElimination ve = new NumericVariableElimination(model, evidence);
+			assertEquals(Math.log10(partitionFunction), ve.log10PartitionFunction(), 1e-12);
+			
+			Map<Integer, List<Double>> marginals = ve.marginals();
+			assertEquals(model.numberVariables(), marginals.size());
+			for (int varIdx = 0; varIdx < model.numberVariables(); varIdx++) {
+				for (int valueIdx = 0; valueIdx < model.cardinality(varIdx); valueIdx++) {
+					assertEquals(unnormalizedMarginals[varIdx][valueIdx] / partitionFunction, marginals.get(varIdx).get(valueIdx), 1e-12);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testCancellation() throws IOException {
+		UAIModel model = read(LOOP_WITH_TAIL_AND_ISOLATED_VARIABLE);
+		
+		CancellationToken canceled = new CancellationToken();
+		canceled.cancel();
+		try {
+			new NumericVariableElimination(model, Collections.emptyMap(), canceled);
+			fail("Expected the elimination to be canceled");
+		}
+		catch (QueryCanceledException queryCanceledException) {
+			// expected
+		}
+		
+		// canceled once the partition function is computed, but before the marginals are
+		CancellationToken          cancellationToken = new CancellationToken();
+		NumericVariableElimination ve                = new NumericVariableElimination(model, Collections.emptyMap(), cancellationToken);
+		cancellationToken.cancel();
+		try {
+			ve.marginals();
+			fail("Expected the marginals to be canceled");
+		}
+		catch (QueryCanceledException queryCanceledException) {
+			// expected
+		}
+		
+		double[][] unnormalizedMarginals = new double[model.numberVariables()][];
+		double     partitionFunction     = bruteForce(model, Collections.emptyMap(), unnormalizedMarginals);
+		assertEquals(Math.log10(partitionFunction), ve.log10PartitionFunction(), 1e-12);
+	}
+	
+	@Test
+	public void testLogSpaceStability() throws IOException {
+		// a chain of 1000 variables whose partition function, 2 * 0.002^999, underflows doubles
+		int           n   = 1000;
+		StringBuilder uai = new StringBuilder("MARKOV\n"+n+"\n");
+		for (int i = 0; i < n; i++) {
+			uai.append("2 ");
+		}
+		uai.append("\n"+(n - 1)+"\n");
+		for (int i = 0; i + 1 < n; i++) {
+			uai.append("2 "+i+" "+(i + 1)+"\n");
+		}
+		for (int i = 0; i + 1 < n; i++) {
+			uai.append("4\n0.001 0.001 0.001 0.001\n");
+		}
+		UAIModel model = read(uai.toString());
+		
+		NumericVariableElimination ve = new NumericVariableElimination(model, Collections.emptyMap());
+		assertEquals(Math.log10(2) + (n - 1) * Math.log10(0.002), ve.log10PartitionFunction(), 1e-9);
+		assertEquals(0.5, ve.marginals().get(n / 2).get(0), 1e-12);
+	}
+}
@@ -38,8 +38,10 @@
 package com.sri.ai.test.praise.lang.grounded.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -177,5 +179,269 @@ public class HOGModelGroundingTest {
 		
 		assertEquals(expected, outputBuffer.toString());
 	}
-
+	
+	@Test
+	public void testBulkListener() {
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add("random earthquake : Boolean;");
+		sj.add("random burglary : Boolean;");
+		sj.add("random alarm : Boolean;");
+		sj.add("if earthquake then if burglary then alarm 0.95 else alarm 0.6 else if burglary then alarm 0.9 else alarm 0.01;");
+		sj.add("earthquake 0.01;");
+		
+		HOGMParserWrapper parser          = new HOGMParserWrapper();
+		ParsedHOGModel    parsedModel     = parser.parseModel(sj.toString());
+		FactorsAndTypes   factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+		
+		List<String> perValueTables = new ArrayList<>();
+		HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new AbstractTestListener() {
+			StringJoiner table;
+			@Override
+			public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+				if (isFirstValue) {
+					table = new StringJoiner(" ");
+				}
+				table.add(""+value.doubleValue());
+				if (isLastValue) {
+					perValueTables.add(table.toString());
+				}
+			}
+		});
+		
+		List<String> bulkTables = new ArrayList<>();
+		HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new BulkTestListener() {
+			@Override
+			public void factorValues(int factorIndex, double[] values) {
+				assertEquals(bulkTables.size(), factorIndex);
+				StringJoiner table = new StringJoiner(" ");
+				for (double value : values) {
+					table.add(""+value);
+				}
+				bulkTables.add(table.toString());
+			}
+		});
+		
+		assertEquals(2, perValueTables.size());
+		assertEquals(perValueTables, bulkTables);
+	}
+	
+	@Test
+	public void testRelationalRandomVariables() {
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add("sort People : 3, ann, bob;");
+		sj.add("random smokes : People -> Boolean;");
+		sj.add("random cancer : People -> Boolean;");
+		sj.add("for all X in People : if smokes(X) then if cancer(X) then 0.9 else 0.1 else if cancer(X) then 0.2 else 0.8;");
+		
+		HOGMParserWrapper parser          = new HOGMParserWrapper();
+		ParsedHOGModel    parsedModel     = parser.parseModel(sj.toString());
+		FactorsAndTypes   factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+		
+		List<Integer> cardinalities = new ArrayList<>();
+		List<String>  participants  = new ArrayList<>();
+		List<String>  tables        = new ArrayList<>();
+		HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new BulkTestListener() {
+			@Override
+			public void groundVariableCardinality(int variableIndex, int cardinality) {
+				cardinalities.add(cardinality);
+			}
+			@Override
+			public void factorParticipants(int factorIndex, int[] variableIndexes) {
+				participants.add(Arrays.toString(variableIndexes));
+			}
+			@Override
+			public void factorValues(int factorIndex, double[] values) {
+				tables.add(Arrays.toString(values));
+			}
+		});
+		
+		// one ground variable per person for each relational random variable and one factor per person
+		assertEquals(Arrays.asList(2, 2, 2, 2, 2, 2), cardinalities);
+		assertEquals(Arrays.asList("[0, 3]", "[1, 4]", "[2, 5]"), participants);
+		// smokes(X) varies slowest, and false comes before true
+		String table = "[0.8, 0.2, 0.1, 0.9]";
+		assertEquals(Arrays.asList(table, table, table), tables);
+	}
+	
+	@Test
+	public void testParallelGroundingIsSameAsSequentialGrounding() {
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add("sort People : 4, ann, bob;");
+		sj.add("random smokes : People -> Boolean;");
+		sj.add("random friends : People x People -> Boolean;");
+		sj.add("random epidemic : Boolean;");
+		sj.add("random alarm : 1..5;");
+		sj.add("for all X in People : if epidemic then if smokes(X) then 0.7 else 0.3 else if smokes(X) then 0.4 else 0.6;");
+		sj.add("for all X in People : for all Y in People : if friends(X, Y) and smokes(X) then if smokes(Y) then 0.9 else 0.1 else 0.5;");
+		sj.add("if epidemic then alarm > 3 else alarm < 2;");
+		sj.add("epidemic 0.01;");
+		
+		HOGMParserWrapper parser          = new HOGMParserWrapper();
+		ParsedHOGModel    parsedModel     = parser.parseModel(sj.toString());
+		FactorsAndTypes   factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+		List<Expression>  evidence        = Arrays.asList(Expressions.parse("epidemic"));
+		
+		boolean useParallelGrounding = HOGModelGrounding.useParallelGrounding;
+		try {
+			HOGModelGrounding.useParallelGrounding = false;
+			List<String> sequentialCalls     = new ArrayList<>();
+			List<String> sequentialBulkCalls = new ArrayList<>();
+			HOGModelGrounding.ground(factorsAndTypes, evidence, new RecordingListener(sequentialCalls));
+			HOGModelGrounding.ground(factorsAndTypes, evidence, new RecordingBulkListener(sequentialBulkCalls));
+			
+			HOGModelGrounding.useParallelGrounding = true;
+			List<String> parallelCalls     = new ArrayList<>();
+			List<String> parallelBulkCalls = new ArrayList<>();
+			HOGModelGrounding.ground(factorsAndTypes, evidence, new RecordingListener(parallelCalls));
+			HOGModelGrounding.ground(factorsAndTypes, evidence, new RecordingBulkListener(parallelBulkCalls));
+			
+			// 4 instances of the first lifted factor, 16 of the second, and two plain factors
+			assertTrue(sequentialCalls.contains("numberFactors(22)"));
+			assertEquals(sequentialCalls, parallelCalls);
+			assertEquals(sequentialBulkCalls, parallelBulkCalls);
+		}
+		finally {
+			HOGModelGrounding.useParallelGrounding = useParallelGrounding;
+		}
+	}
+	
+	@Test
+	public void testReusedResidualBlocksAreSameAsFullGrounding() {
+		// the residual expressions for x > 2 (and for y < 3 within them) recur, so their grounded blocks are reused
+		StringJoiner sj = new StringJoiner("\n");
+		sj.add("random x : 1..5;");
+		sj.add("random y : 1..4;");
+		sj.add("random z : Boolean;");
+		sj.add("random w : Boolean;");
+		sj.add("if x > 2 then if y < 3 then if z then 0.2 else if w then 0.3 else 0.5 else if z and w then 0.6 else 0.4 else if z then 0.7 else 0.1;");
+		sj.add("if z then if x = y then 0.8 else 0.35 else if w then 0.25 else 0.15;");
+		
+		HOGMParserWrapper parser          = new HOGMParserWrapper();
+		ParsedHOGModel    parsedModel     = parser.parseModel(sj.toString());
+		FactorsAndTypes   factorsAndTypes = new ExpressionFactorsAndTypes(parsedModel);
+		
+		boolean useContextSensitiveGrounding = HOGModelGrounding.useContextSensitiveGrounding;
+		try {
+			HOGModelGrounding.useContextSensitiveGrounding = false;
+			List<String> fullGroundingCalls = new ArrayList<>();
+			HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new RecordingListener(fullGroundingCalls));
+			
+			HOGModelGrounding.useContextSensitiveGrounding = true;
+			List<String> contextSensitiveGroundingCalls = new ArrayList<>();
+			HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new RecordingListener(contextSensitiveGroundingCalls));
+			
+			// 5 x 4 x 2 x 2 values for the first factor and 2 x 5 x 4 x 2 for the second one
+			assertEquals(160, fullGroundingCalls.stream().filter(call -> call.startsWith("factorValue(")).count());
+			assertEquals(fullGroundingCalls, contextSensitiveGroundingCalls);
+			
+			// buffered runs of reused blocks are replayed in bulk
+			List<String> fullGroundingTables = new ArrayList<>();
+			List<String> bulkTables          = new ArrayList<>();
+			HOGModelGrounding.useContextSensitiveGrounding = false;
+			HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new AbstractTestListener() {
+				List<Double> table = new ArrayList<>();
+				@Override
+				public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+					table.add(value.doubleValue());
+					if (isLastValue) {
+						fullGroundingTables.add(table.toString());
+						table.clear();
+					}
+				}
+			});
+			HOGModelGrounding.useContextSensitiveGrounding = true;
+			HOGModelGrounding.ground(factorsAndTypes, new ArrayList<>(), new BulkTestListener() {
+				@Override
+				public void factorValues(int factorIndex, double[] values) {
+					bulkTables.add(Arrays.toString(values));
+				}
+			});
+			assertEquals(2, fullGroundingTables.size());
+			assertEquals(fullGroundingTables, bulkTables);
+		}
+		finally {
+			HOGModelGrounding.useContextSensitiveGrounding = useContextSensitiveGrounding;
+		}
+	}
+	
+	/**
+	 * Records every call it receives, in order.
+	 */
+	private static class RecordingListener implements HOGModelGrounding.Listener {
+		protected List<String> calls;
+		
+		RecordingListener(List<String> calls) {
+			this.calls = calls;
+		}
+		@Override
+		public void numberGroundVariables(int number) {
+			calls.add("numberGroundVariables("+number+")");
+		}
+		@Override
+		public void groundVariableCardinality(int variableIndex, int cardinality) {
+			calls.add("groundVariableCardinality("+variableIndex+", "+cardinality+")");
+		}
+		@Override
+		public void numberFactors(int number) {
+			calls.add("numberFactors("+number+")");
+		}
+		@Override
+		public void factorParticipants(int factorIndex, int[] variableIndexes) {
+			calls.add("factorParticipants("+factorIndex+", "+Arrays.toString(variableIndexes)+")");
+		}
+		@Override
+		public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+			calls.add("factorValue("+numberFactorValues+", "+isFirstValue+", "+isLastValue+", "+value+")");
+		}
+		@Override
+		public void evidence(int variableIndex, int valueIndex) {
+			calls.add("evidence("+variableIndex+", "+valueIndex+")");
+		}
+		@Override
+		public void groundingComplete() {
+			calls.add("groundingComplete()");
+		}
+	}
+	
+	private static class RecordingBulkListener extends RecordingListener implements HOGModelGrounding.BulkListener {
+		RecordingBulkListener(List<String> calls) {
+			super(calls);
+		}
+		@Override
+		public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+			throw new UnsupportedOperationException();
+		}
+		@Override
+		public void factorValues(int factorIndex, double[] values) {
+			calls.add("factorValues("+factorIndex+", "+Arrays.toString(values)+")");
+		}
+	}
+	
+	private static abstract class AbstractTestListener implements HOGModelGrounding.Listener {
+		@Override
+		public void numberGroundVariables(int number) {
+		}
+		@Override
+		public void groundVariableCardinality(int variableIndex, int cardinality) {
+		}
+		@Override
+		public void numberFactors(int number) {
+		}
+		@Override
+		public void factorParticipants(int factorIndex, int[] variableIndexes) {
+		}
+		@Override
+		public void evidence(int variableIndex, int valueIndex) {
+		}
+		@Override
+		public void groundingComplete() {
+		}
+	}
+	
+	private static abstract class BulkTestListener extends AbstractTestListener implements HOGModelGrounding.BulkListener {
+		@Override
+		public void factorValue(int numberFactorValues, boolean isFirstValue, boolean isLastValue, Rational value) {
+			throw new UnsupportedOperationException();
+		}
+	}
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.lang.grounded.transform;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.LOOP_WITH_TAIL;
+import static com.sri.ai.test.praise.lang.grounded.markov.MarkovNetworkTestUtil.read;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.lang.grounded.bayes.ConditionalProbabilityTable;
+import com.sri.ai.praise.lang.grounded.transform.XFormMarkovToBayes;
+
+/**
+ * Pins the CPTs, and the order they are output in, of the default transformation 
+ * (min neighbors, ties broken in favor of the variable appearing first in the factors).
+ */
+public class XFormMarkovToBayesTest {
+
+	@Test
+	public void testLoopWithTail() throws IOException {
+		// 4 has the fewest neighbors, then all remaining variables tie and 0 appears first (in the unary factor),
+		// then 1, 2 and 3 tie and 1 appears first (in the factor on 1 and 2)
+		List<ConditionalProbabilityTable> cpts = transform(LOOP_WITH_TAIL);
+		assertEquals(5, cpts.size());
+		assertCPT(cpts.get(0), 4, Arrays.asList(3), Arrays.asList(2, 2), 
+				0.9, 0.1, 0.2, 0.8);
+		assertCPT(cpts.get(1), 0, Arrays.asList(1, 3), Arrays.asList(3, 2, 2), 
+				0.034482758620689655, 0.9655172413793103, 0.3, 0.7, 0.05405405405405406, 0.9459459459459459, 
+				0.4067796610169491, 0.5932203389830508, 0.06666666666666667, 0.9333333333333333, 0.46153846153846156, 0.5384615384615384);
+		assertCPT(cpts.get(2), 1, Arrays.asList(2, 3), Arrays.asList(2, 2, 3), 
+				0.15591397849462366, 0.7956989247311829, 0.04838709677419355, 0.13717421124828533, 0.8093278463648834, 0.05349794238683127, 
+				0.14427860696517414, 0.18407960199004977, 0.6716417910447761, 0.12012012012012013, 0.1771771771771772, 0.7027027027027027);
+		assertCPT(cpts.get(3), 2, Arrays.asList(3), Arrays.asList(2, 2), 
+				0.6492146596858639, 0.3507853403141361, 0.09866017052375152, 0.9013398294762484);
+		assertCPT(cpts.get(4), 3, Collections.emptyList(), Arrays.asList(2), 
+				0.6993775173928963, 0.30062248260710367);
+	}
+	
+	@Test
+	public void testTiesAreBrokenByFirstAppearanceInFactors() throws IOException {
+		// a cycle 2-1-0-3-2 in which all variables tie, whose first factor lists 2 first
+		List<ConditionalProbabilityTable> cpts = transform(
+				"MARKOV\n4\n2 2 2 2\n4\n2 2 1\n2 1 0\n2 0 3\n2 3 2\n" +
+				"4\n1 2 3 4\n4\n1 2 3 4\n4\n1 2 3 4\n4\n1 2 3 4\n");
+		assertEquals(4, cpts.size());
+		assertCPT(cpts.get(0), 2, Arrays.asList(1, 3), Arrays.asList(2, 2, 2), 
+				0.14285714285714285, 0.8571428571428571, 0.2, 0.8, 0.2, 0.8, 0.2727272727272727, 0.7272727272727273);
+		assertCPT(cpts.get(1), 1, Arrays.asList(0, 3), Arrays.asList(2, 2, 2), 
+				0.1891891891891892, 0.8108108108108109, 0.18518518518518517, 0.8148148148148148, 
+				0.25925925925925924, 0.7407407407407407, 0.2542372881355932, 0.7457627118644068);
+		assertCPT(cpts.get(2), 0, Arrays.asList(3), Arrays.asList(2, 2), 
+				0.18592964824120603, 0.8140703517587939, 0.2555205047318612, 0.7444794952681388);
+		assertCPT(cpts.get(3), 3, Collections.emptyList(), Arrays.asList(2), 
+				0.2388955582232893, 0.7611044417767107);
+	}
+	
+	@Test
+	public void testParentAssignmentsSummingToZero() throws IOException {
+		List<ConditionalProbabilityTable> cpts = transform(
+				"MARKOV\n3\n2 2 2\n2\n2 0 1\n2 1 2\n" +
+				"4\n0 1 0 2\n4\n1 1 1 1\n");
+		assertEquals(3, cpts.size());
+		assertCPT(cpts.get(0), 0, Arrays.asList(1), Arrays.asList(2, 2), 
+				Double.MIN_NORMAL, Double.MIN_NORMAL, 0.3333333333333333, 0.6666666666666666);
+		assertCPT(cpts.get(1), 1, Arrays.asList(2), Arrays.asList(2, 2), 
+				0.0, 1.0, 0.0, 1.0);
+		assertCPT(cpts.get(2), 2, Collections.emptyList(), Arrays.asList(2), 
+				0.5, 0.5);
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static List<ConditionalProbabilityTable> transform(String uai) throws IOException {
+		List<ConditionalProbabilityTable> result = new ArrayList<>();
+		XFormMarkovToBayes.transform(read(uai), cpt -> result.add(cpt));
+		return result;
+	}
+	
+	private static void assertCPT(ConditionalProbabilityTable cpt, int child, List<Integer> parents, List<Integer> cardinalities, double... entries) {
+		assertEquals(Integer.valueOf(child), cpt.getChildVariableIndex());
+		assertEquals(parents, cpt.getParentVariableIndexes());
+		assertEquals(cardinalities, cpt.getTable().getVariableCardinalities());
+		assertArrayEquals(entries, cpt.getTable().getEntriesArray(), 1e-15);
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.model.v1.imports.uai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.expresso.helper.Expressions;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.model.v1.imports.uai.GenericTableExpressionCache;
+
+public class GenericTableExpressionCacheTest {
+	
+	private static final long LARGE = 1024 * 1024;
+
+	@Test
+	public void testRoundTripAndPersistence() throws IOException {
+		File directory = Files.createTempDirectory("gtecache").toFile();
+		try {
+			FunctionTable table      = table(0.25, 0.5, 1, 0.5);
+			Expression    expression = expression(0.25, 0.5);
+			
+			GenericTableExpressionCache cache = new GenericTableExpressionCache(directory, LARGE);
+			AtomicInteger compilations = new AtomicInteger();
+			assertEquals(expression, cache.getOrCompile("test", table, t -> { compilations.incrementAndGet(); return expression; }));
+			assertEquals(expression, cache.getOrCompile("test", table, t -> { compilations.incrementAndGet(); return expression; }));
+			assertEquals(1, compilations.get());
+			// an equal table is a hit
+			assertEquals(expression, cache.get("test", table(0.25, 0.5, 1, 0.5)));
+			
+			// found by a new cache on the same directory (e.g. in a later run)
+			GenericTableExpressionCache reopened = new GenericTableExpressionCache(directory, LARGE);
+			assertEquals(cache.getTotalBytes(), reopened.getTotalBytes());
+			assertEquals(expression, reopened.get("test", table));
+		}
+		finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testKeys() throws IOException {
+		File directory = Files.createTempDirectory("gtecache").toFile();
+		try {
+			GenericTableExpressionCache cache = new GenericTableExpressionCache(directory, LARGE);
+			cache.put("test", table(0.25, 0.5, 1, 0.5), expression(0.25, 0.5));
+			// other compilers, entries or cardinalities are misses
+			assertNull(cache.get("test-2", table(0.25, 0.5, 1, 0.5)));
+			assertNull(cache.get("test", table(0.25, 0.5, 1, 0.25)));
+			assertNull(cache.get("test", new FunctionTable(Arrays.asList(4), new double[] {0.25, 0.5, 1, 0.5})));
+		}
+		finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testEntryOfAnotherTableIsNotReturned() throws IOException {
+		File directory = Files.createTempDirectory("gtecache").toFile();
+		try {
+			FunctionTable table1 = table(0.25, 0.5, 1, 0.5);
+			FunctionTable table2 = table(0.75, 0.5, 1, 0.5);
+			GenericTableExpressionCache cache = new GenericTableExpressionCache(directory, LARGE);
+			cache.put("test", table1, expression(0.25, 0.5));
+			File file1 = directory.listFiles()[0];
+			cache.put("test", table2, expression(0.75, 0.5));
+			File file2 = Arrays.stream(directory.listFiles()).filter(file -> !file.equals(file1)).findFirst().get();
+			
+			// as if the two tables' file names collided, the second table now finds the first table's entry
+			Files.copy(file1.toPath(), file2.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			assertNull(cache.get("test", table2));
+			assertEquals(expression(0.25, 0.5), cache.get("test", table1));
+		}
+		finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testEntryOfAnotherVersionIsNotReturned() throws IOException {
+		File directory = Files.createTempDirectory("gtecache").toFile();
+		try {
+			FunctionTable table = table(0.25, 0.5, 1, 0.5);
+			GenericTableExpressionCache cache = new GenericTableExpressionCache(directory, LARGE);
+			cache.put("test", table, expression(0.25, 0.5));
+			File file = directory.listFiles()[0];
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+				randomAccessFile.seek(Integer.BYTES); // the version follows the magic number
+				randomAccessFile.writeInt(Integer.MAX_VALUE);
+			}
+			assertNull(cache.get("test", table));
+			assertEquals(0, cache.getTotalBytes());
+		}
+		finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		File directory = Files.createTempDirectory("gtecache").toFile();
+		try {
+			GenericTableExpressionCache sizing = new GenericTableExpressionCache(directory, LARGE);
+			sizing.put("test", table(0.25, 0.5, 1, 0.5), expression(0.25, 0.5));
+			long entryBytes = sizing.getTotalBytes();
+			delete(directory);
+			
+			// room for two entries of the same size
+			GenericTableExpressionCache cache = new GenericTableExpressionCache(directory, 2 * entryBytes + entryBytes / 2);
+			cache.put("test", table(0.25, 0.5, 1, 0.5), expression(0.25, 0.5));
+			cache.put("test", table(0.75, 0.5, 1, 0.5), expression(0.75, 0.5));
+			assertEquals(expression(0.25, 0.5), cache.get("test", table(0.25, 0.5, 1, 0.5)));
+			cache.put("test", table(0.125, 0.5, 1, 0.5), expression(0.125, 0.5));
+			
+			assertTrue(cache.getTotalBytes() <= cache.getMaxBytes());
+			assertEquals(expression(0.25, 0.5), cache.get("test", table(0.25, 0.5, 1, 0.5)));
+			assertNull(cache.get("test", table(0.75, 0.5, 1, 0.5)));
+			assertEquals(expression(0.125, 0.5), cache.get("test", table(0.125, 0.5, 1, 0.5)));
+		}
+		finally {
+			delete(directory);
+		}
+	}
+
+	//
+	// PRIVATE
+	//
+	private static FunctionTable table(double... entries) {
+		return new FunctionTable(Arrays.asList(2, 2), entries);
+	}
+	
+	private static Expression expression(double value1, double value2) {
+		Expression equality = Expressions.apply("=", Expressions.makeSymbol("g0"), Expressions.makeSymbol("g0c0"));
+		return Expressions.apply("if . then . else .", equality, Expressions.makeSymbol(value1), Expressions.apply("if . then . else .", equality, Expressions.makeSymbol(value2), Expressions.makeSymbol(1)));
+	}
+	
+	private static void delete(File directory) {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.model.v1.imports.uai;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.model.v1.imports.uai.UAIBinaryModelReader;
+import com.sri.ai.praise.model.v1.imports.uai.UAIBinaryModelWriter;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModelReader;
+
+public class UAIBinaryModelReaderTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		String uai = 
+				"MARKOV\n3\n2 3 2\n4\n1 0\n2 0 1\n1 2\n2 1 2\n" +
+				"2\n0.1 0.9\n" +
+				"6\n1 2 3 4 5 6\n" +
+				"2\n0.1 0.9\n" + 
+				"6\n0.5 0.5 0.25 0.25 1e-300 7\n";
+		UAIModel model = UAIModelReader.read(new StringReader(uai));
+		
+		StringWriter binary = new StringWriter();
+		UAIBinaryModelWriter.write(model, binary);
+		UAIModel reloaded = UAIBinaryModelReader.read(new StringReader(binary.toString()));
+		
+		assertEquals(model.numberVariables(), reloaded.numberVariables());
+		for (int i = 0; i < model.numberVariables(); i++) {
+			assertEquals(model.cardinality(i), reloaded.cardinality(i));
+		}
+		assertEquals(model.numberTables(), reloaded.numberTables());
+		for (int t = 0; t < model.numberTables(); t++) {
+			assertEquals(model.getVariableIndexesForTable(t), reloaded.getVariableIndexesForTable(t));
+			assertEquals(model.getTable(t), reloaded.getTable(t));
+		}
+		// identical tables are only stored once
+		assertEquals(3, reloaded.numberUniqueFunctionTables());
+		for (int u = 0; u < model.numberUniqueFunctionTables(); u++) {
+			assertEquals(model.getUniqueFunctionTable(u), reloaded.getUniqueFunctionTable(u));
+			assertEquals(model.getTableIndexes(u), reloaded.getTableIndexes(u));
+		}
+		// evidence tables are deduplicated against the unique tables read from the file
+		reloaded.addEvidence(0, 1);
+		reloaded.mergeEvidenceIntoModel();
+		assertEquals(4, reloaded.numberUniqueFunctionTables());
+		reloaded.clearEvidence();
+		reloaded.addEvidence(2, 1);
+		reloaded.mergeEvidenceIntoModel();
+		assertEquals(4, reloaded.numberUniqueFunctionTables());
+		assertEquals(Arrays.asList(4, 5), reloaded.getTableIndexes(3));
+	}
+	
+	@Test
+	public void testRoundTripOfModelLargerThanReadBuffer() throws IOException {
+		// a single table of 2^14 doubles, i.e. 128KB
+		int           numberVariables = 14;
+		StringBuilder uai             = new StringBuilder("MARKOV\n"+numberVariables+"\n");
+		StringBuilder scope           = new StringBuilder(""+numberVariables);
+		for (int i = 0; i < numberVariables; i++) {
+			uai.append("2 ");
+			scope.append(' ').append(i);
+		}
+		uai.append("\n1\n").append(scope).append("\n").append(1 << numberVariables).append("\n");
+		for (int i = 0; i < 1 << numberVariables; i++) {
+			uai.append(i + 1).append(' ');
+		}
+		UAIModel model = UAIModelReader.read(new StringReader(uai.toString()));
+		
+		StringWriter binary = new StringWriter();
+		UAIBinaryModelWriter.write(model, binary);
+		UAIModel reloaded = UAIBinaryModelReader.read(new StringReader(binary.toString()));
+		
+		assertEquals(numberVariables, reloaded.numberVariables());
+		assertEquals(model.getTable(0), reloaded.getTable(0));
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.model.v1.imports.uai;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModel;
+import com.sri.ai.praise.model.v1.imports.uai.UAIModelType;
+
+public class UAIModelTest {
+	
+	@Test
+	public void testTablesWithSameContentHashButDifferentEntriesAreNotMerged() {
+		// the tables below all have the content hash of the table 1 0, whatever their entries
+		long collidingHash = new FunctionTable(Arrays.asList(2), Arrays.asList(1.0, 0.0)).contentHash();
+		
+		Map<Integer, Integer> varIdxToCardinality = new LinkedHashMap<>();
+		for (int i = 0; i < 3; i++) {
+			varIdxToCardinality.put(i, 2);
+		}
+		List<List<Integer>> tableInstanceVariableIndexes = Arrays.asList(Arrays.asList(0), Arrays.asList(1), Arrays.asList(2), Arrays.asList(0));
+		Map<Integer, FunctionTable> tableIdxToTable = new LinkedHashMap<>();
+		tableIdxToTable.put(0, new CollidingFunctionTable(collidingHash, 0.1, 0.9));
+		tableIdxToTable.put(1, new CollidingFunctionTable(collidingHash, 0.9, 0.1));
+		tableIdxToTable.put(2, new CollidingFunctionTable(collidingHash, 0.1, 0.9));
+		tableIdxToTable.put(3, new FunctionTable(Arrays.asList(2), Arrays.asList(1.0, 0.0)));
+		
+		UAIModel model = new UAIModel(UAIModelType.MARKOV, varIdxToCardinality, tableInstanceVariableIndexes, tableIdxToTable);
+		
+		assertEquals(3, model.numberUniqueFunctionTables());
+		assertEquals(Arrays.asList(0, 2), model.getTableIndexes(0));
+		assertEquals(Arrays.asList(1), model.getTableIndexes(1));
+		assertEquals(Arrays.asList(3), model.getTableIndexes(2));
+		
+		// the evidence table of variable 1 has the colliding hash and is the same as table 3, 
+		// while that of variable 2 has another hash
+		model.addEvidence(1, 0);
+		model.addEvidence(2, 1);
+		model.mergeEvidenceIntoModel();
+		
+		assertEquals(6, model.numberTables());
+		assertEquals(4, model.numberUniqueFunctionTables());
+		assertEquals(Arrays.asList(0, 2), model.getTableIndexes(0));
+		assertEquals(Arrays.asList(1), model.getTableIndexes(1));
+		assertEquals(Arrays.asList(3, 4), model.getTableIndexes(2));
+		assertEquals(Arrays.asList(5), model.getTableIndexes(3));
+		assertEquals(new FunctionTable(Arrays.asList(2), Arrays.asList(0.0, 1.0)), model.getUniqueFunctionTable(3));
+		
+		// updating the mappings with the evidence tables gives the same mappings as computing them from all the tables
+		Map<Integer, FunctionTable> allTables = new LinkedHashMap<>();
+		List<List<Integer>> allTableVariableIndexes = new ArrayList<>();
+		for (int t = 0; t < model.numberTables(); t++) {
+			allTables.put(t, model.getTable(t));
+			allTableVariableIndexes.add(model.getVariableIndexesForTable(t));
+		}
+		UAIModel recomputed = new UAIModel(UAIModelType.MARKOV, varIdxToCardinality, allTableVariableIndexes, allTables);
+		assertEquals(recomputed.numberUniqueFunctionTables(), model.numberUniqueFunctionTables());
+		for (int u = 0; u < model.numberUniqueFunctionTables(); u++) {
+			assertEquals(recomputed.getUniqueFunctionTable(u), model.getUniqueFunctionTable(u));
+			assertEquals(recomputed.getTableIndexes(u), model.getTableIndexes(u));
+		}
+	}
+	
+	//
+	// PRIVATE
+	//
+	private static class CollidingFunctionTable extends FunctionTable {
+		private long contentHash;
+		
+		public CollidingFunctionTable(long contentHash, Double... entries) {
+			super(Arrays.asList(entries.length), Arrays.asList(entries));
+			this.contentHash = contentHash;
+		}
+		
+		@Override
+		public long contentHash() {
+			return contentHash;
+		}
+	}
+}
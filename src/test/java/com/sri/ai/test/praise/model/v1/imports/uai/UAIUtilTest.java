@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2017, SRI International
+ * All rights reserved.
+ * Licensed under the The BSD 3-Clause License;
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at:
+ * 
+ * http://opensource.org/licenses/BSD-3-Clause
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ * 
+ * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ * 
+ * Neither the name of the aic-praise nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS
+ * FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, 
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, 
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) 
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sri.ai.test.praise.model.v1.imports.uai;
+
+import static com.sri.ai.expresso.helper.Expressions.parse;
+import static com.sri.ai.util.Util.list;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sri.ai.expresso.api.Expression;
+import com.sri.ai.praise.lang.grounded.common.FunctionTable;
+import com.sri.ai.praise.model.v1.imports.uai.UAIUtil;
+
+public class UAIUtilTest {
+
+	@Test
+	public void testConstructGenericTableExpressionUsingEqualities() {
+		FunctionTable table;
+		String expected;
+		
+		table = new FunctionTable(
+				list(2),
+				list(1.0, 1.0));
+		expected = "1";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(2),
+				list(1.0, 2.0));
+		expected = "if g0 then 2 else 1";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(2, 5),
+				list(
+						1.0, 1.0, 1.0, 1.0, 1.0,
+						2.0, 2.0, 2.0, 2.0, 2.0)
+				);
+		expected = "if g0 then 2 else 1";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(5),
+				list(0.0, 1.0, 1.0, 0.0, 0.0));
+		expected = "if g0 = consg0_1 or g0 = consg0_2 then 1 else 0";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(3, 2),
+				list(
+						0.0, 0.0,
+						0.0, 1.0,
+						2.0, 3.0)
+				);
+		expected = "if g0 = consg0_1 then if g1 then 1 else 0 else if g0 = consg0_2 then if g1 then 3 else 2 else 0";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(3, 3),
+				list(
+						0.0, 0.0, 0.0,
+						0.0, 0.0, 0.0,
+						0.0, 0.0, 0.0)
+				);
+		expected = "0";
+		run(table, expected);
+		
+		// fractional entries are the same rationals as their decimal text
+		table = new FunctionTable(
+				list(2),
+				list(0.3, 0.7));
+		expected = "if g0 then 0.7 else 0.3";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(3, 2),
+				list(
+						0.1, 0.9,
+						0.25, 0.75,
+						0.1, 0.9)
+				);
+		expected = "if g0 = consg0_1 then if g1 then 0.75 else 0.25 else if g1 then 0.9 else 0.1";
+		run(table, expected);
+		
+		table = new FunctionTable(
+				list(2),
+				list(0.05, 0.123456789));
+		expected = "if g0 then 0.123456789 else 0.05";
+		run(table, expected);
+	}
+
+	@Test
+	public void testAppendDoubleIsSameAsDoubleToStringForTypicalValues() {
+		double[] values = {
+				0.0, 1.0, -1.0, 0.5, 0.95, 0.01, 0.001, 0.1, 0.2, 0.3, 0.7, 0.9, 1.5, 2.25, 10.0, 100.0, 123.456, 
+				0.0025, 0.123456789, 9999999.0, 9999999.5, 1234567.875, -0.001, -42.125};
+		for (double value : values) {
+			assertEquals(Double.toString(value), UAIUtil.appendDouble(new StringBuilder(), value).toString());
+		}
+	}
+	
+	@Test
+	public void testAppendDoubleIsSameAsDoubleToStringForSpecialValues() {
+		double[] values = {
+				-0.0, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+				// subnormals
+				Double.MIN_VALUE, -Double.MIN_VALUE, 2.5e-320, Double.MIN_NORMAL - Double.MIN_VALUE,
+				// large exponents and the boundaries of the formatted range
+				Double.MIN_NORMAL, Double.MAX_VALUE, -Double.MAX_VALUE, 1e300, 1e-300, 1.0e7, 1e22, 1e23, 
+				Math.nextDown(1e-3), Math.nextDown(1e7), 9.999999999999999e-4};
+		for (double value : values) {
+			String appended = UAIUtil.appendDouble(new StringBuilder(), value).toString();
+			assertEquals(Double.toString(value), appended);
+			assertRoundTrips(value, appended);
+		}
+	}
+	
+	@Test
+	public void testAppendDoubleRoundTrips() {
+		Random random = new Random(1);
+		for (int i = 0; i < 100000; i++) {
+			// arbitrary bit patterns, short decimals and values close to powers of ten
+			double value;
+			switch (i % 3) {
+			case 0:
+				value = Double.longBitsToDouble(random.nextLong());
+				break;
+			case 1:
+				value = random.nextInt(1000000) / Math.pow(10, random.nextInt(12));
+				break;
+			default:
+				value = Math.nextUp(Math.pow(10, random.nextInt(12) - 4)) * (random.nextBoolean() ? 1 : -1);
+			}
+			assertRoundTrips(value, UAIUtil.appendDouble(new StringBuilder(), value).toString());
+		}
+	}
+	
+	@Test
+	public void testAppendDoubleAppends() {
+		StringBuilder appendable = new StringBuilder("values:");
+		UAIUtil.appendDouble(appendable, 0.25).append(' ');
+		UAIUtil.appendDouble(appendable, 1e-5);
+		assertEquals("values:0.25 1.0E-5", appendable.toString());
+	}
+	
+	private static void assertRoundTrips(double value, String appended) {
+		// compares bits, so that -0.0 and 0.0 are told apart (and NaN is equal to itself)
+		assertEquals(appended, Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(appended)));
+	}
+	
+	private void run(FunctionTable table, String expected) {
+		Expression actual = UAIUtil.constructGenericTableExpressionUsingEqualities(table);
+		Expression expectedExpression = parse(expected);
+		assertEquals(expectedExpression, actual);
+	}
+}
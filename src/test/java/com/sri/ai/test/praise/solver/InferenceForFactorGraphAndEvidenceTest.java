@@ -43,10 +43,15 @@ import static com.sri.ai.expresso.helper.Expressions.parse;
 import static com.sri.ai.grinder.library.FunctorConstants.MINUS;
 import static com.sri.ai.util.Util.list;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -57,8 +62,10 @@ import com.sri.ai.expresso.type.IntegerInterval;
 import com.sri.ai.expresso.type.RealInterval;
 import com.sri.ai.grinder.core.TrueContext;
 import com.sri.ai.grinder.library.number.Times;
+import com.sri.ai.praise.inference.CancellationToken;
 import com.sri.ai.praise.inference.ExpressionFactorsAndTypes;
 import com.sri.ai.praise.inference.InferenceForFactorGraphAndEvidence;
+import com.sri.ai.praise.inference.QueryCanceledException;
 import com.sri.ai.util.Util;
 
 public class InferenceForFactorGraphAndEvidenceTest {
@@ -959,6 +966,174 @@ public class InferenceForFactorGraphAndEvidenceTest {
 		runTest(queryExpression, evidence, expected, expected, isBayesianNetwork, factors, mapFromRandomVariableNameToTypeName, mapFromNonUniquelyNamedConstantNameToTypeName, mapFromUniquelyNamedConstantNameToTypeName, mapFromCategoricalTypeNameToSizeString, additionalTypes);
 	}
 	
+	@Test
+	public void allMarginals() {
+		
+		// The definitions of types
+		mapFromCategoricalTypeNameToSizeString = Util.map(
+				"Boolean", "2");
+
+		// The definitions of variables
+		mapFromRandomVariableNameToTypeName = Util.map(
+				"burglary",   "Boolean",
+				"alarm",      "Boolean",
+				"call",       "Boolean",
+				"rain",       "Boolean",
+				"wet",        "Boolean"
+				);
+
+		mapFromNonUniquelyNamedConstantNameToTypeName = Util.map();
+
+		mapFromUniquelyNamedConstantNameToTypeName = Util.map();
+
+		// two independent components: {burglary, alarm, call} and {rain, wet}
+		isBayesianNetwork = false;
+		factors = Times.getMultiplicands(parse(""
+				+ "(if alarm then if call then 0.7 else 0.3 else if call then 0 else 1)*"
+				+ "(if burglary then if alarm then 0.9 else 0.1 else if alarm then 0.01 else 0.99)*"
+				+ "(if burglary then 0.1 else 0.9)*"
+				+ "(if rain then 0.2 else 0.8)*"
+				+ "(if rain then if wet then 0.9 else 0.1 else if wet then 0.3 else 0.7)"));
+		evidence = parse("call");
+
+		assertAllMarginalsEquivalentToSolve();
+	}
+
+	@Test
+	public void allMarginalsOfConnectedModel() {
+		
+		mapFromCategoricalTypeNameToSizeString = Util.map(
+				"Boolean", "2",
+				"Color",   "3");
+
+		mapFromRandomVariableNameToTypeName = Util.map(
+				"a", "Boolean",
+				"b", "Color",
+				"c", "Boolean",
+				"d", "Boolean",
+				"e", "Color"
+				);
+
+		mapFromNonUniquelyNamedConstantNameToTypeName = Util.map();
+
+		mapFromUniquelyNamedConstantNameToTypeName = Util.map("red", "Color", "green", "Color", "blue", "Color");
+
+		// a loop a-b-c-a with a tail c-d-e, so messages go both ways through several buckets
+		isBayesianNetwork = false;
+		factors = new ArrayList<>(Times.getMultiplicands(parse(""
+				+ "(if a then if b = red then 2 else 1 else if b = blue then 3 else 1)*"
+				+ "(if b = green then if c then 0.4 else 0.6 else if c then 0.9 else 0.1)*"
+				+ "(if c then if a then 5 else 1 else if a then 1 else 2)*"
+				+ "(if c then if d then 0.3 else 0.7 else if d then 0.8 else 0.2)*"
+				+ "(if d then if e = red then 1 else 4 else if e = green then 2 else 1)")));
+		evidence = null;
+		assertAllMarginalsEquivalentToSolve();
+		
+		evidence = parse("e = blue");
+		assertAllMarginalsEquivalentToSolve();
+		
+		// a factor without random variables still counts when the marginals are not normalized
+		isBayesianNetwork = true;
+		factors = list(parse("if a then 0.3 else 0.7"), parse("if a then if c then 0.2 else 0.8 else if c then 0.6 else 0.4"), parse("0.5"));
+		mapFromRandomVariableNameToTypeName = Util.map(
+				"a", "Boolean",
+				"c", "Boolean"
+				);
+		evidence = null;
+		assertAllMarginalsEquivalentToSolve();
+	}
+
+	@Test
+	public void cancellation() throws InterruptedException {
+		mapFromCategoricalTypeNameToSizeString = Util.map("Boolean", "2");
+		mapFromRandomVariableNameToTypeName = Util.map(
+				"a", "Boolean",
+				"b", "Boolean",
+				"c", "Boolean"
+				);
+		mapFromNonUniquelyNamedConstantNameToTypeName = Util.map();
+		mapFromUniquelyNamedConstantNameToTypeName = Util.map();
+		// c is independent of a and b, so its marginal needs eliminations of its own
+		factors = list(parse("if a then if b then 2 else 1 else 3"), parse("if c then 0.4 else 0.1"));
+		InferenceForFactorGraphAndEvidence inferencer = new InferenceForFactorGraphAndEvidence(
+				new ExpressionFactorsAndTypes(factors, 
+						mapFromRandomVariableNameToTypeName,
+						mapFromNonUniquelyNamedConstantNameToTypeName,
+						mapFromUniquelyNamedConstantNameToTypeName,
+						mapFromCategoricalTypeNameToSizeString,
+						list()),
+				false,
+				null,
+				true, null);
+		
+		// a token canceled before the query starts
+		CancellationToken canceled = new CancellationToken();
+		canceled.cancel();
+		assertCanceled(() -> inferencer.solve(parse("a"), canceled));
+		assertCanceled(() -> inferencer.solveMarginal(parse("a"), canceled));
+		
+		// a token canceled by its deadline
+		try (CancellationToken timedOut = CancellationToken.withTimeout(1, TimeUnit.MILLISECONDS)) {
+			while ( ! timedOut.isCanceled()) {
+				Thread.sleep(1);
+			}
+			assertCanceled(() -> inferencer.solve(parse("b"), timedOut));
+		}
+		
+		// all marginals, canceled after the ones for a and b were computed
+		Expression marginalOfA = inferencer.solveMarginal(parse("a"));
+		inferencer.solveMarginal(parse("b"));
+		InferenceForFactorGraphAndEvidence.AllMarginals allMarginals = inferencer.solveAllMarginals(list(parse("a"), parse("b"), parse("c")), canceled);
+		assertTrue(allMarginals.isPartial());
+		assertEquals(list(parse("a"), parse("b")), new ArrayList<>(allMarginals.getMarginals().keySet()));
+		assertEquals(marginalOfA, allMarginals.getMarginals().get(parse("a")));
+		
+		// and not canceled
+		allMarginals = inferencer.solveAllMarginals(list(parse("a"), parse("b"), parse("c")), new CancellationToken());
+		assertFalse(allMarginals.isPartial());
+		assertEquals(3, allMarginals.getMarginals().size());
+		assertEquivalent(inferencer.solve(parse("c")), allMarginals.getMarginals().get(parse("c")), inferencer);
+	}
+	
+	private static void assertCanceled(Runnable query) {
+		try {
+			query.run();
+			fail("Expected the query to be canceled");
+		}
+		catch (QueryCanceledException queryCanceledException) {
+			// expected
+		}
+	}
+
+	private void assertAllMarginalsEquivalentToSolve() {
+		InferenceForFactorGraphAndEvidence inferencer;
+		inferencer = new InferenceForFactorGraphAndEvidence(
+				new ExpressionFactorsAndTypes(factors, 
+						mapFromRandomVariableNameToTypeName,
+						mapFromNonUniquelyNamedConstantNameToTypeName,
+						mapFromUniquelyNamedConstantNameToTypeName,
+						mapFromCategoricalTypeNameToSizeString,
+						list()),
+				isBayesianNetwork,
+				evidence,
+				true, null);
+		
+		List<Expression> randomVariables = Util.mapIntoList(mapFromRandomVariableNameToTypeName.keySet(), Expressions::parse);
+		Map<Expression, Expression> allMarginals = inferencer.solveAllMarginals(randomVariables);
+		for (Expression randomVariable : randomVariables) {
+			assertEquivalent(inferencer.solve(randomVariable), allMarginals.get(randomVariable), inferencer);
+		}
+	}
+
+	private void assertEquivalent(Expression expected, Expression actual, InferenceForFactorGraphAndEvidence inferencer) {
+		TrueContext context = new TrueContext();
+		expected = Expressions.roundToAGivenPrecision(expected, 9, context);
+		actual   = Expressions.roundToAGivenPrecision(actual, 9, context);
+		if ( ! expected.equals(actual) && ! inferencer.evaluate(apply(MINUS, expected, actual)).equals(ZERO)) {
+			throw new AssertionError("expected:<" + expected + "> but was:<" + actual + ">, which is not even equivalent.");
+		}
+	}
+
 	/**
 	 * @param queryExpression
 	 * @param evidence